@@ -32,8 +32,56 @@ android {
     buildFeatures {
         viewBinding = true
     }
+    androidResources {
+        // Stored uncompressed so ModelStore can channel-copy them straight out of the APK.
+        noCompress += "onnx"
+    }
+}
+
+// Writes models.sha256 (sha256sum format) for the .onnx assets into a generated assets folder, so
+// ModelStore can tell a stale installed model from the one in the current APK.
+abstract class ModelManifestTask : DefaultTask() {
+    @get:InputFiles
+    @get:PathSensitive(PathSensitivity.RELATIVE)
+    abstract val models: ConfigurableFileCollection
+
+    @get:OutputDirectory
+    abstract val outputDir: DirectoryProperty
+
+    @TaskAction
+    fun write() {
+        val lines = models.files.sortedBy { it.name }.joinToString("") { model ->
+            val md = java.security.MessageDigest.getInstance("SHA-256")
+            model.inputStream().use { input ->
+                val buf = ByteArray(1 shl 20)
+                while (true) {
+                    val n = input.read(buf)
+                    if (n < 0) break
+                    md.update(buf, 0, n)
+                }
+            }
+            md.digest().joinToString("") { "%02x".format(it) } + "  " + model.name + "\n"
+        }
+        outputDir.get().file("models.sha256").asFile.writeText(lines)
+    }
+}
+
+androidComponents {
+    onVariants { variant ->
+        val variantName = variant.name.replaceFirstChar { it.uppercase() }
+        val manifest = tasks.register<ModelManifestTask>("generate${variantName}ModelManifest") {
+            models.from(fileTree("src/main/assets") { include("*.onnx") })
+        }
+        variant.sources.assets?.addGeneratedSourceDirectory(manifest, ModelManifestTask::outputDir)
+    }
 }
 
+// src/benchmark is its own source set, outside the unit tests: it compiles against the app
+// classes and the unit-test classpath (strict mockable android.jar), and src/benchmark/host puts
+// host versions of Log and SystemClock ahead of that jar so the app code can run.
+val benchmarkImplementation: Configuration by configurations.creating
+val benchmarkAnnotationProcessor: Configuration by configurations.creating
+
 dependencies {
 
     implementation("com.microsoft.onnxruntime:onnxruntime-android:1.23.1")
@@ -49,6 +97,67 @@ dependencies {
     implementation(libs.navigation.fragment)
     implementation(libs.navigation.ui)
     testImplementation(libs.junit)
+    // Same ORT release as the app, with the desktop native libraries for host-side runs.
+    testImplementation("com.microsoft.onnxruntime:onnxruntime:1.23.1")
+    benchmarkImplementation("org.openjdk.jmh:jmh-core:1.37")
+    benchmarkAnnotationProcessor("org.openjdk.jmh:jmh-generator-annprocess:1.37")
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 }
+
+// ./gradlew :app:jmh [-Pjmh.args="FrameKernels -p frame=640x480"]
+// Runs src/benchmark on the host JVM; reports ops/s and, via the gc profiler, allocation rate.
+afterEvaluate {
+    val unitTest = tasks.named<Test>("testDebugUnitTest")
+    val compileBenchmark = tasks.register<JavaCompile>("compileBenchmarkJava") {
+        group = "benchmark"
+        description = "Compiles src/benchmark against the app and its unit-test classpath."
+        dependsOn("compileDebugUnitTestJavaWithJavac")
+        source(fileTree("src/benchmark/java"), fileTree("src/benchmark/host"))
+        classpath = files(unitTest.map { it.classpath }) + benchmarkImplementation
+        options.annotationProcessorPath = benchmarkAnnotationProcessor
+        sourceCompatibility = JavaVersion.VERSION_11.toString()
+        targetCompatibility = JavaVersion.VERSION_11.toString()
+        destinationDirectory.set(layout.buildDirectory.dir("intermediates/benchmark/classes"))
+    }
+    // Benchmark classes (and the host Log/SystemClock) first, so they shadow the mockable jar.
+    val benchmarkClasspath = files(compileBenchmark.flatMap { it.destinationDirectory }) +
+        files(unitTest.map { it.classpath }) + benchmarkImplementation
+
+    tasks.register<JavaExec>("jmh") {
+        group = "benchmark"
+        description = "Runs the JMH benchmarks in src/benchmark on the host JVM."
+        dependsOn(compileBenchmark)
+        classpath = benchmarkClasspath
+        mainClass.set("org.openjdk.jmh.Main")
+        val results = layout.buildDirectory.file("reports/jmh/results.json").get().asFile
+        doFirst { results.parentFile.mkdirs() }
+        val extra = (project.findProperty("jmh.args") as String?)
+            ?.split(" ")?.filter { it.isNotBlank() }.orEmpty()
+        args = listOf("-prof", "gc", "-rf", "json", "-rff", results.path) + extra
+    }
+
+    // ./gradlew :app:pipelineBench -Pbench.args="--models DIR --frames DIR --threads 1,2,4"
+    // Real detector + depth pipeline on ORT CPU over recorded frames; see PipelineHarness.
+    tasks.register<JavaExec>("pipelineBench") {
+        group = "benchmark"
+        description = "Runs the end-to-end pipeline harness on the host JVM."
+        dependsOn(compileBenchmark)
+        classpath = benchmarkClasspath
+        mainClass.set("vn.edu.usth.objectdetectmobile.PipelineHarness")
+        args = (project.findProperty("bench.args") as String?)
+            ?.split(" ")?.filter { it.isNotBlank() }.orEmpty()
+    }
+
+    // ./gradlew :app:replayDiff -Pdiff.args="base.jsonl candidate.jsonl"
+    // Frame-by-frame comparison of two replay outputs; see ReplayDiff.
+    tasks.register<JavaExec>("replayDiff") {
+        group = "benchmark"
+        description = "Compares the per-frame detections and depth of two replay outputs."
+        dependsOn(compileBenchmark)
+        classpath = benchmarkClasspath
+        mainClass.set("vn.edu.usth.objectdetectmobile.ReplayDiff")
+        args = (project.findProperty("diff.args") as String?)
+            ?.split(" ")?.filter { it.isNotBlank() }.orEmpty()
+    }
+}
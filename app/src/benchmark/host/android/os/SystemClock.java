@@ -0,0 +1,14 @@
+package android.os;
+
+/** Host stand-in for the framework clock; see {@code android.util.Log} in this source set. */
+public final class SystemClock {
+    private SystemClock() {}
+
+    public static long elapsedRealtime() {
+        return System.nanoTime() / 1_000_000L;
+    }
+
+    public static long uptimeMillis() {
+        return System.nanoTime() / 1_000_000L;
+    }
+}
@@ -0,0 +1,117 @@
+package vn.edu.usth.objectdetectmobile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Inputs shared by the benchmarks. A recorded YOLO output tensor can replace the synthetic one
+ * with {@code -Dbench.yoloOutput=<file>} (raw little-endian float32, {@code [1,84,N]}).
+ */
+final class BenchData {
+    static final int YOLO_PROPS = 84;
+    static final int YOLO_ANCHORS = 8400;
+
+    private BenchData() {}
+
+    /** Parses {@code "WxH"}. */
+    static int[] size(String spec) {
+        String[] p = spec.split("x");
+        return new int[]{Integer.parseInt(p[0]), Integer.parseInt(p[1])};
+    }
+
+    static int[] argb(int w, int h, long seed) {
+        Random rnd = new Random(seed);
+        int[] px = new int[w * h];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int r = x * 255 / w, g = y * 255 / h, b = (r + g) / 2 + rnd.nextInt(16);
+                px[y * w + x] = 0xFF000000 | (r << 16) | (g << 8) | Math.min(255, b);
+            }
+        }
+        return px;
+    }
+
+    /** Channel-major YOLOv8 output with clustered objects, as the decoder sees it. */
+    static float[] yoloOutput(long seed) {
+        String recorded = System.getProperty("bench.yoloOutput");
+        if (recorded != null && !recorded.isEmpty()) {
+            try {
+                ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(Paths.get(recorded)))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                float[] out = new float[b.remaining() / 4];
+                b.asFloatBuffer().get(out);
+                return out;
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot read " + recorded, e);
+            }
+        }
+        Random rnd = new Random(seed);
+        int n = YOLO_ANCHORS;
+        float[] out = new float[YOLO_PROPS * n];
+        // ~20 objects, each picked up by a few dozen neighbouring anchors with jittered boxes.
+        float[][] objects = new float[20][];
+        for (int o = 0; o < objects.length; o++) {
+            objects[o] = new float[]{40 + rnd.nextFloat() * 560, 40 + rnd.nextFloat() * 560,
+                    30 + rnd.nextFloat() * 200, 30 + rnd.nextFloat() * 200, rnd.nextInt(80)};
+        }
+        for (int i = 0; i < n; i++) {
+            boolean hit = rnd.nextInt(100) < 3;
+            float[] obj = objects[rnd.nextInt(objects.length)];
+            float jitter = hit ? 8f : 300f;
+            out[i] = obj[0] + (rnd.nextFloat() - 0.5f) * jitter;
+            out[n + i] = obj[1] + (rnd.nextFloat() - 0.5f) * jitter;
+            out[2 * n + i] = obj[2] * (0.8f + 0.4f * rnd.nextFloat());
+            out[3 * n + i] = obj[3] * (0.8f + 0.4f * rnd.nextFloat());
+            for (int c = 0; c < YOLO_PROPS - 4; c++) {
+                out[(4 + c) * n + i] = rnd.nextFloat() * 0.05f;
+            }
+            if (hit) out[(4 + (int) obj[4]) * n + i] = 0.3f + 0.7f * rnd.nextFloat();
+        }
+        return out;
+    }
+
+    static long[] yoloShape(float[] output) {
+        return new long[]{1, YOLO_PROPS, output.length / YOLO_PROPS};
+    }
+
+    static final int DEPTH_GRID_W = 518;
+
+    /** Model-resolution grid height for a {@code w x h} frame (rectangular depth input). */
+    static int depthGridH(int w, int h) {
+        return Math.max(14, Math.round(518f * h / w / 14) * 14);
+    }
+
+    /** Depth rising towards the bottom of the frame, plus noise. */
+    static float[] depthGrid(int gw, int gh, long seed) {
+        Random rnd = new Random(seed);
+        float[] grid = new float[gw * gh];
+        for (int y = 0; y < gh; y++) {
+            for (int x = 0; x < gw; x++) {
+                grid[y * gw + x] = 0.5f + 3f * y / gh + rnd.nextFloat() * 0.1f;
+            }
+        }
+        return grid;
+    }
+
+    /** Lazy depth map over {@code grid}, stretched over a {@code w x h} frame. */
+    static DepthEstimator.DepthMap depthMap(float[] grid, int gw, int gh, int w, int h) {
+        return new DepthEstimator.DepthMap(grid, gw, 0, 0, gw, gh, w, h, 0.5f, 3.6f, 0L);
+    }
+
+    static List<ObjectDetector.Detection> detections(int w, int h, int count, long seed) {
+        Random rnd = new Random(seed);
+        List<ObjectDetector.Detection> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float bw = 40 + rnd.nextFloat() * w / 3f, bh = 40 + rnd.nextFloat() * h / 3f;
+            float x = rnd.nextFloat() * (w - bw), y = rnd.nextFloat() * (h - bh);
+            out.add(new ObjectDetector.Detection(x, y, x + bw, y + bh, 0.9f, rnd.nextInt(80)));
+        }
+        return out;
+    }
+}
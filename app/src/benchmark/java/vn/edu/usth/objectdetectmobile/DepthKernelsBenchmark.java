@@ -0,0 +1,90 @@
+package vn.edu.usth.objectdetectmobile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Depth-side kernels: model preprocessing, full-resolution upsampling (crop + bilinear resize)
+ * and per-box depth aggregation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DepthKernelsBenchmark {
+
+    @Param({"640x480", "1280x720"})
+    public String frame;
+
+    private int w, h;
+    private int[] argb;
+    private List<ObjectDetector.Detection> boxes;
+    private float[] grid;
+    private int gridH;
+    private DepthEstimator.DepthMap map;
+
+    @Setup
+    public void setup() {
+        int[] s = BenchData.size(frame);
+        w = s[0];
+        h = s[1];
+        argb = BenchData.argb(w, h, 3);
+        boxes = BenchData.detections(w, h, 12, 5);
+        gridH = BenchData.depthGridH(w, h);
+        grid = BenchData.depthGrid(BenchData.DEPTH_GRID_W, gridH, 9);
+        map = BenchData.depthMap(grid, BenchData.DEPTH_GRID_W, gridH, w, h);
+    }
+
+    @Benchmark
+    public DepthEstimator.Prep preprocessSquare() {
+        return DepthEstimator.preprocess(argb, w, h, false);
+    }
+
+    @Benchmark
+    public DepthEstimator.Prep preprocessRectangular() {
+        return DepthEstimator.preprocess(argb, w, h, true);
+    }
+
+    /** A fresh map each time, since the full-resolution grid is cached after the first call. */
+    @Benchmark
+    public float[] toFullResolution() {
+        return BenchData.depthMap(grid, BenchData.DEPTH_GRID_W, gridH, w, h).toFullResolution();
+    }
+
+    /** Statistic is only a parameter of the aggregation benchmark. */
+    @State(Scope.Thread)
+    public static class Aggregation {
+        @Param({"MEDIAN", "TRIMMED_MEAN", "CENTER_WEIGHTED"})
+        public DepthAggregator.Statistic statistic;
+
+        DepthAggregator aggregator;
+
+        @Setup
+        public void setup() {
+            aggregator = new DepthAggregator(statistic);
+        }
+    }
+
+    /** Depth for a frame's worth of boxes (successor of averageDepth). */
+    @Benchmark
+    public void aggregateBoxes(Aggregation a, Blackhole bh) {
+        for (int i = 0, n = boxes.size(); i < n; i++) {
+            bh.consume(a.aggregator.aggregate(map, boxes.get(i)));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package vn.edu.usth.objectdetectmobile;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link ModelHost} over plain directories for host-side runs: models are read from
+ * {@code modelDir}, optimized graphs are cached under {@code cacheDir} and session profiles only
+ * live as long as the process.
+ */
+public final class DirectoryModelHost implements ModelHost {
+
+    private final File modelDir;
+    private final OptimizedModelCache cache;
+    private final Map<String, SessionProfile> profiles = new ConcurrentHashMap<>();
+
+    public DirectoryModelHost(File modelDir, File cacheDir) {
+        this.modelDir = modelDir;
+        this.cache = new OptimizedModelCache(cacheDir);
+    }
+
+    @Override
+    public boolean hasModel(String name) {
+        return new File(modelDir, name).length() > 0;
+    }
+
+    @Override
+    public String modelPath(String name) throws FileNotFoundException {
+        File f = new File(modelDir, name);
+        if (f.length() == 0) throw new FileNotFoundException(f.getPath());
+        return f.getAbsolutePath();
+    }
+
+    @Override
+    public OptimizedModelCache optimizedModelCache() {
+        return cache;
+    }
+
+    @Override
+    public SessionProfile loadProfile(String model, SessionProfile fallback) {
+        SessionProfile p = profiles.get(model);
+        return p != null ? p : fallback;
+    }
+
+    @Override
+    public void saveProfile(String model, SessionProfile profile) {
+        profiles.put(model, profile);
+    }
+}
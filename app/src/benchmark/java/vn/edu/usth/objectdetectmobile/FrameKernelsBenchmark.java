@@ -0,0 +1,108 @@
+package vn.edu.usth.objectdetectmobile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+/** Per-frame pixel kernels: YUV conversion, rotation, blur and the detector letterbox. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameKernelsBenchmark {
+
+    @Param({"640x480", "1280x720"})
+    public String frame;
+
+    /** 1 = planar chroma, 2 = NV21-style interleaved. */
+    @Param({"1", "2"})
+    public int uvPixelStride;
+
+    private YuvFrame image;
+    private int w, h;
+    private int[] argb, argbOut, rotated, blurred;
+    private FloatBuffer chw;
+    private int inputW, inputH, padX, padY;
+    private Resampler.Taps tapsX, tapsY, tapsXRot, tapsYRot;
+    private Yuv.RotationMap rotationMap;
+
+    @Setup
+    public void setup() {
+        int[] s = BenchData.size(frame);
+        w = s[0];
+        h = s[1];
+        image = YuvFrame.synthetic(w, h, uvPixelStride, 1);
+        argb = Yuv.toArgb(image);
+        argbOut = new int[w * h];
+        rotated = new int[w * h];
+        blurred = new int[w * h];
+
+        // 640 long edge, short edge at the frame's aspect ratio (rectangular letterbox).
+        inputW = 640;
+        inputH = (int) Math.ceil(640f * h / w / 32) * 32;
+        chw = FloatBuffer.allocate(3 * inputW * inputH);
+        float scale = Math.min(inputW / (float) w, inputH / (float) h);
+        int nw = (int) (w * scale), nh = (int) (h * scale);
+        padX = (inputW - nw) / 2;
+        padY = (inputH - nh) / 2;
+        tapsX = Resampler.taps(Resampler.Filter.AREA, w, nw, 1f / scale, 1);
+        tapsY = Resampler.taps(Resampler.Filter.AREA, h, nh, 1f / scale, 1);
+        // Portrait (rotation 90) variant used by the YUV path.
+        float rs = Math.min(inputW / (float) h, inputH / (float) w);
+        tapsXRot = Resampler.taps(Resampler.Filter.AREA, h, (int) (h * rs), 1f / rs, 1);
+        tapsYRot = Resampler.taps(Resampler.Filter.AREA, w, Math.min(inputH, (int) (w * rs)), 1f / rs, 1);
+        rotationMap = new Yuv.RotationMap();
+    }
+
+    @Benchmark
+    public int[] yuvToArgb() {
+        return Yuv.toArgb(image, argbOut);
+    }
+
+    @Benchmark
+    public int[] yuvToArgbRotated90() {
+        return Yuv.toArgb(image, 90, argbOut);
+    }
+
+    @Benchmark
+    public int[] rotate90() {
+        return Yuv.rotate(argb, rotated, w, h, 90);
+    }
+
+    @Benchmark
+    public int[] boxBlurR1() {
+        return ImageUtils.boxBlur(argb, blurred, w, h, 1);
+    }
+
+    @Benchmark
+    public int[] boxBlurR4() {
+        return ImageUtils.boxBlur(argb, blurred, w, h, 4);
+    }
+
+    /** ARGB frame to normalized CHW letterbox (the old letterbox + toCHW pair). */
+    @Benchmark
+    public FloatBuffer argbToChw() {
+        Resampler.argbToChw(argb, w, tapsX, tapsY, chw, inputW, inputH, padX, padY);
+        return chw;
+    }
+
+    /** Fused YUV -> rotated, letterboxed CHW, as used for live frames. */
+    @Benchmark
+    public FloatBuffer yuvToLetterboxedChw() {
+        Yuv.toLetterboxedChw(image, 90, chw, inputW, inputH, 0, 0, tapsXRot, tapsYRot, rotationMap);
+        return chw;
+    }
+}
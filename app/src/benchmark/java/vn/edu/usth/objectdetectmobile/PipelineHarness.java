@@ -0,0 +1,351 @@
+package vn.edu.usth.objectdetectmobile;
+
+import androidx.camera.core.ImageProxy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import vn.edu.usth.objectdetectmobile.MainActivity.EnvMode;
+
+/**
+ * End-to-end run of the real detector and depth estimator on ORT's CPU provider over recorded
+ * frames, for profiling and regression hunting off the phone.
+ * <p>
+ * Every frame goes through the same steps as a live camera frame, one after another on the
+ * calling thread: YUV to ARGB for depth ({@code convert}), fused YUV letterbox into the detector
+ * input ({@code preprocess}), session run ({@code infer}), {@code decode}, {@code nms}, depth
+ * estimation ({@code depth}), per-box depth ({@code attach}) and stereo-style fusion
+ * ({@code fuse}). Frames are raw files named {@code <anything>_<W>x<H>.nv21} (Y plane then
+ * interleaved VU) or {@code .i420}/{@code .yuv} (Y, U, V planes), all loaded before timing, or a
+ * {@link FrameRecording} made on the phone, whose frames are mapped and carry their own rotation
+ * and timestamps. For each ORT intra-op thread count the detector and estimator are rebuilt,
+ * warmed up and timed; the report has per-stage percentiles, throughput and the peak RSS
+ * sampled during that run.
+ * <p>
+ * {@code --pace realtime} spaces frames by their recorded timestamps instead of running flat
+ * out. {@code --out} writes the first pass of the first thread count as a {@link DetectionLog},
+ * the same format a replay on the phone produces; {@link ReplayDiff} compares two of them. The
+ * harness has no tracker, so every frame is a detector keyframe.
+ * <pre>
+ * ./gradlew :app:pipelineBench -Pbench.args="--models DIR --frames DIR|FILE.odmf
+ *     [--threads 1,2,4] [--rotation 0] [--warmup 5] [--repeat 1]
+ *     [--depth indoor|outdoor|none] [--input-size 640] [--pace native|realtime]
+ *     [--cache DIR] [--csv FILE] [--out FILE.jsonl]"
+ * </pre>
+ */
+public final class PipelineHarness {
+
+    private static final String[] STAGES =
+            {"convert", "preprocess", "infer", "decode", "nms", "depth", "attach", "fuse", "total"};
+    private static final Pattern SIZE = Pattern.compile("(\\d+)x(\\d+)");
+
+    private PipelineHarness() {}
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opt = parseArgs(args);
+        File models = new File(require(opt, "models"));
+        File frameSource = new File(require(opt, "frames"));
+        String rotationOpt = opt.get("rotation");
+        int warmup = Integer.parseInt(opt.getOrDefault("warmup", "5"));
+        int repeat = Integer.parseInt(opt.getOrDefault("repeat", "1"));
+        int inputSize = Integer.parseInt(opt.getOrDefault("input-size", "0"));
+        boolean realtime = "realtime".equals(opt.getOrDefault("pace", "native"));
+        String out = opt.get("out");
+        String depthOpt = opt.getOrDefault("depth", "indoor");
+        EnvMode depthMode = "none".equals(depthOpt) ? null
+                : EnvMode.valueOf(depthOpt.toUpperCase(Locale.US));
+        File cache = new File(opt.getOrDefault("cache",
+                new File(System.getProperty("java.io.tmpdir"), "odm-ort-cache").getPath()));
+        int[] threads = Arrays.stream(opt.getOrDefault("threads", "1,2,4").split(","))
+                .mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+
+        ModelHost host = new DirectoryModelHost(models, cache);
+        if (depthMode != null && !DepthEstimator.isModelAvailable(host, depthMode)) {
+            throw new IllegalArgumentException("No " + depthOpt + " depth model in " + models);
+        }
+        Clip clip = frameSource.isDirectory() ? Clip.of(loadFrames(frameSource))
+                : Clip.of(new FrameRecording.Reader(frameSource));
+        if (rotationOpt != null) Arrays.fill(clip.rotation, Integer.parseInt(rotationOpt));
+        System.out.printf(Locale.US, "%d frames from %s, rotation %s, depth %s, %s pace%n",
+                clip.size(), frameSource, rotationOpt != null ? rotationOpt
+                        : frameSource.isDirectory() ? "0" : "as recorded",
+                depthOpt, realtime ? "realtime" : "native");
+
+        List<Run> runs = new ArrayList<>();
+        for (int n : threads) {
+            try (DetectionLog log = out != null && runs.isEmpty()
+                    ? new DetectionLog(new File(out)) : null) {
+                Run run = run(host, clip, n, warmup, repeat, inputSize, depthMode, realtime, log);
+                run.print(System.out);
+                runs.add(run);
+            }
+        }
+        String csv = opt.get("csv");
+        if (csv != null) writeCsv(new File(csv), runs);
+    }
+
+    private static Run run(ModelHost host, Clip clip, int threads, int warmup, int repeat,
+                           int inputSize, EnvMode depthMode, boolean realtime, DetectionLog log)
+            throws Exception {
+        SessionProfile profile = SessionProfile.DEFAULT.withThreads(threads, 1);
+        Run run = new Run(threads, clip.size() * repeat);
+        MemoryProbe probe = MemoryProbe.start("threads=" + threads);
+        try (ObjectDetector detector = new ObjectDetector(host, profile);
+             DepthEstimator depth = depthMode == null ? null : new DepthEstimator(host, depthMode,
+                     DepthEstimator.SessionMode.PERSISTENT, profile)) {
+            if (inputSize > 0) detector.setInputSize(inputSize);
+            if (depth != null) {
+                PackedYuvImage first = clip.frames.get(0);
+                boolean swap = clip.rotation[0] == 90 || clip.rotation[0] == 270;
+                depth.warmUp(swap ? first.getHeight() : first.getWidth(),
+                        swap ? first.getWidth() : first.getHeight());
+            }
+            StereoDepthProcessor fusion = new StereoDepthProcessor(0.06f, 0.8f);
+            long[] t = new long[STAGES.length];
+            for (int i = 0; i < warmup; i++) {
+                int f = i % clip.size();
+                frame(detector, depth, fusion, clip.frames.get(f), clip.rotation[f], i, t, null, f);
+            }
+            long wall0 = System.nanoTime();
+            long passMs = clip.timestampMs[clip.size() - 1] + Clip.FRAME_GAP_MS;
+            for (int r = 0; r < repeat; r++) {
+                for (int f = 0; f < clip.size(); f++) {
+                    long tsMs = r * passMs + clip.timestampMs[f];
+                    if (realtime) {
+                        long waitNs = wall0 + tsMs * 1_000_000L - System.nanoTime();
+                        if (waitNs > 0) Thread.sleep(waitNs / 1_000_000L, (int) (waitNs % 1_000_000L));
+                    }
+                    frame(detector, depth, fusion, clip.frames.get(f), clip.rotation[f], tsMs, t,
+                            r == 0 ? log : null, f);
+                    run.add(t);
+                }
+            }
+            run.wallNs = System.nanoTime() - wall0;
+            run.inputW = detector.getInputWidth();
+            run.inputH = detector.getInputHeight();
+        } finally {
+            run.memory = probe.stop();
+        }
+        return run;
+    }
+
+    /**
+     * One frame through the whole pipeline; stage times in ns go to {@code t} and the result, as
+     * frame {@code index}, to {@code log} when given.
+     */
+    private static void frame(ObjectDetector detector, DepthEstimator depth,
+                              StereoDepthProcessor fusion, ImageProxy image, int rotation,
+                              long timestampMs, long[] t, DetectionLog log, int index)
+            throws Exception {
+        boolean swap = rotation == 90 || rotation == 270;
+        int w = swap ? image.getHeight() : image.getWidth();
+        int h = swap ? image.getWidth() : image.getHeight();
+        Arrays.fill(t, 0);
+
+        long t0 = System.nanoTime();
+        int[] argb = depth != null ? Yuv.toArgb(image, rotation) : null;
+        long t1 = System.nanoTime();
+        ObjectDetector.PreparedInput in = detector.prepare(image, rotation);
+        long t2 = System.nanoTime();
+        List<ObjectDetector.Detection> dets;
+        try {
+            dets = detector.detect(in);
+        } finally {
+            detector.recycle(in);
+        }
+        long[] split = detector.getLastStageNanos();
+        long t3 = System.nanoTime();
+        t[0] = t1 - t0;
+        t[1] = t2 - t1;
+        t[2] = split[0];
+        t[3] = split[1];
+        t[4] = split[2];
+        DepthEstimator.DepthMap map = null;
+        if (depth != null) {
+            map = depth.estimate(argb, w, h, timestampMs);
+            long t4 = System.nanoTime();
+            dets = depth.attachDepth(dets, map, timestampMs);
+            long t5 = System.nanoTime();
+            dets = fusion.fuseDepth(map, dets, w, h);
+            long t6 = System.nanoTime();
+            t[5] = t4 - t3;
+            t[6] = t5 - t4;
+            t[7] = t6 - t5;
+            t3 = t6;
+        }
+        t[8] = t3 - t0;
+        if (log != null) {
+            long tsNs = image instanceof FrameRecording.Frame
+                    ? ((FrameRecording.Frame) image).getTimestampNs() : timestampMs * 1_000_000L;
+            log.write(index, tsNs, timestampMs, w, h, dets, map);
+        }
+    }
+
+    /** Frames to replay with their rotation and timestamps (ms from the first frame). */
+    private static final class Clip {
+        /** Spacing of frames without recorded timestamps (about 30 fps). */
+        static final long FRAME_GAP_MS = 33;
+
+        final List<PackedYuvImage> frames;
+        final int[] rotation;
+        final long[] timestampMs;
+
+        private Clip(List<PackedYuvImage> frames) {
+            this.frames = frames;
+            this.rotation = new int[frames.size()];
+            this.timestampMs = new long[frames.size()];
+        }
+
+        int size() {
+            return frames.size();
+        }
+
+        static Clip of(List<YuvFrame> loaded) {
+            Clip clip = new Clip(new ArrayList<>(loaded));
+            for (int i = 0; i < clip.size(); i++) clip.timestampMs[i] = i * FRAME_GAP_MS;
+            return clip;
+        }
+
+        /** Maps every frame of the recording; the reader stays open for the process lifetime. */
+        static Clip of(FrameRecording.Reader reader) throws IOException {
+            if (reader.getFrameCount() == 0) throw new IOException("Empty recording");
+            List<FrameRecording.Frame> recorded = new ArrayList<>(reader.getFrameCount());
+            for (int i = 0; i < reader.getFrameCount(); i++) recorded.add(reader.frame(i));
+            Clip clip = new Clip(new ArrayList<>(recorded));
+            long first = recorded.get(0).getTimestampNs();
+            for (int i = 0; i < clip.size(); i++) {
+                clip.rotation[i] = recorded.get(i).getRotationDegrees();
+                clip.timestampMs[i] = (recorded.get(i).getTimestampNs() - first) / 1_000_000L;
+            }
+            return clip;
+        }
+    }
+
+    /** Results for one thread count. */
+    private static final class Run {
+        final int threads;
+        final long[][] samples;
+        int count;
+        long wallNs;
+        int inputW, inputH;
+        MemoryProbe.Report memory;
+
+        Run(int threads, int frames) {
+            this.threads = threads;
+            this.samples = new long[STAGES.length][frames];
+        }
+
+        void add(long[] t) {
+            for (int s = 0; s < t.length; s++) samples[s][count] = t[s];
+            count++;
+        }
+
+        /** {@code q}-quantile of stage {@code s} in ms (nearest rank). */
+        double percentileMs(int s, double q) {
+            long[] v = Arrays.copyOf(samples[s], count);
+            Arrays.sort(v);
+            int i = (int) Math.ceil(q * count) - 1;
+            return v[Math.max(0, Math.min(count - 1, i))] / 1e6;
+        }
+
+        double meanMs(int s) {
+            long sum = 0;
+            for (int i = 0; i < count; i++) sum += samples[s][i];
+            return sum / 1e6 / count;
+        }
+
+        double fps() {
+            return count * 1e9 / wallNs;
+        }
+
+        void print(PrintStream out) {
+            out.printf(Locale.US, "%nthreads=%d  input %dx%d  %d frames  %.2f fps  "
+                            + "peak rss %d KiB (%+d KiB during run)%n",
+                    threads, inputW, inputH, count, fps(), memory.rssPeakKb,
+                    memory.rssPeakDeltaKb);
+            out.printf(Locale.US, "%-11s %9s %9s %9s %9s %9s%n",
+                    "stage (ms)", "mean", "p50", "p90", "p99", "max");
+            for (int s = 0; s < STAGES.length; s++) {
+                out.printf(Locale.US, "%-11s %9.2f %9.2f %9.2f %9.2f %9.2f%n", STAGES[s],
+                        meanMs(s), percentileMs(s, 0.5), percentileMs(s, 0.9),
+                        percentileMs(s, 0.99), percentileMs(s, 1));
+            }
+        }
+    }
+
+    private static void writeCsv(File file, List<Run> runs) throws IOException {
+        try (PrintWriter w = new PrintWriter(file, "UTF-8")) {
+            w.println("threads,stage,mean_ms,p50_ms,p90_ms,p99_ms,max_ms,fps,peak_rss_kb,"
+                    + "peak_rss_delta_kb");
+            for (Run r : runs) {
+                for (int s = 0; s < STAGES.length; s++) {
+                    w.printf(Locale.US, "%d,%s,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%d,%d%n", r.threads,
+                            STAGES[s], r.meanMs(s), r.percentileMs(s, 0.5),
+                            r.percentileMs(s, 0.9), r.percentileMs(s, 0.99),
+                            r.percentileMs(s, 1), r.fps(), r.memory.rssPeakKb,
+                            r.memory.rssPeakDeltaKb);
+                }
+            }
+        }
+    }
+
+    /** Raw NV21 / I420 frames, sorted by name. */
+    static List<YuvFrame> loadFrames(File dir) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) throw new IOException("Not a directory: " + dir);
+        Arrays.sort(files);
+        List<YuvFrame> out = new ArrayList<>();
+        for (File f : files) {
+            String name = f.getName().toLowerCase(Locale.US);
+            boolean nv21 = name.endsWith(".nv21");
+            if (!nv21 && !name.endsWith(".i420") && !name.endsWith(".yuv")) continue;
+            Matcher m = SIZE.matcher(name);
+            int w = -1, h = -1;
+            while (m.find()) {
+                w = Integer.parseInt(m.group(1));
+                h = Integer.parseInt(m.group(2));
+            }
+            if (w <= 0) throw new IOException("No WxH in file name: " + f);
+            int cw = (w + 1) / 2, ch = (h + 1) / 2;
+            byte[] data = Files.readAllBytes(f.toPath());
+            if (data.length != w * h + 2 * cw * ch) {
+                throw new IOException(f + ": " + data.length + " bytes, expected "
+                        + (w * h + 2 * cw * ch));
+            }
+            byte[] y = Arrays.copyOfRange(data, 0, w * h);
+            byte[] chroma = Arrays.copyOfRange(data, w * h, data.length);
+            out.add(nv21 ? YuvFrame.of(w, h, y, w, chroma, 2 * cw, 2)
+                    : YuvFrame.of(w, h, y, w, chroma, cw, 1));
+        }
+        if (out.isEmpty()) throw new IOException("No .nv21/.i420/.yuv frames in " + dir);
+        return out;
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> out = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected --name value, got " + args[i]);
+            }
+            out.put(args[i].substring(2), args[++i]);
+        }
+        return out;
+    }
+
+    private static String require(Map<String, String> opt, String name) {
+        String v = opt.get(name);
+        if (v == null) throw new IllegalArgumentException("Missing --" + name);
+        return v;
+    }
+}
@@ -0,0 +1,62 @@
+package vn.edu.usth.objectdetectmobile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+/** Detector output decoding and NMS on a synthetic or recorded {@code [1,84,8400]} tensor. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PostprocessBenchmark {
+
+    @Param({"CLASS_AWARE", "CLASS_AGNOSTIC", "SOFT"})
+    public Nms.Mode nmsMode;
+
+    private final YoloDecoder decoder = new YoloDecoder();
+    private final YoloDecoder.Candidates candidates = new YoloDecoder.Candidates();
+    private final Nms nms = new Nms();
+    // Direct and native-order, like the detector's pinned output tensor.
+    private FloatBuffer output;
+    private long[] shape;
+
+    @Setup
+    public void setup() {
+        float[] values = BenchData.yoloOutput(7);
+        shape = BenchData.yoloShape(values);
+        output = ByteBuffer.allocateDirect(values.length * 4).order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        output.put(values);
+    }
+
+    @Benchmark
+    public int decode() {
+        decoder.decode(output, shape, 0.25f, ObjectDetector.DEFAULT_PRE_NMS_TOP_K,
+                1f, 0f, 80f, 640, 480, candidates);
+        return candidates.count;
+    }
+
+    /** Decode plus suppression, i.e. everything {@code parse()} does after the session run. */
+    @Benchmark
+    public int decodeAndNms() {
+        decoder.decode(output, shape, 0.25f, ObjectDetector.DEFAULT_PRE_NMS_TOP_K,
+                1f, 0f, 80f, 640, 480, candidates);
+        return nms.run(candidates, nmsMode, 0.45f, 0.25f);
+    }
+}
@@ -0,0 +1,193 @@
+package vn.edu.usth.objectdetectmobile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Frame-by-frame comparison of two {@link DetectionLog}s made from the same recording, e.g. a
+ * replay on the previous build against one on the current build.
+ * <p>
+ * Detections are paired greedily by class and IoU. A frame differs when a detection has no
+ * partner ({@code missing} from the candidate, or {@code extra} in it), or a pair's score or
+ * depth moved by more than the tolerance. A frame logged on only one side differs as a whole.
+ * Prints the differing frames and a summary; the exit status is 1 when any frame differs.
+ * <pre>
+ * ./gradlew :app:replayDiff -Pdiff.args="BASE.jsonl CANDIDATE.jsonl [--iou 0.5]
+ *     [--score-tol 0.01] [--depth-tol 1] [--show 20]"
+ * </pre>
+ */
+public final class ReplayDiff {
+
+    private static final Pattern FRAME = Pattern.compile("\"frame\":(\\d+)");
+    private static final Pattern DEPTH_CENTER = Pattern.compile("\"center\":(null|[-0-9.eE]+)");
+    private static final Pattern DET = Pattern.compile("\\[([^\\[\\]]*)\\]");
+
+    private ReplayDiff() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: ReplayDiff BASE CANDIDATE [--iou 0.5] "
+                    + "[--score-tol 0.01] [--depth-tol 1] [--show 20]");
+        }
+        float iou = 0.5f, scoreTol = 0.01f, depthTol = 1f;
+        int show = 20;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--iou": iou = Float.parseFloat(args[i + 1]); break;
+                case "--score-tol": scoreTol = Float.parseFloat(args[i + 1]); break;
+                case "--depth-tol": depthTol = Float.parseFloat(args[i + 1]); break;
+                case "--show": show = Integer.parseInt(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        Map<Integer, Frame> base = load(new File(args[0]));
+        Map<Integer, Frame> cand = load(new File(args[1]));
+
+        int common = 0, differing = 0, missing = 0, extra = 0, matched = 0;
+        int baseOnly = 0, candOnly = 0;
+        float maxScore = 0f, maxDepth = 0f, maxCenter = 0f;
+        double sumIou = 0;
+        Set<Integer> frames = new TreeSet<>(base.keySet());
+        frames.addAll(cand.keySet());
+        for (int frame : frames) {
+            Frame b = base.get(frame), c = cand.get(frame);
+            if (b == null || c == null) {
+                // Logged on one side only: the whole frame differs.
+                if (b == null) {
+                    candOnly++;
+                    extra += c.dets.size();
+                } else {
+                    baseOnly++;
+                    missing += b.dets.size();
+                }
+                if (differing++ < show) {
+                    System.out.printf(Locale.US, "frame %d: only in %s (%d detections)%n",
+                            frame, b == null ? "candidate" : "base",
+                            (b == null ? c : b).dets.size());
+                }
+                continue;
+            }
+            common++;
+            FrameDiff d = compare(b, c, iou);
+            missing += d.missing;
+            extra += d.extra;
+            matched += d.matched;
+            sumIou += d.sumIou;
+            maxScore = Math.max(maxScore, d.maxScore);
+            maxDepth = Math.max(maxDepth, d.maxDepth);
+            maxCenter = Math.max(maxCenter, d.center);
+            boolean differs = d.missing > 0 || d.extra > 0 || d.maxScore > scoreTol
+                    || d.maxDepth > depthTol || d.center > depthTol;
+            if (!differs) continue;
+            if (differing++ < show) {
+                System.out.printf(Locale.US, "frame %d: %d matched, %d missing, %d extra, "
+                                + "max |dscore| %.4f, max |ddepth| %.3f, |dcenter| %.3f%n",
+                        frame, d.matched, d.missing, d.extra, d.maxScore, d.maxDepth,
+                        d.center);
+            }
+        }
+        System.out.printf(Locale.US, "%n%d frames in base, %d in candidate, %d compared, "
+                        + "%d only in base, %d only in candidate, %d differ%n", base.size(),
+                cand.size(), common, baseOnly, candOnly, differing);
+        System.out.printf(Locale.US, "detections: %d matched (mean IoU %.4f), %d missing, "
+                        + "%d extra; max |dscore| %.4f, max |ddepth| %.3f, max |dcenter| %.3f%n",
+                matched, matched == 0 ? 0 : sumIou / matched, missing, extra, maxScore, maxDepth,
+                maxCenter);
+        if (differing > 0 || common == 0) System.exit(1);
+    }
+
+    private static FrameDiff compare(Frame b, Frame c, float minIou) {
+        FrameDiff d = new FrameDiff();
+        boolean[] used = new boolean[c.dets.size()];
+        for (float[] x : b.dets) {
+            int best = -1;
+            float bestIou = minIou;
+            for (int j = 0; j < c.dets.size(); j++) {
+                float[] y = c.dets.get(j);
+                if (used[j] || x[0] != y[0]) continue;
+                float o = iou(x, y);
+                if (o >= bestIou) {
+                    bestIou = o;
+                    best = j;
+                }
+            }
+            if (best < 0) {
+                d.missing++;
+                continue;
+            }
+            used[best] = true;
+            float[] y = c.dets.get(best);
+            d.matched++;
+            d.sumIou += bestIou;
+            d.maxScore = Math.max(d.maxScore, Math.abs(x[1] - y[1]));
+            d.maxDepth = Math.max(d.maxDepth, delta(x[6], y[6]));
+        }
+        d.extra = c.dets.size() - d.matched;
+        d.center = delta(b.depthCenter, c.depthCenter);
+        return d;
+    }
+
+    /** Absolute difference; infinite when only one side has a value. */
+    private static float delta(float a, float b) {
+        if (Float.isNaN(a) && Float.isNaN(b)) return 0f;
+        if (Float.isNaN(a) || Float.isNaN(b)) return Float.POSITIVE_INFINITY;
+        return Math.abs(a - b);
+    }
+
+    /** IoU of two {@code [cls, score, x1, y1, x2, y2, ..]} rows. */
+    private static float iou(float[] a, float[] b) {
+        float ix = Math.max(0f, Math.min(a[4], b[4]) - Math.max(a[2], b[2]));
+        float iy = Math.max(0f, Math.min(a[5], b[5]) - Math.max(a[3], b[3]));
+        float inter = ix * iy;
+        float union = (a[4] - a[2]) * (a[5] - a[3]) + (b[4] - b[2]) * (b[5] - b[3]) - inter;
+        return union <= 0f ? 0f : inter / union;
+    }
+
+    private static Map<Integer, Frame> load(File file) throws IOException {
+        Map<Integer, Frame> out = new TreeMap<>();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            if (line.isEmpty()) continue;
+            Matcher m = FRAME.matcher(line);
+            if (!m.find()) throw new IOException(file + ": not a replay output line: " + line);
+            Frame f = new Frame();
+            Matcher center = DEPTH_CENTER.matcher(line);
+            f.depthCenter = center.find() ? parse(center.group(1)) : Float.NaN;
+            int dets = line.indexOf("\"dets\":[");
+            Matcher det = DET.matcher(line.substring(dets + 8));
+            while (det.find()) {
+                String[] parts = det.group(1).split(",");
+                float[] row = new float[parts.length];
+                for (int i = 0; i < parts.length; i++) row[i] = parse(parts[i]);
+                f.dets.add(row);
+            }
+            out.put(Integer.parseInt(m.group(1)), f);
+        }
+        return out;
+    }
+
+    private static float parse(String s) {
+        return "null".equals(s) ? Float.NaN : Float.parseFloat(s);
+    }
+
+    private static final class Frame {
+        float depthCenter;
+        final List<float[]> dets = new ArrayList<>();
+    }
+
+    private static final class FrameDiff {
+        int matched, missing, extra;
+        double sumIou;
+        float maxScore, maxDepth, center;
+    }
+}
@@ -0,0 +1,58 @@
+package vn.edu.usth.objectdetectmobile;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * {@link PackedYuvImage} over heap arrays, for running the frame kernels on the host. Synthetic
+ * frames pad their row strides like real camera buffers; chroma is either planar (pixel stride 1)
+ * or NV21-style interleaved (pixel stride 2, V and U sharing one buffer).
+ */
+public final class YuvFrame extends PackedYuvImage {
+    private static final int ROW_PADDING = 16;
+
+    private YuvFrame(int w, int h, byte[] y, int yRowStride,
+                     byte[] chroma, int uvRowStride, int uvPixelStride) {
+        super(w, h, ByteBuffer.wrap(y), yRowStride, ByteBuffer.wrap(chroma), uvRowStride,
+                uvPixelStride);
+    }
+
+    /**
+     * Frame from raw planes. {@code chroma} holds U then V ({@code uvPixelStride == 1}, each
+     * {@code uvRowStride * ceil(h/2)} bytes) or one interleaved VU plane ({@code uvPixelStride == 2}).
+     */
+    public static YuvFrame of(int w, int h, byte[] y, int yRowStride,
+                              byte[] chroma, int uvRowStride, int uvPixelStride) {
+        return new YuvFrame(w, h, y, yRowStride, chroma, uvRowStride, uvPixelStride);
+    }
+
+    /** Smooth gradients plus noise, so resampling and blur see camera-like content. */
+    public static YuvFrame synthetic(int w, int h, int uvPixelStride, long seed) {
+        Random rnd = new Random(seed);
+        int yRs = w + ROW_PADDING;
+        byte[] y = new byte[yRs * h];
+        for (int j = 0; j < h; j++) {
+            for (int i = 0; i < w; i++) {
+                int v = 40 + (i * 160 / w + j * 40 / h) + rnd.nextInt(16);
+                y[j * yRs + i] = (byte) v;
+            }
+        }
+        int cw = (w + 1) / 2, ch = (h + 1) / 2;
+        int uvRs = (uvPixelStride == 2 ? cw * 2 : cw) + ROW_PADDING;
+        byte[] chroma = new byte[uvPixelStride == 2 ? uvRs * ch + 1 : 2 * uvRs * ch];
+        for (int j = 0; j < ch; j++) {
+            for (int i = 0; i < cw; i++) {
+                int u = 100 + i * 50 / cw + rnd.nextInt(8);
+                int v = 150 - j * 50 / ch + rnd.nextInt(8);
+                if (uvPixelStride == 2) {
+                    chroma[j * uvRs + 2 * i] = (byte) v;
+                    chroma[j * uvRs + 2 * i + 1] = (byte) u;
+                } else {
+                    chroma[j * uvRs + i] = (byte) u;
+                    chroma[uvRs * ch + j * uvRs + i] = (byte) v;
+                }
+            }
+        }
+        return of(w, h, y, yRs, chroma, uvRs, uvPixelStride);
+    }
+}
@@ -0,0 +1,65 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.content.Context;
+import android.os.Environment;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link ModelHost} backed by an app {@link Context}. A model downloaded into the app's external
+ * Downloads folder takes precedence over the bundled asset of the same name, which is installed
+ * through {@link ModelStore}.
+ */
+public final class AndroidModelHost implements ModelHost {
+
+    private final Context ctx;
+
+    public AndroidModelHost(Context ctx) {
+        this.ctx = ctx.getApplicationContext() != null ? ctx.getApplicationContext() : ctx;
+    }
+
+    @Override
+    public boolean hasModel(String name) {
+        File f = downloaded(name);
+        return f != null || assetExists(name);
+    }
+
+    @Override
+    public String modelPath(String name) throws IOException {
+        File f = downloaded(name);
+        if (f != null) return f.getAbsolutePath();
+        return ModelStore.get(ctx).install(name).getAbsolutePath();
+    }
+
+    @Override
+    public OptimizedModelCache optimizedModelCache() {
+        return OptimizedModelCache.forContext(ctx);
+    }
+
+    @Override
+    public SessionProfile loadProfile(String model, SessionProfile fallback) {
+        return SessionProfileStore.load(ctx, model, fallback);
+    }
+
+    @Override
+    public void saveProfile(String model, SessionProfile profile) {
+        SessionProfileStore.save(ctx, model, profile);
+    }
+
+    private File downloaded(String name) {
+        File dir = ctx.getExternalFilesDir(Environment.DIRECTORY_DOWNLOADS);
+        if (dir == null) return null;
+        File f = new File(dir, name);
+        return f.exists() && f.length() > 0 ? f : null;
+    }
+
+    private boolean assetExists(String name) {
+        try (InputStream ignored = ctx.getAssets().open(name)) {
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package vn.edu.usth.objectdetectmobile;
+
+/**
+ * Reduces the depth inside a detection box to one raw value.
+ * <p>
+ * The box is sampled once on a fixed {@value #GRID}x{@value #GRID} grid of cell centres, so the
+ * cost per box is constant regardless of its size. Invalid samples (NaN or non-positive) are
+ * skipped. Order statistics use in-place quickselect over the bounded sample buffer rather than a
+ * sort. Shared by the mono path ({@link DepthEstimator}) and the stereo path
+ * ({@link StereoDepthProcessor}). Not thread-safe: keep one instance per caller.
+ */
+public final class DepthAggregator {
+
+    public enum Statistic {
+        /** Plain mean; background pixels inside the box pull it away from the object. */
+        MEAN,
+        /** Median of the samples; robust to up to half of the box being background. */
+        MEDIAN,
+        /** Mean of the samples left after dropping {@code trimFraction} from each end. */
+        TRIMMED_MEAN,
+        /** Low percentile of the raw values, i.e. the nearer surface inside the box. */
+        NEAR_PERCENTILE,
+        /** Mean weighted toward the box centre, where the object usually is. */
+        CENTER_WEIGHTED
+    }
+
+    /** Samples per box side. */
+    public static final int GRID = 12;
+    private static final float MIN_CENTER_WEIGHT = 0.05f;
+
+    private final float[] values = new float[GRID * GRID];
+    private final float[] weights = new float[GRID * GRID];
+    private volatile Statistic statistic;
+    private volatile float trimFraction = 0.2f;
+    private volatile float percentile = 0.25f;
+
+    public DepthAggregator(Statistic statistic) {
+        this.statistic = statistic;
+    }
+
+    public void setStatistic(Statistic statistic) {
+        this.statistic = statistic;
+    }
+
+    public Statistic getStatistic() {
+        return statistic;
+    }
+
+    /** Fraction (0..0.45) dropped from each end by {@link Statistic#TRIMMED_MEAN}. */
+    public void setTrimFraction(float trimFraction) {
+        this.trimFraction = Math.max(0f, Math.min(0.45f, trimFraction));
+    }
+
+    /** Percentile (0..1) used by {@link Statistic#NEAR_PERCENTILE}. */
+    public void setPercentile(float percentile) {
+        this.percentile = Math.max(0f, Math.min(1f, percentile));
+    }
+
+    /** Raw depth for the box, or NaN when the box holds no valid samples. */
+    public float aggregate(DepthEstimator.DepthMap map, ObjectDetector.Detection d) {
+        if (map.width <= 0 || map.height <= 0) return Float.NaN;
+        Statistic stat = statistic;
+        int n = collect(map, d, stat == Statistic.CENTER_WEIGHTED);
+        if (n == 0) return Float.NaN;
+        switch (stat) {
+            case MEDIAN:
+                return median(n);
+            case TRIMMED_MEAN:
+                return trimmedMean(n, trimFraction);
+            case NEAR_PERCENTILE:
+                return select(0, n, Math.round(percentile * (n - 1)));
+            case CENTER_WEIGHTED:
+                return weightedMean(n);
+            case MEAN:
+            default:
+                return mean(0, n);
+        }
+    }
+
+    /** Single pass over the box; returns the number of valid samples stored in {@link #values}. */
+    private int collect(DepthEstimator.DepthMap map, ObjectDetector.Detection d, boolean weighted) {
+        float bx1 = Math.max(0f, Math.min(d.x1, d.x2)), bx2 = Math.min(map.width, Math.max(d.x1, d.x2));
+        float by1 = Math.max(0f, Math.min(d.y1, d.y2)), by2 = Math.min(map.height, Math.max(d.y1, d.y2));
+        float cellW = Math.max(0f, bx2 - bx1) / GRID;
+        float cellH = Math.max(0f, by2 - by1) / GRID;
+        int n = 0;
+        for (int gy = 0; gy < GRID; gy++) {
+            float y = by1 + (gy + 0.5f) * cellH;
+            float dy = (gy + 0.5f) / GRID * 2f - 1f;
+            for (int gx = 0; gx < GRID; gx++) {
+                float v = map.sample(bx1 + (gx + 0.5f) * cellW, y);
+                if (Float.isNaN(v) || v <= 0f) continue;
+                if (weighted) {
+                    float dx = (gx + 0.5f) / GRID * 2f - 1f;
+                    weights[n] = Math.max(MIN_CENTER_WEIGHT, 1f - 0.5f * (dx * dx + dy * dy));
+                }
+                values[n++] = v;
+            }
+        }
+        return n;
+    }
+
+    private float mean(int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) sum += values[i];
+        return (float) (sum / (to - from));
+    }
+
+    private float weightedMean(int n) {
+        double sum = 0, wsum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += values[i] * weights[i];
+            wsum += weights[i];
+        }
+        return (float) (sum / wsum);
+    }
+
+    private float median(int n) {
+        int mid = n >>> 1;
+        float upper = select(0, n, mid);
+        if ((n & 1) == 1) return upper;
+        // After selection everything left of mid is <= upper; the lower middle is their max.
+        float lower = values[0];
+        for (int i = 1; i < mid; i++) lower = Math.max(lower, values[i]);
+        return 0.5f * (lower + upper);
+    }
+
+    private float trimmedMean(int n, float trim) {
+        int lo = (int) (n * trim);
+        int hi = n - lo;
+        if (hi - lo <= 0) return median(n);
+        if (lo > 0) {
+            // Two selections leave [lo, hi) holding exactly the middle order statistics.
+            select(0, n, lo);
+            select(lo, n, hi - 1);
+        }
+        return mean(lo, hi);
+    }
+
+    /** Hoare quickselect on values[from, to): places the k-th smallest at index k and returns it. */
+    private float select(int from, int to, int k) {
+        float[] a = values;
+        int lo = from, hi = to - 1;
+        while (lo < hi) {
+            float pivot = a[(lo + hi) >>> 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (a[i] < pivot) i++;
+                while (a[j] > pivot) j--;
+                if (i <= j) {
+                    float t = a[i]; a[i] = a[j]; a[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) hi = j;
+            else if (k >= i) lo = i;
+            else break;
+        }
+        return a[k];
+    }
+}
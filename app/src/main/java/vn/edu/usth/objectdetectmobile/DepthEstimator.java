@@ -1,18 +1,20 @@
 package vn.edu.usth.objectdetectmobile;
 
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
-import android.os.Environment;
+import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
 import android.util.Log;
 
-import java.io.File;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.locks.ReentrantLock;
 
 import vn.edu.usth.objectdetectmobile.MainActivity.EnvMode;
 
@@ -21,11 +23,14 @@ import ai.onnxruntime.OnnxValue;
 import ai.onnxruntime.OrtEnvironment;
 import ai.onnxruntime.OrtException;
 import ai.onnxruntime.OrtSession;
+import ai.onnxruntime.TensorInfo;
 
 /**
  * Lightweight wrapper around the Depth Anything ONNX model.
- * Creates a fresh ORT session for each inference so the detector can continue running even
- * if depth runs out of memory. This keeps the two pipelines decoupled.
+ * By default the ORT session is built once, warmed up and reused by every {@link #estimate} call.
+ * It is released under memory pressure ({@link #onTrimMemory}) and rebuilt lazily on the next call.
+ * Low-RAM devices use {@link SessionMode#PER_CALL}, which creates a fresh session for each
+ * inference so the detector can continue running even if depth runs out of memory.
  */
 public class DepthEstimator implements AutoCloseable {
     private static final String TAG = "DepthEstimator";
@@ -34,18 +39,99 @@ public class DepthEstimator implements AutoCloseable {
     private static final String OUTDOOR_MODEL_ASSET = "depth_anything_v2_metric_vkitti_vits.onnx";
     private static final String OUTDOOR_MODEL_DOWNLOAD = "depth_anything_v2_metric_vkitti_vits_fp16.onnx";
     private static final boolean LOG_RAW_DEPTH = true;
+    private static final Metrics.Histogram PREPROCESS_TIME = Metrics.timer("depth.preprocess");
+    private static final Metrics.Histogram INFER_TIME = Metrics.timer("depth.infer");
+    private static final Metrics.Histogram SESSION_LOAD_TIME = Metrics.timer("depth.session_load");
+    private static final Metrics.Histogram ATTACH_TIME = Metrics.timer("depth.attach");
+    // How old the attached map is relative to the frame, in ms: the cost of DEPTH_INTERVAL_MS.
+    private static final Metrics.Histogram MAP_AGE = Metrics.histogram("depth.age_ms");
+
+    /** How the ORT session backing {@link #estimate} is managed. */
+    public enum SessionMode {
+        /** One long-lived session, warmed up once and reused across frames. */
+        PERSISTENT,
+        /** Fresh session per inference; slower but keeps no model weights resident. */
+        PER_CALL
+    }
 
+    /**
+     * Relative depth for one frame. The map keeps the model-resolution output (the letterbox
+     * content region of it) and answers {@link #sample} queries in frame coordinates by bilinear
+     * interpolation, so nothing is upsampled unless {@link #toFullResolution()} is asked for.
+     */
     public static class DepthMap {
-        public final float[] depth;
+        /** Frame size the map answers queries for. */
         public final int width, height;
         public final float min, max;
+        /** {@link SystemClock#elapsedRealtime()} of the frame the map was estimated from. */
+        public final long timestampMs;
+
+        private final float[] grid;
+        private final int gridStride, gridX0, gridY0, gridW, gridH;
+        private final float xRatio, yRatio;
+        private float[] full;
 
         public DepthMap(float[] depth, int width, int height, float min, float max) {
-            this.depth = depth;
+            this(depth, width, height, min, max, SystemClock.elapsedRealtime());
+        }
+
+        /** Wraps an already full-resolution map ({@code width * height} values). */
+        public DepthMap(float[] depth, int width, int height, float min, float max, long timestampMs) {
+            this(depth, width, 0, 0, width, height, width, height, min, max, timestampMs);
+        }
+
+        /**
+         * Lazy map over the {@code gridW x gridH} window at ({@code gridX0}, {@code gridY0}) of a
+         * row-major grid with row length {@code gridStride}, stretched over {@code width x height}.
+         */
+        DepthMap(float[] grid, int gridStride, int gridX0, int gridY0, int gridW, int gridH,
+                 int width, int height, float min, float max, long timestampMs) {
+            this.grid = grid;
+            this.gridStride = gridStride;
+            this.gridX0 = gridX0;
+            this.gridY0 = gridY0;
+            this.gridW = gridW;
+            this.gridH = gridH;
             this.width = width;
             this.height = height;
             this.min = min;
             this.max = max;
+            this.timestampMs = timestampMs;
+            // Corner-aligned, matching resizeBilinear.
+            this.xRatio = width > 1 ? (gridW - 1f) / (width - 1f) : 0f;
+            this.yRatio = height > 1 ? (gridH - 1f) / (height - 1f) : 0f;
+            if (gridX0 == 0 && gridY0 == 0 && gridW == width && gridH == height && gridStride == width) {
+                full = grid;
+            }
+        }
+
+        /** Depth at frame pixel ({@code x}, {@code y}); coordinates are clamped to the frame. */
+        public float sample(float x, float y) {
+            float sx = Math.max(0f, Math.min(width - 1f, x)) * xRatio;
+            float sy = Math.max(0f, Math.min(height - 1f, y)) * yRatio;
+            int x0 = (int) sx, y0 = (int) sy;
+            int x1 = Math.min(x0 + 1, gridW - 1), y1 = Math.min(y0 + 1, gridH - 1);
+            float lx = sx - x0, ly = sy - y0;
+            int r0 = (gridY0 + y0) * gridStride + gridX0;
+            int r1 = (gridY0 + y1) * gridStride + gridX0;
+            float top = lerp(grid[r0 + x0], grid[r0 + x1], lx);
+            float bottom = lerp(grid[r1 + x0], grid[r1 + x1], lx);
+            return lerp(top, bottom, ly);
+        }
+
+        /** Full {@code width * height} upsample, built on first use and cached. */
+        public synchronized float[] toFullResolution() {
+            if (full == null) {
+                float[] window = crop(grid, gridStride, grid.length / gridStride,
+                        gridX0, gridY0, gridW, gridH);
+                full = resizeBilinear(window, gridW, gridH, width, height);
+            }
+            return full;
+        }
+
+        /** How old this map is at {@code nowMs}. */
+        public long ageMs(long nowMs) {
+            return Math.max(0L, nowMs - timestampMs);
         }
     }
 
@@ -86,50 +172,247 @@ public class DepthEstimator implements AutoCloseable {
 
 
     private final OrtEnvironment env;
-    private final OrtSession.SessionOptions sessionOptions;
+    private final ModelHost host;
+    private final String profileKey;
+    private volatile SessionProfile profile;
+    private final OptimizedModelCache modelCache;
     private final String modelPath;
 
-    private final int inputSize = 518;
-    private final int multiple = 14;
-    private final float[] mean = {0.485f, 0.456f, 0.406f};
-    private final float[] std = {0.229f, 0.224f, 0.225f};
+    // Persistent session state; guarded by sessionLock.
+    private final ReentrantLock sessionLock = new ReentrantLock();
+    private final DepthAggregator aggregator = new DepthAggregator(DepthAggregator.Statistic.MEDIAN);
+    private volatile SessionMode sessionMode;
+    private OrtSession session;
+    // Mapped model backing the session, if any; dropped only after the session is closed.
+    private ByteBuffer sessionBytes;
+    private volatile MemoryProbe.Report lastLoadReport;
+    private String sessionInputName;
+    private boolean releaseRequested = false;
+    private boolean closed = false;
+    // Set once a session has shown dynamic H/W; rectangular inputs are only sent after that.
+    private volatile boolean dynamicInput;
+    // Whether any session has been opened, i.e. whether dynamicInput is meaningful yet.
+    private volatile boolean inputShapeKnown;
+    private volatile boolean rectangularInput = true;
+
+    private static final int INPUT_SIZE = 518;
+    private static final int MULTIPLE = 14;
+    private static final float[] MEAN = {0.485f, 0.456f, 0.406f};
+    private static final float[] STD = {0.229f, 0.224f, 0.225f};
 
     public DepthEstimator(@NonNull Context ctx) throws OrtException {
         this(ctx, EnvMode.INDOOR);
     }
 
     public DepthEstimator(@NonNull Context ctx, EnvMode mode) throws OrtException {
+        this(ctx, mode, defaultSessionMode(ctx));
+    }
+
+    public DepthEstimator(@NonNull Context ctx, EnvMode mode, SessionMode sessionMode)
+            throws OrtException {
+        this(ModelHost.forContext(ctx), mode, sessionMode);
+    }
+
+    public DepthEstimator(@NonNull Context ctx, EnvMode mode, SessionMode sessionMode,
+                          @NonNull SessionProfile profile) throws OrtException {
+        this(ModelHost.forContext(ctx), mode, sessionMode, profile);
+    }
+
+    public DepthEstimator(@NonNull ModelHost host, EnvMode mode, SessionMode sessionMode)
+            throws OrtException {
+        this(host, mode, sessionMode, host.loadProfile(profileKey(mode), SessionProfile.DEFAULT));
+    }
+
+    /**
+     * @param profile ORT settings and EP preference; the first session built falls back to CPU as
+     *                needed and the profile that worked is saved through {@code host}.
+     */
+    public DepthEstimator(@NonNull ModelHost host, EnvMode mode, SessionMode sessionMode,
+                          @NonNull SessionProfile profile) throws OrtException {
         env = OrtEnvironment.getEnvironment();
-        modelPath = resolveModelPath(ctx, mode);
-        sessionOptions = new OrtSession.SessionOptions();
+        this.host = host;
+        profileKey = profileKey(mode);
+        modelPath = resolveModelPath(host, mode);
+        modelCache = host.optimizedModelCache();
+        this.profile = profile;
+        this.sessionMode = sessionMode;
     }
 
-    public static boolean isModelAvailable(@NonNull Context ctx, EnvMode mode) {
-        // Prefer downloaded fp16 model, fallback to bundled asset.
-        for (String name : getCandidateNames(mode)) {
-            File f = getDownloadFile(ctx, name);
-            if (f != null && f.exists() && f.length() > 0) {
-                return true;
+    private static String profileKey(EnvMode mode) {
+        return SessionProfileStore.MODEL_DEPTH + "_" + mode.name().toLowerCase(Locale.US);
+    }
+
+    public SessionProfile getSessionProfile() {
+        return profile;
+    }
+
+    /** Time and memory spent building the most recent session, or null before the first. */
+    public MemoryProbe.Report getLastLoadReport() {
+        return lastLoadReport;
+    }
+
+    /** Low-RAM devices keep the decoupled per-call session; everyone else gets a persistent one. */
+    public static SessionMode defaultSessionMode(@NonNull Context ctx) {
+        ActivityManager am = (ActivityManager) ctx.getSystemService(Context.ACTIVITY_SERVICE);
+        if (am != null && am.isLowRamDevice()) {
+            return SessionMode.PER_CALL;
+        }
+        return SessionMode.PERSISTENT;
+    }
+
+    public SessionMode getSessionMode() {
+        return sessionMode;
+    }
+
+    /**
+     * When enabled (default) and the model takes dynamic H/W, frames are fed at their own aspect
+     * ratio (long side {@value #INPUT_SIZE}, both sides multiples of the patch size) instead of
+     * padded to a square, so no patches are spent on padding. Static-shape models stay square.
+     */
+    public void setRectangularInput(boolean enabled) {
+        rectangularInput = enabled;
+    }
+
+    /**
+     * Builds the persistent session and runs one dummy inference so the first real frame does not
+     * pay for graph optimization and arena allocation. The dummy input has the shape
+     * {@link #estimate} will send for {@code frameW x frameH} frames, which for a rectangular
+     * dynamic model is only known once the session is open. No-op in
+     * {@link SessionMode#PER_CALL}. Blocking; call from a background thread.
+     */
+    public void warmUp(int frameW, int frameH) throws OrtException {
+        if (sessionMode != SessionMode.PERSISTENT) return;
+        long t0 = System.nanoTime();
+        int modelW = INPUT_SIZE, modelH = INPUT_SIZE;
+        sessionLock.lock();
+        try {
+            OrtSession s = acquireSessionLocked();
+            if (s == null) return;
+            if (rectangularInput && dynamicInput) {
+                int[] size = scaledSize(frameW, frameH);
+                modelW = size[0];
+                modelH = size[1];
+            }
+            long[] shape = new long[]{1, 3, modelH, modelW};
+            FloatBuffer zeros = FloatBuffer.allocate(3 * modelW * modelH);
+            try (OnnxTensor tensor = OnnxTensor.createTensor(env, zeros, shape);
+                 OrtSession.Result ignored = s.run(Collections.singletonMap(sessionInputName, tensor))) {
+                // output discarded
             }
+        } finally {
+            releaseIfRequestedLocked();
+            sessionLock.unlock();
         }
-        for (String name : getCandidateNames(mode)) {
-            if (assetExists(ctx, name)) {
-                return true;
+        Log.i(TAG, String.format(Locale.US, "Depth session warm-up at %dx%d took %.1f ms",
+                modelW, modelH, (System.nanoTime() - t0) / 1e6));
+    }
+
+    /**
+     * Drops the persistent session to give its memory back. The next {@link #estimate} rebuilds it.
+     * Never blocks: if an inference is in flight the session is released once it finishes.
+     */
+    public void releaseSession() {
+        if (sessionLock.tryLock()) {
+            try {
+                closeSessionLocked();
+            } finally {
+                sessionLock.unlock();
+            }
+        } else {
+            synchronized (this) {
+                releaseRequested = true;
             }
         }
-        return false;
     }
 
-    private static String resolveModelPath(Context ctx, EnvMode mode) {
-        for (String name : getCandidateNames(mode)) {
-            File f = getDownloadFile(ctx, name);
-            if (f != null && f.exists() && f.length() > 0) {
-                return f.getAbsolutePath();
+    /**
+     * Forward of {@link ComponentCallbacks2#onTrimMemory}. Low memory or going to the background
+     * releases the session (rebuilt lazily); critical pressure while running also falls back to
+     * per-call sessions for this estimator.
+     */
+    public void onTrimMemory(int level) {
+        if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            if (sessionMode == SessionMode.PERSISTENT) {
+                Log.w(TAG, "Memory critical (level=" + level + "), switching depth to per-call sessions");
             }
+            sessionMode = SessionMode.PER_CALL;
+            releaseSession();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            releaseSession();
         }
+    }
+
+    private OrtSession acquireSessionLocked() throws OrtException {
+        if (closed) return null;
+        if (session == null) {
+            MemoryProbe probe = MemoryProbe.start("depth session");
+            SessionProfile requested = profile;
+            SessionProfile.Opened opened;
+            try {
+                opened = modelCache.open(env, modelPath, requested);
+            } finally {
+                lastLoadReport = probe.stop();
+            }
+            SESSION_LOAD_TIME.record(lastLoadReport.wallMs * 1_000_000L);
+            for (String s : opened.skipped) Log.w(TAG, "Depth EP skipped: " + s);
+            session = opened.session;
+            sessionBytes = opened.modelBytes;
+            if (!opened.profile.equals(requested)) {
+                // Don't retry providers that failed on every rebuild.
+                profile = opened.profile;
+                host.saveProfile(profileKey, profile);
+            }
+            sessionInputName = session.getInputInfo().keySet().iterator().next();
+            long[] inShape = ((TensorInfo) session.getInputInfo().get(sessionInputName).getInfo()).getShape();
+            dynamicInput = inShape.length == 4 && (inShape[2] <= 0 || inShape[3] <= 0);
+            inputShapeKnown = true;
+            Log.i(TAG, "Depth session created: " + lastLoadReport);
+        }
+        return session;
+    }
+
+    private void releaseIfRequestedLocked() {
+        boolean release;
+        synchronized (this) {
+            release = releaseRequested;
+            releaseRequested = false;
+        }
+        if (release || sessionMode != SessionMode.PERSISTENT) {
+            closeSessionLocked();
+        }
+    }
+
+    private void closeSessionLocked() {
+        if (session == null) return;
+        try {
+            session.close();
+        } catch (OrtException e) {
+            Log.w(TAG, "Depth session close failed", e);
+        }
+        session = null;
+        sessionBytes = null;
+        sessionInputName = null;
+    }
+
+    public static boolean isModelAvailable(@NonNull Context ctx, EnvMode mode) {
+        return isModelAvailable(ModelHost.forContext(ctx), mode);
+    }
+
+    public static boolean isModelAvailable(@NonNull ModelHost host, EnvMode mode) {
+        for (String name : getCandidateNames(mode)) {
+            if (host.hasModel(name)) return true;
+        }
+        return false;
+    }
+
+    // Prefer the downloaded fp16 model, fall back to the bundled fp32 asset.
+    private static String resolveModelPath(ModelHost host, EnvMode mode) {
         for (String name : getCandidateNames(mode)) {
-            if (assetExists(ctx, name)) {
-                return ObjectDetector.Util.cacheAsset(ctx, name);
+            if (!host.hasModel(name)) continue;
+            try {
+                return host.modelPath(name);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
             }
         }
         throw new IllegalStateException("Depth model not found for mode: " + mode);
@@ -142,82 +425,101 @@ public class DepthEstimator implements AutoCloseable {
         return new String[]{INDOOR_MODEL_DOWNLOAD, INDOOR_MODEL_ASSET};
     }
 
-    private static File getDownloadFile(Context ctx, String fileName) {
-        File dir = ctx.getExternalFilesDir(Environment.DIRECTORY_DOWNLOADS);
-        if (dir == null) return null;
-        return new File(dir, fileName);
-    }
-
-    private static boolean assetExists(Context ctx, String assetName) {
-        try (InputStream ignored = ctx.getAssets().open(assetName)) {
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+    public List<ObjectDetector.Detection> attachDepth(List<ObjectDetector.Detection> dets,
+                                                      DepthMap depthMap) {
+        return attachDepth(dets, depthMap, SystemClock.elapsedRealtime());
     }
 
+    /**
+     * Samples {@code depthMap} for every detection of a frame taken at {@code frameMs}. The map
+     * may be older than the frame; each detection records that gap as its depth age.
+     */
     public List<ObjectDetector.Detection> attachDepth(List<ObjectDetector.Detection> dets,
-                                                      DepthMap depthMap) {
+                                                      DepthMap depthMap, long frameMs) {
         if (dets == null || depthMap == null) return dets;
+        long t0 = Metrics.now();
+        long ageMs = depthMap.ageMs(frameMs);
+        MAP_AGE.record(ageMs);
         List<ObjectDetector.Detection> enriched = new ArrayList<>(dets.size());
-        for (ObjectDetector.Detection d : dets) {
-            enriched.add(d.withDepth(averageDepth(depthMap, d)));
+        synchronized (aggregator) {
+            for (ObjectDetector.Detection d : dets) {
+                enriched.add(d.withDepth(boxDepth(depthMap, d), ageMs));
+            }
         }
+        ATTACH_TIME.recordSince(t0);
         return enriched;
     }
 
+    /** How the depth inside each box is reduced to one value (default: median). */
+    public void setDepthStatistic(DepthAggregator.Statistic statistic) {
+        aggregator.setStatistic(statistic);
+    }
+
     public DepthMap estimate(int[] argb, int srcW, int srcH) throws OrtException {
-        Prep prep = preprocess(argb, srcW, srcH);
-        long[] shape = new long[]{1, 3, prep.modelSize, prep.modelSize};
+        return estimate(argb, srcW, srcH, SystemClock.elapsedRealtime());
+    }
+
+    /** Estimates depth for a frame captured at {@code timestampMs} (elapsedRealtime). */
+    public DepthMap estimate(int[] argb, int srcW, int srcH, long timestampMs) throws OrtException {
+        // Until a session has been opened the model's input shape, and so the layout preprocess()
+        // must produce, is unknown: open it first rather than send a square frame by default.
+        if (!inputShapeKnown) openForInputShape();
+        long t0 = Metrics.now();
+        Prep prep = preprocess(argb, srcW, srcH, rectangularInput && dynamicInput);
+        PREPROCESS_TIME.recordSince(t0);
+        long[] shape = new long[]{1, 3, prep.modelH, prep.modelW};
         OnnxTensor input = OnnxTensor.createTensor(env, FloatBuffer.wrap(prep.chw), shape);
 
         float[] rawDepth;
-        int rawH, rawW;
-        try (OrtSession session = env.createSession(modelPath, sessionOptions);
-             OnnxTensor tensor = input) {
-            String inputName = session.getInputInfo().keySet().iterator().next();
-            try (OrtSession.Result out = session.run(Collections.singletonMap(inputName, tensor))) {
+        int rawW;
+        sessionLock.lock();
+        try (OnnxTensor tensor = input) {
+            OrtSession s = acquireSessionLocked();
+            if (s == null) throw new IllegalStateException("DepthEstimator is closed");
+            long tRun = Metrics.now();
+            try (OrtSession.Result out = s.run(Collections.singletonMap(sessionInputName, tensor))) {
                 OnnxValue ov = out.get(0);
                 OnnxTensor depthTensor = (OnnxTensor) ov;
                 long[] outShape = depthTensor.getInfo().getShape(); // expect [1,H,W]
-                rawH = (int) outShape[1];
                 rawW = (int) outShape[2];
                 FloatBuffer buf = depthTensor.getFloatBuffer();
                 rawDepth = new float[buf.remaining()];
                 buf.get(rawDepth);
             }
+            INFER_TIME.recordSince(tRun);
+        } finally {
+            // PER_CALL mode (or a pending trim request) drops the session right after the run.
+            releaseIfRequestedLocked();
+            sessionLock.unlock();
         }
 
-        float[] cropped = crop(rawDepth, rawW, rawH, prep.padX, prep.padY, prep.contentW, prep.contentH);
-        float[] depthFull = resizeBilinear(cropped, prep.contentW, prep.contentH, srcW, srcH);
+        // Keep the model-resolution output; boxes sample it on demand in frame coordinates.
         float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
-        for (float v : depthFull) {
-            if (v < min) min = v;
-            if (v > max) max = v;
-        }
-        return new DepthMap(depthFull, srcW, srcH, min, max);
-    }
-
-    private static float averageDepth(DepthMap map, ObjectDetector.Detection d) {
-        if (map.width == 0 || map.height == 0) return Float.NaN;
-        int x1 = clamp((int)Math.floor(d.x1), 0, map.width-1);
-        int y1 = clamp((int)Math.floor(d.y1), 0, map.height-1);
-        int x2 = clamp((int)Math.ceil(d.x2), 0, map.width-1);
-        int y2 = clamp((int)Math.ceil(d.y2), 0, map.height-1);
-        int spanX = Math.max(1, x2 - x1);
-        int spanY = Math.max(1, y2 - y1);
-        int stepX = Math.max(1, spanX / 12);
-        int stepY = Math.max(1, spanY / 12);
-        float sum = 0f; int count = 0;
-        for (int y=y1; y<=y2; y+=stepY) {
-            int base = y * map.width;
-            for (int x=x1; x<=x2; x+=stepX) {
-                sum += map.depth[base + x];
-                count++;
+        for (int y = 0; y < prep.contentH; y++) {
+            int base = (y + prep.padY) * rawW + prep.padX;
+            for (int x = 0; x < prep.contentW; x++) {
+                float v = rawDepth[base + x];
+                if (v < min) min = v;
+                if (v > max) max = v;
             }
         }
-        if (count == 0) return Float.NaN;
-        float raw = sum / count;
+        return new DepthMap(rawDepth, rawW, prep.padX, prep.padY, prep.contentW, prep.contentH,
+                srcW, srcH, min, max, timestampMs);
+    }
+
+    /** Opens the session so {@link #dynamicInput} is set; the next run uses (or drops) it. */
+    private void openForInputShape() throws OrtException {
+        sessionLock.lock();
+        try {
+            if (acquireSessionLocked() == null) throw new IllegalStateException("DepthEstimator is closed");
+        } finally {
+            sessionLock.unlock();
+        }
+    }
+
+    private float boxDepth(DepthMap map, ObjectDetector.Detection d) {
+        float raw = aggregator.aggregate(map, d);
+        if (Float.isNaN(raw)) return Float.NaN;
         if (LOG_RAW_DEPTH) {
             Log.d(TAG, String.format(Locale.US,
                     "rawDepth=%.3f (frame min=%.3f max=%.3f, cls=%d)",
@@ -243,14 +545,15 @@ public class DepthEstimator implements AutoCloseable {
         return NEAR_CM + normalized * (FAR_CM - NEAR_CM);
     }
 
-    private static class Prep {
+    static final class Prep {
         final float[] chw;
-        final int modelSize;
+        final int modelW, modelH;
         final int contentW, contentH;
         final int padX, padY;
-        Prep(float[] chw, int modelSize, int contentW, int contentH, int padX, int padY) {
+        Prep(float[] chw, int modelW, int modelH, int contentW, int contentH, int padX, int padY) {
             this.chw = chw;
-            this.modelSize = modelSize;
+            this.modelW = modelW;
+            this.modelH = modelH;
             this.contentW = contentW;
             this.contentH = contentH;
             this.padX = padX;
@@ -258,36 +561,45 @@ public class DepthEstimator implements AutoCloseable {
         }
     }
 
-    private Prep preprocess(int[] argb, int srcW, int srcH) {
-        int target = inputSize;
-        int longest = Math.max(srcW, srcH);
-        float scale = target / (float) longest;
-
-        int scaledW = clampToRange(roundToMultiple(Math.round(srcW * scale), multiple), multiple, target);
-        int scaledH = clampToRange(roundToMultiple(Math.round(srcH * scale), multiple), multiple, target);
+    /** Resizes and normalizes a frame; {@code rect} keeps its aspect ratio instead of padding to a square. */
+    static Prep preprocess(int[] argb, int srcW, int srcH, boolean rect) {
+        int target = INPUT_SIZE;
+        int[] size = scaledSize(srcW, srcH);
+        int scaledW = size[0], scaledH = size[1];
         int[] scaled = resizeNearest(argb, srcW, srcH, scaledW, scaledH);
 
-        int padX = Math.max(0, (target - scaledW) / 2);
-        int padY = Math.max(0, (target - scaledH) / 2);
+        // Content sides are already patch multiples, so a dynamic model takes them unpadded.
+        int modelW = rect ? scaledW : target;
+        int modelH = rect ? scaledH : target;
+        int padX = Math.max(0, (modelW - scaledW) / 2);
+        int padY = Math.max(0, (modelH - scaledH) / 2);
 
-        int plane = target * target;
+        int plane = modelW * modelH;
         float[] chw = new float[3 * plane];
         for (int y = 0; y < scaledH; y++) {
             int srcRow = y * scaledW;
-            int dstRow = (y + padY) * target;
+            int dstRow = (y + padY) * modelW;
             for (int x = 0; x < scaledW; x++) {
                 int p = scaled[srcRow + x];
                 float r = ((p >> 16) & 0xFF) / 255f;
                 float g = ((p >> 8) & 0xFF) / 255f;
                 float b = (p & 0xFF) / 255f;
                 int idx = dstRow + padX + x;
-                chw[idx] = (r - mean[0]) / std[0];
-                chw[plane + idx] = (g - mean[1]) / std[1];
-                chw[2 * plane + idx] = (b - mean[2]) / std[2];
+                chw[idx] = (r - MEAN[0]) / STD[0];
+                chw[plane + idx] = (g - MEAN[1]) / STD[1];
+                chw[2 * plane + idx] = (b - MEAN[2]) / STD[2];
             }
         }
 
-        return new Prep(chw, target, scaledW, scaledH, padX, padY);
+        return new Prep(chw, modelW, modelH, scaledW, scaledH, padX, padY);
+    }
+
+    /** Content size {W, H} of a frame scaled to a long side of {@value #INPUT_SIZE}, in patches. */
+    private static int[] scaledSize(int srcW, int srcH) {
+        float scale = INPUT_SIZE / (float) Math.max(srcW, srcH);
+        return new int[]{
+                clampToRange(roundToMultiple(Math.round(srcW * scale), MULTIPLE), MULTIPLE, INPUT_SIZE),
+                clampToRange(roundToMultiple(Math.round(srcH * scale), MULTIPLE), MULTIPLE, INPUT_SIZE)};
     }
 
     private static int[] resizeNearest(int[] src, int srcW, int srcH, int dstW, int dstH) {
@@ -328,7 +640,6 @@ public class DepthEstimator implements AutoCloseable {
     }
 
     private static float lerp(float a,float b,float t){ return a + (b-a)*t; }
-    private static int clamp(int v,int lo,int hi){ return v<lo?lo:(Math.min(v, hi)); }
     private static int roundToMultiple(int value,int multiple){
         if (multiple<=1) return value;
         int q = Math.round(value/(float)multiple);
@@ -354,7 +665,13 @@ public class DepthEstimator implements AutoCloseable {
 
     @Override
     public void close() throws Exception {
-        sessionOptions.close();
+        sessionLock.lock();
+        try {
+            closed = true;
+            closeSessionLocked();
+        } finally {
+            sessionLock.unlock();
+        }
     }
 }
 
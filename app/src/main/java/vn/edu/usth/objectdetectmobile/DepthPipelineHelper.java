@@ -16,6 +16,8 @@ public class DepthPipelineHelper {
         public long lastDepthMillis = 0L;
         public long lastDepthCacheTime = 0L;
         public DepthEstimator.DepthMap lastDepthMap = null;
+        /** A background refresh has been requested and has not finished yet. */
+        public boolean refreshInFlight = false;
     }
 
     /**
@@ -0,0 +1,98 @@
+package vn.edu.usth.objectdetectmobile;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Per-frame pipeline output as JSON lines, so two runs over the same {@link FrameRecording}
+ * (two builds, the phone and the host harness) can be diffed frame by frame.
+ * <p>
+ * One object per frame:
+ * <pre>
+ * {"frame":12,"ts_ns":..,"w":480,"h":640,
+ *  "depth":{"min":0.4,"max":7.9,"center":2.1,"age_ms":33},
+ *  "dets":[[cls,score,x1,y1,x2,y2,depth,track],..]}
+ * </pre>
+ * {@code depth} is {@code null} when no map was attached; a detection's depth is {@code null}
+ * when it has none. Boxes are in frame pixels of the rotated frame. Thread-safe.
+ */
+public final class DetectionLog implements Closeable {
+    private final Writer out;
+    private final StringBuilder line = new StringBuilder(1024);
+
+    public DetectionLog(File file) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Appends one frame. {@code frameTimeMs} is the frame's pipeline time, against which the depth
+     * map's age is measured; {@code depth} may be null.
+     */
+    public synchronized void write(int frame, long timestampNs, long frameTimeMs, int width,
+                                   int height, List<ObjectDetector.Detection> dets,
+                                   DepthEstimator.DepthMap depth)
+            throws IOException {
+        StringBuilder sb = line;
+        sb.setLength(0);
+        sb.append("{\"frame\":").append(frame)
+                .append(",\"ts_ns\":").append(timestampNs)
+                .append(",\"w\":").append(width)
+                .append(",\"h\":").append(height)
+                .append(",\"depth\":");
+        if (depth == null) {
+            sb.append("null");
+        } else {
+            float center = depth.sample(depth.width / 2f, depth.height / 2f);
+            sb.append("{\"min\":").append(number(depth.min))
+                    .append(",\"max\":").append(number(depth.max))
+                    .append(",\"center\":").append(number(center))
+                    .append(",\"age_ms\":").append(depth.ageMs(frameTimeMs))
+                    .append('}');
+        }
+        sb.append(",\"dets\":[");
+        if (dets != null) {
+            for (int i = 0; i < dets.size(); i++) {
+                ObjectDetector.Detection d = dets.get(i);
+                if (i > 0) sb.append(',');
+                sb.append('[').append(d.cls)
+                        .append(',').append(number(d.score))
+                        .append(',').append(number(d.x1))
+                        .append(',').append(number(d.y1))
+                        .append(',').append(number(d.x2))
+                        .append(',').append(number(d.y2))
+                        .append(',').append(number(d.depth))
+                        .append(',').append(d.trackId)
+                        .append(']');
+            }
+        }
+        sb.append("]}\n");
+        out.write(sb.toString());
+    }
+
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    private static String number(float v) {
+        if (Float.isNaN(v) || Float.isInfinite(v)) return "null";
+        return String.format(Locale.US, "%.4f", v);
+    }
+}
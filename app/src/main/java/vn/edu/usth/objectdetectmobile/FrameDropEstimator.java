@@ -0,0 +1,71 @@
+package vn.edu.usth.objectdetectmobile;
+
+/**
+ * Estimates camera frames that never reached the analyzer. With
+ * {@code STRATEGY_KEEP_ONLY_LATEST} CameraX silently discards frames that arrive while the
+ * analyzer is busy, so the only trace is a gap in sensor timestamps; a gap of {@code k} frame
+ * periods counts as {@code k - 1} drops.
+ * <p>
+ * The period comes from the camera's reported frame duration when there is one
+ * ({@link #setReportedPeriodNs}, fed from {@code SENSOR_FRAME_DURATION}). Otherwise it is the
+ * smallest gap over the last {@value #WINDOW} frames among those the analyzer cannot have caused:
+ * a gap more than twice the analyzer's time on the previous frame. Gaps behind a busy analyzer
+ * are multiples of the period, so an analyzer that is steadily slower than the camera would
+ * otherwise pass its own pace off as the period and hide every drop. While the window holds no
+ * such gap the last idle estimate is kept; only before the first one does the smallest gap stand
+ * in.
+ * <p>
+ * {@link #onFrame} and {@link #periodNs} are single-threaded: call them from the analyzer only.
+ */
+final class FrameDropEstimator {
+    private static final int WINDOW = 32;
+
+    private final long[] gaps = new long[WINDOW];
+    private final boolean[] idle = new boolean[WINDOW];
+    private int filled, next;
+    private long lastTimestampNs = -1;
+    private long idlePeriodNs, windowPeriodNs;
+    private volatile long reportedPeriodNs;
+
+    /** Frame duration reported by the camera (any thread); 0 or less clears it. */
+    void setReportedPeriodNs(long periodNs) {
+        reportedPeriodNs = Math.max(0, periodNs);
+    }
+
+    /**
+     * Returns how many frames are estimated missing between the previous frame and this one.
+     * {@code previousBusyNs} is how long the analyzer spent on the previous frame.
+     */
+    int onFrame(long timestampNs, long previousBusyNs) {
+        long last = lastTimestampNs;
+        lastTimestampNs = timestampNs;
+        if (last < 0 || timestampNs <= last) return 0;
+        long gap = timestampNs - last;
+        gaps[next] = gap;
+        idle[next] = previousBusyNs < gap / 2;
+        next = (next + 1) % WINDOW;
+        if (filled < WINDOW) filled++;
+        updateWindowPeriod();
+        long period = periodNs();
+        // Half a period of slack absorbs timestamp jitter.
+        return (int) Math.max(0, (gap + period / 2) / period - 1);
+    }
+
+    /** Current frame period estimate in ns, or 0 before two frames were seen. */
+    long periodNs() {
+        long reported = reportedPeriodNs;
+        if (reported > 0) return reported;
+        return idlePeriodNs > 0 ? idlePeriodNs : windowPeriodNs;
+    }
+
+    private void updateWindowPeriod() {
+        long idleMin = 0, anyMin = 0;
+        for (int i = 0; i < filled; i++) {
+            long g = gaps[i];
+            if (anyMin == 0 || g < anyMin) anyMin = g;
+            if (idle[i] && (idleMin == 0 || g < idleMin)) idleMin = g;
+        }
+        windowPeriodNs = anyMin;
+        if (idleMin > 0) idlePeriodNs = idleMin;
+    }
+}
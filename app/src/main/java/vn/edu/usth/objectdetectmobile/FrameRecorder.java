@@ -0,0 +1,127 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.util.Log;
+
+import androidx.camera.core.ImageProxy;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Records analyzer frames to a {@link FrameRecording} without holding up the camera: the planes
+ * are packed into a pooled buffer on the calling (analyzer) thread, so the {@link ImageProxy} can
+ * be closed right away, and written to disk on a thread of their own. When the disk falls behind
+ * and every buffer is queued, frames are skipped rather than waited for.
+ */
+public final class FrameRecorder {
+    private static final String TAG = "FrameRecorder";
+    private static final int BUFFERS = 4;
+    private static final Metrics.Counter RECORDED = Metrics.counter("record.frames");
+    private static final Metrics.Counter SKIPPED = Metrics.counter("record.skipped");
+    private static final Metrics.Histogram COPY_TIME = Metrics.timer("record.copy");
+
+    private final File file;
+    private final FrameRecording.Writer writer;
+    private final BlockingQueue<Packed> free = new ArrayBlockingQueue<>(BUFFERS);
+    private final ExecutorService io = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "frame-recorder");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile boolean failed;
+
+    public FrameRecorder(File file) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        this.file = file;
+        this.writer = new FrameRecording.Writer(file);
+        for (int i = 0; i < BUFFERS; i++) free.add(new Packed());
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Copies {@code image} and queues it for writing. Returns false when the frame was skipped
+     * (no free buffer, recorder stopped or failed).
+     */
+    public boolean record(ImageProxy image, int rotation, long timestampNs) {
+        if (failed) return false;
+        Packed p = free.poll();
+        if (p == null) {
+            SKIPPED.inc();
+            return false;
+        }
+        long t0 = Metrics.now();
+        p.fill(image, rotation, timestampNs);
+        COPY_TIME.recordSince(t0);
+        try {
+            io.execute(() -> write(p));
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stops accepting frames; the ones already queued are written, then the index and the file
+     * are finalized on the writer thread. Does not block.
+     */
+    public void stop() {
+        try {
+            io.execute(this::finish);
+        } catch (RejectedExecutionException ignore) {
+            return;
+        }
+        io.shutdown();
+    }
+
+    private void write(Packed p) {
+        try {
+            if (failed) return;
+            writer.append(p.timestampNs, p.rotation, p.width, p.height, p.layout, p.y, p.chroma);
+            RECORDED.inc();
+        } catch (IOException e) {
+            failed = true;
+            Log.e(TAG, "Recording write failed: " + file, e);
+        } finally {
+            free.offer(p);
+        }
+    }
+
+    private void finish() {
+        try {
+            writer.close();
+            Log.i(TAG, "Recorded " + writer.getFrameCount() + " frames to " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "Recording close failed: " + file, e);
+        }
+    }
+
+    /** One frame's packed planes; the arrays are reused while the size stays the same. */
+    private static final class Packed {
+        byte[] y = new byte[0], chroma = new byte[0];
+        int width, height, rotation, layout;
+        long timestampNs;
+
+        void fill(ImageProxy image, int rotation, long timestampNs) {
+            int w = image.getWidth(), h = image.getHeight();
+            if (y.length != w * h) y = new byte[w * h];
+            int cSize = FrameRecording.chromaSize(w, h);
+            if (chroma.length != cSize) chroma = new byte[cSize];
+            this.width = w;
+            this.height = h;
+            this.rotation = rotation;
+            this.timestampNs = timestampNs;
+            this.layout = FrameRecording.pack(image, y, chroma);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package vn.edu.usth.objectdetectmobile;
+
+import androidx.camera.core.ImageProxy;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Container for recorded camera frames: the YUV planes, rotation and sensor timestamp of each
+ * analyzer frame, packed so a reader can memory-map frames and hand them to the pipeline as
+ * {@link ImageProxy}s without copying.
+ * <p>
+ * Layout, little-endian: a {@value #HEADER_SIZE}-byte header ({@code "ODMFRAME"}, version, frame
+ * count, index offset), then one record per frame, then the index ({@code long} file offset per
+ * frame). A record is a {@value #RECORD_HEADER_SIZE}-byte header (timestamp ns, rotation, width,
+ * height, chroma layout) followed by the Y plane ({@code w*h}) and the chroma
+ * ({@code 2*ceil(w/2)*ceil(h/2)}), either I420 (U plane then V plane) or NV21 (interleaved VU),
+ * padded to 8 bytes. Row padding from the camera is dropped. The count and index are written on
+ * {@link Writer#close}; a file cut short by a crash is still readable by scanning the records.
+ */
+public final class FrameRecording {
+
+    public static final String EXTENSION = ".odmf";
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_HEADER_SIZE = 24;
+    private static final long MAGIC = 0x454d4152464d444fL; // "ODMFRAME"
+    private static final int VERSION = 1;
+
+    /** Chroma layout of a record. */
+    public static final int LAYOUT_I420 = 0;
+    public static final int LAYOUT_NV21 = 1;
+
+    private FrameRecording() {}
+
+    static int chromaSize(int w, int h) {
+        return 2 * ((w + 1) / 2) * ((h + 1) / 2);
+    }
+
+    private static long align8(long n) {
+        return (n + 7) & ~7L;
+    }
+
+    /**
+     * Appends frames to a new file. Not thread-safe; {@link FrameRecorder} wraps it for use from
+     * the analyzer.
+     */
+    public static final class Writer implements Closeable {
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final List<Long> offsets = new ArrayList<>();
+        private final ByteBuffer header =
+                ByteBuffer.allocate(RECORD_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private long position = HEADER_SIZE;
+
+        public Writer(File out) throws IOException {
+            file = new RandomAccessFile(out, "rw");
+            file.setLength(0);
+            channel = file.getChannel();
+            writeHeader(0, 0);
+        }
+
+        /**
+         * Appends a packed frame: {@code y} holds {@code w*h} bytes and {@code chroma}
+         * {@link #chromaSize} bytes in {@code layout}.
+         */
+        public void append(long timestampNs, int rotation, int w, int h, int layout,
+                           byte[] y, byte[] chroma) throws IOException {
+            int ySize = w * h, cSize = chromaSize(w, h);
+            header.clear();
+            header.putLong(timestampNs).putInt(rotation).putInt(w).putInt(h).putInt(layout).flip();
+            long start = position;
+            writeFully(header, start);
+            writeFully(ByteBuffer.wrap(y, 0, ySize), start + RECORD_HEADER_SIZE);
+            writeFully(ByteBuffer.wrap(chroma, 0, cSize), start + RECORD_HEADER_SIZE + ySize);
+            offsets.add(start);
+            position = align8(start + RECORD_HEADER_SIZE + ySize + cSize);
+        }
+
+        public int getFrameCount() {
+            return offsets.size();
+        }
+
+        /** Writes the index and frame count, then closes the file. */
+        @Override
+        public void close() throws IOException {
+            try {
+                ByteBuffer index = ByteBuffer.allocate(8 * offsets.size()).order(ByteOrder.LITTLE_ENDIAN);
+                for (long o : offsets) index.putLong(o);
+                index.flip();
+                writeFully(index, position);
+                writeHeader(offsets.size(), position);
+                channel.force(false);
+            } finally {
+                file.close();
+            }
+        }
+
+        private void writeHeader(int frames, long indexOffset) throws IOException {
+            ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            b.putLong(MAGIC).putInt(VERSION).putInt(frames).putLong(indexOffset);
+            b.position(HEADER_SIZE).flip();
+            writeFully(b, 0);
+        }
+
+        private void writeFully(ByteBuffer b, long at) throws IOException {
+            while (b.hasRemaining()) at += channel.write(b, at);
+        }
+    }
+
+    /** Random access to the frames of a recording; frames are mapped, not read. */
+    public static final class Reader implements Closeable {
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final long[] offsets;
+
+        public Reader(File in) throws IOException {
+            file = new RandomAccessFile(in, "r");
+            channel = file.getChannel();
+            try {
+                ByteBuffer h = read(0, HEADER_SIZE);
+                if (h.getLong() != MAGIC) throw new IOException(in + " is not a frame recording");
+                int version = h.getInt();
+                if (version != VERSION) throw new IOException("Unsupported recording version " + version);
+                int frames = h.getInt();
+                long indexOffset = h.getLong();
+                offsets = indexOffset > 0 ? readIndex(indexOffset, frames) : scan();
+            } catch (IOException | RuntimeException e) {
+                file.close();
+                throw e;
+            }
+        }
+
+        public int getFrameCount() {
+            return offsets.length;
+        }
+
+        /** Frame {@code i}, backed by a read-only mapping of its record. */
+        public Frame frame(int i) throws IOException {
+            long at = offsets[i];
+            ByteBuffer h = read(at, RECORD_HEADER_SIZE);
+            long ts = h.getLong();
+            int rotation = h.getInt(), w = h.getInt(), hgt = h.getInt(), layout = h.getInt();
+            int size = w * hgt + chromaSize(w, hgt);
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY,
+                    at + RECORD_HEADER_SIZE, size);
+            return new Frame(data, w, hgt, layout, rotation, ts);
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+
+        private long[] readIndex(long at, int frames) throws IOException {
+            ByteBuffer b = read(at, 8L * frames);
+            long[] out = new long[frames];
+            for (int i = 0; i < frames; i++) out[i] = b.getLong();
+            return out;
+        }
+
+        /** Walks the records of a file that was never closed; a torn last record is skipped. */
+        private long[] scan() throws IOException {
+            List<Long> found = new ArrayList<>();
+            long size = channel.size(), at = HEADER_SIZE;
+            while (at + RECORD_HEADER_SIZE <= size) {
+                ByteBuffer h = read(at, RECORD_HEADER_SIZE);
+                h.position(12);
+                int w = h.getInt(), hgt = h.getInt();
+                if (w <= 0 || hgt <= 0) break;
+                long end = at + RECORD_HEADER_SIZE + (long) w * hgt + chromaSize(w, hgt);
+                if (end > size) break;
+                found.add(at);
+                at = align8(end);
+            }
+            long[] out = new long[found.size()];
+            for (int i = 0; i < out.length; i++) out[i] = found.get(i);
+            return out;
+        }
+
+        private ByteBuffer read(long at, long len) throws IOException {
+            ByteBuffer b = ByteBuffer.allocate((int) len).order(ByteOrder.LITTLE_ENDIAN);
+            while (b.hasRemaining()) {
+                if (channel.read(b, at + b.position()) < 0) throw new IOException("Truncated recording");
+            }
+            b.flip();
+            return b;
+        }
+    }
+
+    /** A recorded frame, with the rotation and sensor timestamp it was recorded with. */
+    public static final class Frame extends PackedYuvImage {
+        private final int rotation;
+        private final long timestampNs;
+
+        Frame(ByteBuffer data, int w, int h, int layout, int rotation, long timestampNs) {
+            super(w, h, slice(data, 0, w * h), w, slice(data, w * h, chromaSize(w, h)),
+                    layout == LAYOUT_NV21 ? 2 * ((w + 1) / 2) : (w + 1) / 2,
+                    layout == LAYOUT_NV21 ? 2 : 1);
+            this.rotation = rotation;
+            this.timestampNs = timestampNs;
+        }
+
+        private static ByteBuffer slice(ByteBuffer data, int offset, int len) {
+            ByteBuffer d = data.duplicate();
+            d.position(offset).limit(offset + len);
+            return d.slice();
+        }
+
+        public int getRotationDegrees() { return rotation; }
+        public long getTimestampNs() { return timestampNs; }
+    }
+
+    /**
+     * Packs {@code image}'s planes for {@link Writer#append}, dropping row padding. Semi-planar
+     * chroma is stored as NV21, anything else as I420. {@code y} must hold {@code w*h} bytes and
+     * {@code chroma} {@link #chromaSize}. Returns the layout.
+     */
+    static int pack(ImageProxy image, byte[] y, byte[] chroma) {
+        int w = image.getWidth(), h = image.getHeight();
+        int cw = (w + 1) / 2, ch = (h + 1) / 2;
+        ImageProxy.PlaneProxy[] planes = image.getPlanes();
+        ByteBuffer yb = planes[0].getBuffer().duplicate();
+        int yRs = planes[0].getRowStride();
+        for (int r = 0; r < h; r++) {
+            yb.position(r * yRs);
+            yb.get(y, r * w, w);
+        }
+        ByteBuffer ub = planes[1].getBuffer(), vb = planes[2].getBuffer();
+        int uvRs = planes[1].getRowStride(), ps = planes[1].getPixelStride();
+        if (ps == 2) {
+            for (int r = 0, o = 0; r < ch; r++) {
+                int base = r * uvRs;
+                for (int c = 0; c < cw; c++, o += 2) {
+                    chroma[o] = vb.get(base + 2 * c);
+                    chroma[o + 1] = ub.get(base + 2 * c);
+                }
+            }
+            return LAYOUT_NV21;
+        }
+        int plane = cw * ch;
+        for (int r = 0; r < ch; r++) {
+            int base = r * uvRs;
+            for (int c = 0; c < cw; c++) {
+                chroma[r * cw + c] = ub.get(base + c * ps);
+                chroma[plane + r * cw + c] = vb.get(base + c * ps);
+            }
+        }
+        return LAYOUT_I420;
+    }
+
+}
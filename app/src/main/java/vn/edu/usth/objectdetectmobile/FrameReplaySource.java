@@ -0,0 +1,117 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays a {@link FrameRecording} into the pipeline in place of CameraX, on a thread of its own
+ * that stands in for the analyzer thread.
+ * <p>
+ * {@link Pacing#NATIVE} delivers frames as fast as the pipeline finishes them: once the sink
+ * accepts a frame, the next one waits for {@link #frameDone()}, so exactly one frame is in flight
+ * and repeated runs see the same frames in the same order. {@link Pacing#REALTIME} sleeps out the
+ * recorded timestamp gaps and never waits, so stage overlap and frame dropping behave as they did
+ * when the recording was made. Either way the finish callback runs once every accepted frame has
+ * been reported done; a pipeline that stops reporting ends playback with a warning after
+ * {@code DRAIN_TIMEOUT_MS} instead of hanging the replay thread.
+ */
+public final class FrameReplaySource {
+    private static final String TAG = "FrameReplaySource";
+    // Bound on waiting for the pipeline to report a frame (lockstep) or the last frames at the end.
+    private static final long DRAIN_TIMEOUT_MS = 10_000;
+
+    public enum Pacing { NATIVE, REALTIME }
+
+    /** Receives each frame on the replay thread. */
+    public interface Sink {
+        /**
+         * Handles frame {@code index}; the frame's buffers stay valid after this returns. Returns
+         * true if the frame entered the pipeline, which must then report it exactly once with
+         * {@link #frameDone()} (rendered or dropped).
+         */
+        boolean onFrame(FrameRecording.Frame frame, int index);
+    }
+
+    private final FrameRecording.Reader reader;
+    private final Pacing pacing;
+    private final Semaphore done = new Semaphore(0);
+    private volatile boolean stopped;
+    private Thread thread;
+
+    public FrameReplaySource(File file, Pacing pacing) throws IOException {
+        this.reader = new FrameRecording.Reader(file);
+        this.pacing = pacing;
+    }
+
+    public Pacing getPacing() {
+        return pacing;
+    }
+
+    /** True when frames wait for the previous one to leave the pipeline. */
+    public boolean isLockstep() {
+        return pacing == Pacing.NATIVE;
+    }
+
+    public int getFrameCount() {
+        return reader.getFrameCount();
+    }
+
+    /** Starts playback; {@code onFinished} runs on the replay thread after the last frame. */
+    public synchronized void start(Sink sink, Runnable onFinished) {
+        if (thread != null) throw new IllegalStateException("Already started");
+        thread = new Thread(() -> run(sink, onFinished), "frame-replay");
+        thread.start();
+    }
+
+    /** A frame accepted by the sink has been rendered or dropped. */
+    public void frameDone() {
+        done.release();
+    }
+
+    public synchronized void stop() {
+        stopped = true;
+        if (thread != null) thread.interrupt();
+    }
+
+    private void run(Sink sink, Runnable onFinished) {
+        try {
+            long firstTs = 0, startNs = System.nanoTime();
+            int pending = 0;
+            for (int i = 0, n = reader.getFrameCount(); i < n && !stopped; i++) {
+                FrameRecording.Frame frame = reader.frame(i);
+                if (i == 0) firstTs = frame.getTimestampNs();
+                if (pacing == Pacing.REALTIME) {
+                    long waitNs = startNs + (frame.getTimestampNs() - firstTs) - System.nanoTime();
+                    if (waitNs > 0) TimeUnit.NANOSECONDS.sleep(waitNs);
+                }
+                if (sink.onFrame(frame, i)) pending++;
+                if (isLockstep() && pending > 0) {
+                    if (!done.tryAcquire(DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                        // A frame that never reports done would otherwise hang replay for good.
+                        Log.w(TAG, "Pipeline stalled on frame " + i + " for "
+                                + DRAIN_TIMEOUT_MS + " ms; stopping replay");
+                        pending = 0;
+                        break;
+                    }
+                    pending--;
+                }
+            }
+            if (pending > 0 && !done.tryAcquire(pending, DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Pipeline did not finish the last frames");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Replay failed", e);
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException ignore) {}
+            onFinished.run();
+        }
+    }
+}
@@ -1,37 +1,152 @@
 package vn.edu.usth.objectdetectmobile;
 
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * ARGB filters. Every filter has a variant that writes into caller-supplied buffers so the
+ * per-frame path allocates no frame-sized arrays; cost is independent of the radius
+ * (sliding-window sums), and large frames are split into row bands that run on the common
+ * fork-join pool.
+ */
 public final class ImageUtils {
 
+    // Below this many pixels the fork/join overhead outweighs the gain.
+    private static final int PARALLEL_MIN_PIXELS = 320 * 240;
+    private static final int MIN_BAND_ROWS = 16;
+
+    // Per-thread column sums for boxBlurRows (R, G, B runs of w each), grown on demand.
+    private static final ThreadLocal<int[]> COLUMN_SUMS = new ThreadLocal<>();
+
     private ImageUtils() {}
 
+    /** Work on rows [y0, y1). */
+    interface RowBand {
+        void run(int y0, int y1);
+    }
+
     public static int[] boxBlur(int[] src, int w, int h, int radius) {
-        int[] dst = new int[w * h];
-        for (int y = 0; y < h; y++) {
-            int yMin = Math.max(0, y - radius);
-            int yMax = Math.min(h - 1, y + radius);
+        return boxBlur(src, new int[w * h], w, h, radius);
+    }
+
+    /**
+     * Box blur of {@code src} into {@code dst} (must not alias {@code src}). Each output pixel is
+     * the mean of the window clipped to the image, exactly as a direct 2D average would give.
+     * Column sums slide down the rows and a running sum slides along each row, so every pixel
+     * costs O(1) regardless of {@code radius}.
+     */
+    public static int[] boxBlur(int[] src, int[] dst, int w, int h, int radius) {
+        if (src == dst) throw new IllegalArgumentException("boxBlur cannot run in place");
+        if (radius <= 0) {
+            System.arraycopy(src, 0, dst, 0, w * h);
+            return dst;
+        }
+        forRowBands(w, h, (y0, y1) -> boxBlurRows(src, dst, w, h, radius, y0, y1));
+        return dst;
+    }
+
+    /**
+     * Gaussian approximation by three successive box blurs whose radii match {@code sigma}.
+     * {@code tmp} is scratch of the same size; the result lands in {@code dst}. None of the three
+     * buffers may alias another.
+     */
+    public static int[] gaussianBlur(int[] src, int[] dst, int[] tmp, int w, int h, float sigma) {
+        if (src == dst || src == tmp || dst == tmp) {
+            throw new IllegalArgumentException("gaussianBlur needs three distinct buffers");
+        }
+        int[] r = gaussBoxRadii(sigma);
+        boxBlur(src, dst, w, h, r[0]);
+        boxBlur(dst, tmp, w, h, r[1]);
+        boxBlur(tmp, dst, w, h, r[2]);
+        return dst;
+    }
+
+    /** Radii of three box filters whose cascade approximates a Gaussian of {@code sigma}. */
+    static int[] gaussBoxRadii(float sigma) {
+        // Ideal averaging width for n=3 passes, rounded down to odd wl and up to wl + 2.
+        double wIdeal = Math.sqrt(12.0 * sigma * sigma / 3 + 1);
+        int wl = (int) Math.floor(wIdeal);
+        if ((wl & 1) == 0) wl--;
+        int wu = wl + 2;
+        double mIdeal = (12.0 * sigma * sigma - 3 * wl * wl - 12 * wl - 9) / (-4.0 * wl - 4);
+        int m = (int) Math.round(mIdeal);
+        int[] radii = new int[3];
+        for (int i = 0; i < 3; i++) {
+            radii[i] = Math.max(0, ((i < m ? wl : wu) - 1) / 2);
+        }
+        return radii;
+    }
+
+    private static void boxBlurRows(int[] src, int[] dst, int w, int h, int radius, int y0, int y1) {
+        int[] col = columnSums(3 * w);
+        final int g = w, b = 2 * w;
+        // Prime the column sums as if the loop had just left row y0 - 1; the first iteration
+        // then adds row y0 + radius and drops row y0 - radius - 1 like any other.
+        int top = Math.max(0, y0 - radius - 1);
+        int bottom = Math.min(h, y0 + radius);
+        for (int yy = top; yy < bottom; yy++) addRow(src, yy * w, w, col, 1);
+
+        for (int y = y0; y < y1; y++) {
+            int add = y + radius, drop = y - radius - 1;
+            if (add < h) addRow(src, add * w, w, col, 1);
+            if (drop >= 0) addRow(src, drop * w, w, col, -1);
+            int rows = Math.min(h - 1, y + radius) - Math.max(0, y - radius) + 1;
+
+            int sumR = 0, sumG = 0, sumB = 0;
+            int right = Math.min(w, radius);
+            for (int x = 0; x < right; x++) {
+                sumR += col[x]; sumG += col[g + x]; sumB += col[b + x];
+            }
+            int out = y * w;
             for (int x = 0; x < w; x++) {
-                int xMin = Math.max(0, x - radius);
-                int xMax = Math.min(w - 1, x + radius);
-
-                int count = 0;
-                int sumR = 0, sumG = 0, sumB = 0;
-                for (int yy = yMin; yy <= yMax; yy++) {
-                    int base = yy * w;
-                    for (int xx = xMin; xx <= xMax; xx++) {
-                        int c = src[base + xx];
-                        sumR += (c >> 16) & 0xFF;
-                        sumG += (c >> 8) & 0xFF;
-                        sumB += c & 0xFF;
-                        count++;
-                    }
-                }
-                if (count == 0) count = 1;
-                int r = sumR / count;
-                int g = sumG / count;
-                int b = sumB / count;
-                dst[y * w + x] = 0xFF000000 | (r << 16) | (g << 8) | b;
+                int in = x + radius, outCol = x - radius - 1;
+                if (in < w) { sumR += col[in]; sumG += col[g + in]; sumB += col[b + in]; }
+                if (outCol >= 0) { sumR -= col[outCol]; sumG -= col[g + outCol]; sumB -= col[b + outCol]; }
+                int count = rows * (Math.min(w - 1, x + radius) - Math.max(0, x - radius) + 1);
+                dst[out + x] = 0xFF000000 | ((sumR / count) << 16) | ((sumG / count) << 8) | (sumB / count);
             }
         }
-        return dst;
+    }
+
+    /** Zeroed scratch of at least {@code len} ints owned by the calling thread. */
+    private static int[] columnSums(int len) {
+        int[] col = COLUMN_SUMS.get();
+        if (col == null || col.length < len) {
+            col = new int[len];
+            COLUMN_SUMS.set(col);
+        } else {
+            Arrays.fill(col, 0, len, 0);
+        }
+        return col;
+    }
+
+    private static void addRow(int[] src, int base, int w, int[] col, int sign) {
+        for (int x = 0; x < w; x++) {
+            int c = src[base + x];
+            col[x] += sign * ((c >> 16) & 0xFF);
+            col[w + x] += sign * ((c >> 8) & 0xFF);
+            col[2 * w + x] += sign * (c & 0xFF);
+        }
+    }
+
+    /** Runs {@code task} over [0, h), split into row bands across cores for large frames. */
+    static void forRowBands(int w, int h, RowBand task) {
+        int bands = 1;
+        if ((long) w * h >= PARALLEL_MIN_PIXELS) {
+            bands = Math.min(ForkJoinPool.getCommonPoolParallelism() + 1, h / MIN_BAND_ROWS);
+        }
+        if (bands <= 1) {
+            task.run(0, h);
+            return;
+        }
+        ForkJoinTask<?>[] forks = new ForkJoinTask<?>[bands - 1];
+        for (int b = 1; b < bands; b++) {
+            int y0 = h * b / bands, y1 = h * (b + 1) / bands;
+            forks[b - 1] = ForkJoinPool.commonPool().submit(() -> task.run(y0, y1));
+        }
+        // The calling thread takes the first band instead of idling.
+        task.run(0, h / bands);
+        for (ForkJoinTask<?> f : forks) f.join();
     }
 }
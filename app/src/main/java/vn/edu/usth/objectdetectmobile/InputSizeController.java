@@ -0,0 +1,83 @@
+package vn.edu.usth.objectdetectmobile;
+
+/**
+ * Picks the detector input size from measured inference latency.
+ * <p>
+ * Keeps a rolling mean over the last {@value #WINDOW} runs. When the mean exceeds the target
+ * frame time the size steps down; when the next size up is predicted (latency scales with pixel
+ * count) to stay comfortably under the target, it steps up. After every change the window is
+ * cleared and a cooldown runs, so one slow frame or the first run at a new size cannot cause
+ * oscillation.
+ */
+public final class InputSizeController {
+    private static final int WINDOW = 8;
+    private static final int COOLDOWN_RUNS = 12;
+    // Step up only if the predicted latency at the larger size leaves this much headroom.
+    private static final float UP_HEADROOM = 0.85f;
+
+    private final int[] sizes;
+    private final long[] samples = new long[WINDOW];
+    private int count, next;
+    private long sum;
+    private int index;
+    private int cooldown;
+    private volatile long targetNanos;
+
+    /** @param sizes supported sizes in ascending order */
+    public InputSizeController(int[] sizes, int initialSize, long targetFrameMs) {
+        if (sizes.length == 0) throw new IllegalArgumentException("no input sizes");
+        this.sizes = sizes.clone();
+        int best = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            if (Math.abs(sizes[i] - initialSize) < Math.abs(sizes[best] - initialSize)) best = i;
+        }
+        this.index = best;
+        setTargetFrameMs(targetFrameMs);
+    }
+
+    public void setTargetFrameMs(long targetFrameMs) {
+        targetNanos = Math.max(1L, targetFrameMs) * 1_000_000L;
+    }
+
+    public synchronized int getSize() {
+        return sizes[index];
+    }
+
+    /** Mean latency of the current window in ms, or 0 before the first sample. */
+    public synchronized float getMeanLatencyMs() {
+        return count == 0 ? 0f : (sum / (float) count) / 1e6f;
+    }
+
+    /** Records one inference and returns the size to use for the next frame. */
+    public synchronized int record(long inferenceNanos) {
+        if (count == WINDOW) sum -= samples[next];
+        else count++;
+        samples[next] = inferenceNanos;
+        sum += inferenceNanos;
+        next = (next + 1) % WINDOW;
+
+        if (cooldown > 0) {
+            cooldown--;
+            return sizes[index];
+        }
+        if (count < WINDOW) return sizes[index];
+
+        long mean = sum / count;
+        long target = targetNanos;
+        if (mean > target && index > 0) {
+            change(index - 1);
+        } else if (index + 1 < sizes.length) {
+            float ratio = sizes[index + 1] / (float) sizes[index];
+            if (mean * ratio * ratio < target * UP_HEADROOM) change(index + 1);
+        }
+        return sizes[index];
+    }
+
+    private void change(int newIndex) {
+        index = newIndex;
+        count = 0;
+        next = 0;
+        sum = 0;
+        cooldown = COOLDOWN_RUNS;
+    }
+}
@@ -0,0 +1,102 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.content.Context;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The detector's class table, loaded once per process: the label of every class index plus the
+ * attributes the warnings need (danger flag, priority, Vietnamese name), all resolved when the
+ * table is built so per-frame code only indexes arrays.
+ */
+public final class LabelRegistry {
+    public static final String ASSET = "labels.txt";
+    /** Spoken name for classes outside the table. */
+    public static final String UNKNOWN_NAME_VI = "Vật thể";
+
+    /** Priority of classes worth warning about; higher wins over lower, then distance decides. */
+    public static final int PRIORITY_DANGER = 1;
+    public static final int PRIORITY_NORMAL = 0;
+
+    // Lower-case English label -> Vietnamese name; every entry is also a dangerous class.
+    private static final Map<String, String> DANGEROUS_VI = new HashMap<>();
+    static {
+        // Phương tiện
+        DANGEROUS_VI.put("car", "Xe hơi");
+        DANGEROUS_VI.put("truck", "Xe tải");
+        DANGEROUS_VI.put("bus", "Xe buýt");
+        DANGEROUS_VI.put("motorcycle", "Xe máy");
+        DANGEROUS_VI.put("bicycle", "Xe đạp");
+        // Người
+        DANGEROUS_VI.put("person", "Người");
+        // Đồ vật
+        DANGEROUS_VI.put("tree", "Cây");
+        DANGEROUS_VI.put("electric pole", "Cột điện");
+        DANGEROUS_VI.put("pedestrian crossing sign", "Biển báo");
+    }
+
+    private static volatile LabelRegistry instance;
+
+    private final String[] labels;
+    private final String[] namesVi;
+    private final boolean[] dangerous;
+    private final int[] priority;
+
+    /** The registry for {@code labels.txt} in the app assets, loaded on first use. */
+    public static LabelRegistry get(Context context) {
+        LabelRegistry r = instance;
+        if (r == null) {
+            synchronized (LabelRegistry.class) {
+                r = instance;
+                if (r == null) {
+                    r = new LabelRegistry(LabelHelper.loadLabels(context, ASSET));
+                    instance = r;
+                }
+            }
+        }
+        return r;
+    }
+
+    public LabelRegistry(String[] rawLabels) {
+        int n = rawLabels.length;
+        labels = new String[n];
+        namesVi = new String[n];
+        dangerous = new boolean[n];
+        priority = new int[n];
+        for (int i = 0; i < n; i++) {
+            String label = rawLabels[i].trim().intern();
+            String vi = DANGEROUS_VI.get(label.toLowerCase(Locale.US));
+            labels[i] = label;
+            dangerous[i] = vi != null;
+            namesVi[i] = vi != null ? vi : label;
+            priority[i] = vi != null ? PRIORITY_DANGER : PRIORITY_NORMAL;
+        }
+    }
+
+    public int size() {
+        return labels.length;
+    }
+
+    /** Label of class {@code cls}, or {@code "cls <n>"} for an index outside the table. */
+    public String label(int cls) {
+        return inRange(cls) ? labels[cls] : "cls " + cls;
+    }
+
+    public String nameVi(int cls) {
+        return inRange(cls) ? namesVi[cls] : UNKNOWN_NAME_VI;
+    }
+
+    public boolean isDangerous(int cls) {
+        return inRange(cls) && dangerous[cls];
+    }
+
+    public int priority(int cls) {
+        return inRange(cls) ? priority[cls] : PRIORITY_NORMAL;
+    }
+
+    private boolean inRange(int cls) {
+        return cls >= 0 && cls < labels.length;
+    }
+}
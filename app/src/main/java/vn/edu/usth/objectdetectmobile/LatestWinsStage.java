@@ -0,0 +1,129 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.util.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * One stage of the realtime frame pipeline: a dedicated worker thread with a single-slot mailbox.
+ * <p>
+ * {@link #offer} never blocks. If the worker is still busy with an earlier item, the newer item
+ * replaces whatever was waiting (latest wins) and the replaced one is handed to the drop callback
+ * so pooled buffers can be returned. An optional {@link KeepPolicy} lets a waiting item outrank a
+ * newer one, in which case the newcomer is dropped instead. Chaining stages this way lets
+ * consecutive frames overlap while throughput settles at the rate of the slowest stage. Handler
+ * time and replaced items are reported as {@code stage.<name>.run} and
+ * {@code stage.<name>.dropped} in {@link Metrics}.
+ */
+public final class LatestWinsStage<T> {
+
+    public interface Handler<T> {
+        void handle(T item) throws Exception;
+    }
+
+    public interface DropListener<T> {
+        void onDropped(T item);
+    }
+
+    public interface KeepPolicy<T> {
+        /** True if {@code waiting} must not be replaced by {@code incoming}. */
+        boolean keepWaiting(T waiting, T incoming);
+    }
+
+    private final String name;
+    private final Handler<T> handler;
+    private final DropListener<T> dropListener;
+    private final KeepPolicy<T> keepPolicy;
+    private final ExecutorService worker;
+    private final AtomicReference<T> pending = new AtomicReference<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final AtomicLong dropped = new AtomicLong();
+    private final Metrics.Histogram runTime;
+    private final Metrics.Counter droppedCounter;
+
+    public LatestWinsStage(String name, Handler<T> handler, DropListener<T> dropListener) {
+        this(name, handler, dropListener, null);
+    }
+
+    public LatestWinsStage(String name, Handler<T> handler, DropListener<T> dropListener,
+                           KeepPolicy<T> keepPolicy) {
+        this.name = name;
+        this.handler = handler;
+        this.dropListener = dropListener;
+        this.keepPolicy = keepPolicy;
+        this.runTime = Metrics.timer("stage." + name + ".run");
+        this.droppedCounter = Metrics.counter("stage." + name + ".dropped");
+        this.worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "pipeline-" + name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void offer(T item) {
+        T replaced;
+        while (true) {
+            replaced = pending.get();
+            if (replaced != null && keepPolicy != null && keepPolicy.keepWaiting(replaced, item)) {
+                // The waiting item is already scheduled; the newcomer is the one dropped.
+                drop(item);
+                return;
+            }
+            if (pending.compareAndSet(replaced, item)) break;
+        }
+        if (replaced != null) drop(replaced);
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                worker.execute(this::drain);
+            } catch (Exception e) {
+                // Shut down: nobody will consume the item any more.
+                scheduled.set(false);
+                T orphan = pending.getAndSet(null);
+                if (orphan != null && dropListener != null) dropListener.onDropped(orphan);
+            }
+        }
+    }
+
+    private void drop(T item) {
+        dropped.incrementAndGet();
+        droppedCounter.inc();
+        if (dropListener != null) dropListener.onDropped(item);
+    }
+
+    private void drain() {
+        while (true) {
+            T item = pending.getAndSet(null);
+            if (item == null) {
+                scheduled.set(false);
+                // Re-check: an offer may have raced in after the poll but before the flag reset.
+                if (pending.get() == null || !scheduled.compareAndSet(false, true)) return;
+                continue;
+            }
+            long t0 = Metrics.now();
+            try {
+                handler.handle(item);
+                runTime.recordSince(t0);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Throwable t) {
+                Log.e("LatestWinsStage", "stage " + name + " failed", t);
+            }
+        }
+    }
+
+    /** Items replaced (or refused by the keep policy) before the worker got to them. */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public void shutdown() {
+        worker.shutdownNow();
+        T orphan = pending.getAndSet(null);
+        if (orphan != null && dropListener != null) dropListener.onDropped(orphan);
+    }
+}
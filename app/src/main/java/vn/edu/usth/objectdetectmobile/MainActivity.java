@@ -4,6 +4,10 @@ import android.Manifest;
 import android.annotation.SuppressLint;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
 import android.os.Bundle;
 import android.util.Log;
 import android.util.Size;
@@ -16,6 +20,7 @@ import androidx.activity.ComponentActivity;
 import androidx.annotation.NonNull;
 import androidx.annotation.OptIn;
 import androidx.camera.camera2.interop.Camera2CameraInfo;
+import androidx.camera.camera2.interop.Camera2Interop;
 import androidx.camera.camera2.interop.ExperimentalCamera2Interop;
 import androidx.camera.core.Camera;
 import androidx.camera.core.CameraSelector;
@@ -37,12 +42,18 @@ import com.google.android.material.button.MaterialButton;
 import com.google.android.material.switchmaterial.SwitchMaterial;
 import vn.edu.usth.objectdetectmobile.utils.TTSWarning;
 
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 
 import ai.onnxruntime.OrtException;
 
@@ -60,6 +71,7 @@ import android.content.IntentFilter;
 import android.widget.ImageButton;
 import android.os.SystemClock;
 import android.content.Context;
+import android.content.res.Configuration;
 
 public class MainActivity extends ComponentActivity {
     // ---------------------------------------------------------------------------------------------
@@ -88,6 +100,7 @@ public class MainActivity extends ComponentActivity {
     private static final String DEPTH_MODEL_PREFS = "depth_models";
     private SharedPreferences depthModelPrefs;
     private static final String PREF_ENV_MODE = "pref_env_mode";
+    private static final String PREF_METRICS_HUD = "pref_metrics_hud";
     private EnvMode envMode = EnvMode.INDOOR;  // default = Indoor
     private SwitchMaterial environmentSwitch;
     // ---------------------------------------------------------------------------------------------
@@ -100,10 +113,35 @@ public class MainActivity extends ComponentActivity {
     private static final short DEPTH_INTERVAL_MS = 1500;
     private static final short DEPTH_CACHE_MS = 3000;
 
+    // Tracking: full detector run at most every N frames, boxes predicted in between
+    private static final int DETECT_INTERVAL_FRAMES = 3;
+
     // Input blur
     private static final boolean ENABLE_INPUT_BLUR = true;
     private static final int BLUR_RADIUS = 1; // 1 => kernel 3x3
 
+    // Detector input size follows latency (dynamic-shape models only); budget per keyframe
+    private static final long DETECT_TARGET_MS = 66;
+
+    // Frame recording / replay (see FrameRecording). A replay runs instead of the camera:
+    //   adb shell am start -n vn.edu.usth.objectdetectmobile/.MainActivity \
+    //       --es replay rec-20250101-120000.odmf [--es replay_pacing native|realtime]
+    static final String EXTRA_REPLAY = "replay";
+    static final String EXTRA_REPLAY_PACING = "replay_pacing";
+    private static final String RECORDINGS_DIR = "recordings";
+    private static final String REPLAY_OUTPUT_DIR = "replay";
+
+    // Pipeline metrics (see Metrics / MetricsReporter)
+    private static final Metrics.Histogram ANALYZE_TIME = Metrics.timer("frame.analyze");
+    private static final Metrics.Histogram FUSE_TIME = Metrics.timer("render.fuse");
+    private static final Metrics.Counter FRAMES_ANALYZED = Metrics.counter("frames.analyzed");
+    private static final Metrics.Counter CAMERA_DROPPED = Metrics.counter("camera.dropped");
+    private static final Metrics.Gauge CAMERA_PERIOD_US = Metrics.gauge("camera.period_us");
+    private static final Metrics.Counter DEPTH_CACHE_HIT = Metrics.counter("depth.cache.hit");
+    private static final Metrics.Counter DEPTH_CACHE_MISS = Metrics.counter("depth.cache.miss");
+    private static final Metrics.Counter DEPTH_REFRESH = Metrics.counter("depth.refresh");
+    private static final Metrics.Counter DEPTH_INLINE = Metrics.counter("depth.inline");
+
     // ---------------------------------------------------------------------------------------------
     //  UI views
     // ---------------------------------------------------------------------------------------------
@@ -122,6 +160,9 @@ public class MainActivity extends ComponentActivity {
     private TextView calibrationValue;
     private SeekBar zoomSeek;
     private TextView zoomValue;
+    private SwitchMaterial metricsSwitch;
+    private SwitchMaterial recordSwitch;
+    private TextView metricsHud;
     // ---------------------------------------------------------------------------------------------
     //  Core components
     // ---------------------------------------------------------------------------------------------
@@ -133,8 +174,28 @@ public class MainActivity extends ComponentActivity {
 
     // CameraX analysis executor (single thread)
     private ExecutorService exec;
-    // Inference executor (YOLO + depth in parallel)
-    private ExecutorService inferenceExec;
+    // Background executor for depth session warm-up
+    private ExecutorService depthExec;
+    // Realtime pipeline: convert (analyzer thread) -> detect -> render
+    private LatestWinsStage<FrameJob> detectStage;
+    private LatestWinsStage<FrameJob> renderStage;
+    // Independent depth producer; frames attach whatever map it last published
+    private LatestWinsStage<DepthRequest> depthStage;
+    // Periodic JSON dump of the pipeline metrics, plus the optional HUD
+    private MetricsReporter metricsReporter;
+    // Analyzer thread only: sensor timestamp gaps -> frames CameraX dropped for us
+    private final FrameDropEstimator frameDrops = new FrameDropEstimator();
+    private long lastAnalyzeNs;                 // analyzer time on the previous frame
+    // Upright size of the last analyzed frame (0 before the first); depth warm-up matches it
+    private volatile int lastFrameW, lastFrameH;
+    // Set while "Record frames" is on; the analyzer copies every frame into it
+    private volatile FrameRecorder frameRecorder;
+    // Set when the activity was started to replay a recording instead of the camera
+    private FrameReplaySource replaySource;
+    private volatile DetectionLog replayLog;
+    // Recorded time of the frame being replayed, standing in for elapsedRealtime (-1 when live)
+    private volatile long replayClockMs = -1L;
+    private long replayClockBaseMs, replayFirstTimestampNs;
 
     // ---------------------------------------------------------------------------------------------
     //  Depth & stereo state
@@ -155,6 +216,8 @@ public class MainActivity extends ComponentActivity {
     private volatile boolean blurEnabled = ENABLE_INPUT_BLUR;
     private volatile boolean singleShotRequested = false;
     private volatile boolean singleShotRunning = false;
+    // Shared by the convert and detect stages (internally synchronized)
+    private final ObjectTracker tracker = new ObjectTracker(DETECT_INTERVAL_FRAMES);
 
     // ---------------------------------------------------------------------------------------------
     //  Calibration & prefs
@@ -188,10 +251,12 @@ public class MainActivity extends ComponentActivity {
 
         // Single-thread CameraX analyzer
         exec = Executors.newSingleThreadExecutor();
-        // Two-thread inference pool: YOLO + depth
-        inferenceExec = Executors.newFixedThreadPool(2);
+        depthExec = Executors.newSingleThreadExecutor();
+        initFrameStages();
         initViews();
         initPreferencesAndCalibrationKey();
+        initMetrics();
+        replaySource = openReplaySource(getIntent());
 
         // Đăng ký broadcast receiver cho download complete
         IntentFilter filter = new IntentFilter(DownloadManager.ACTION_DOWNLOAD_COMPLETE);
@@ -212,8 +277,9 @@ public class MainActivity extends ComponentActivity {
 
         initControls();
 
-        // camera permission
-        if (ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA)
+        // camera permission (a replay does not use the camera)
+        if (replaySource == null
+                && ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA)
                 != PackageManager.PERMISSION_GRANTED) {
             ActivityCompat.requestPermissions(this,
                     new String[]{Manifest.permission.CAMERA}, REQ);
@@ -235,8 +301,15 @@ public class MainActivity extends ComponentActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (replaySource != null) replaySource.stop();
+        stopRecording();
         if (exec != null) exec.shutdownNow();
-        if (inferenceExec != null) inferenceExec.shutdownNow();
+        if (depthExec != null) depthExec.shutdownNow();
+        if (detectStage != null) detectStage.shutdown();
+        if (depthStage != null) depthStage.shutdown();
+        if (renderStage != null) renderStage.shutdown();
+        if (metricsReporter != null) metricsReporter.stop();
+        closeReplayLog();
         if (detector != null) {
             try {
                 detector.close();
@@ -264,6 +337,15 @@ public class MainActivity extends ComponentActivity {
         }
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        DepthEstimator est = depthEstimator;
+        if (est != null) {
+            est.onTrimMemory(level);
+        }
+    }
+
     // ---------------------------------------------------------------------------------------------
     //  UI init & listeners
     // ---------------------------------------------------------------------------------------------
@@ -281,10 +363,13 @@ public class MainActivity extends ComponentActivity {
         calibrationSeek = findViewById(R.id.seekCalibration);
         calibrationValue = findViewById(R.id.textCalibrationValue);
         environmentSwitch = findViewById(R.id.switchEnvironment);
+        metricsSwitch = findViewById(R.id.switchMetricsHud);
+        metricsHud = findViewById(R.id.textMetricsHud);
+        recordSwitch = findViewById(R.id.switchRecordFrames);
 
 
         //labels of object detection
-        overlay.setLabels(LabelHelper.loadLabels(this, "labels.txt"));
+        overlay.setLabels(LabelRegistry.get(this));
     }
 
     private void initPreferencesAndCalibrationKey() {
@@ -320,6 +405,8 @@ public class MainActivity extends ComponentActivity {
         initBlurSwitch();
         initStereoSwitch();
         initEnvironmentSwitch();
+        initMetricsSwitch();
+        initRecordSwitch();
         initQuickSettingsButton();
         initSettingsButton();
         setupCalibrationControls();
@@ -389,6 +476,73 @@ public class MainActivity extends ComponentActivity {
         });
     }
 
+    /** Starts the periodic metrics dump and records the settings the numbers depend on. */
+    private void initMetrics() {
+        metricsReporter = new MetricsReporter(this);
+        metricsReporter.putConfig("depth_interval_ms", DEPTH_INTERVAL_MS);
+        metricsReporter.putConfig("depth_cache_ms", DEPTH_CACHE_MS);
+        metricsReporter.putConfig("detect_interval_frames", DETECT_INTERVAL_FRAMES);
+        metricsReporter.putConfig("detect_target_ms", DETECT_TARGET_MS);
+        metricsReporter.putConfig("env_mode", envMode);
+        metricsReporter.start();
+    }
+
+    private void initMetricsSwitch() {
+        if (metricsSwitch == null) return;
+        boolean shown = prefs.getBoolean(PREF_METRICS_HUD, false);
+        metricsSwitch.setChecked(shown);
+        metricsReporter.setHud(metricsHud, shown);
+        metricsSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            prefs.edit().putBoolean(PREF_METRICS_HUD, isChecked).apply();
+            metricsReporter.setHud(metricsHud, isChecked);
+        });
+    }
+
+    private void initRecordSwitch() {
+        if (recordSwitch == null) return;
+        recordSwitch.setChecked(false);
+        recordSwitch.setEnabled(replaySource == null);
+        recordSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            if (isChecked) {
+                startRecording();
+            } else {
+                stopRecording();
+            }
+        });
+    }
+
+    /** Starts writing analyzer frames to {@code recordings/rec-<time>.odmf} for later replay. */
+    private void startRecording() {
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        File file = new File(recordingsDir(), "rec-" + stamp + FrameRecording.EXTENSION);
+        try {
+            frameRecorder = new FrameRecorder(file);
+            Toast.makeText(this, getString(R.string.recording_started, file.getName()),
+                    Toast.LENGTH_SHORT).show();
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot start recording", e);
+            Toast.makeText(this, "Recording failed: " + e.getMessage(),
+                    Toast.LENGTH_LONG).show();
+            recordSwitch.setChecked(false);
+        }
+    }
+
+    private void stopRecording() {
+        FrameRecorder recorder = frameRecorder;
+        frameRecorder = null;
+        if (recorder != null) recorder.stop();
+    }
+
+    /** App-specific external storage, so recordings and replay output can be pulled with adb. */
+    private File recordingsBaseDir() {
+        File base = getExternalFilesDir(null);
+        return base != null ? base : getFilesDir();
+    }
+
+    private File recordingsDir() {
+        return new File(recordingsBaseDir(), RECORDINGS_DIR);
+    }
+
     private void initEnvironmentSwitch() {
         // If the app itself changed the switch state (via setChecked()), set flag to avoid triggering the logic again
         if (environmentSwitch == null) return;
@@ -422,6 +576,7 @@ public class MainActivity extends ComponentActivity {
 
         // Lưu vào prefs
         prefs.edit().putString(PREF_ENV_MODE, envMode.name()).apply();
+        if (metricsReporter != null) metricsReporter.putConfig("env_mode", envMode);
 
         Toast.makeText(
                 this,
@@ -448,7 +603,7 @@ public class MainActivity extends ComponentActivity {
                 showMissingDepthModelDialog(envMode);
 
                 // Keep depthEstimator = null, YOLO-only mode
-                depthEstimator = null;
+                closeDepthEstimator();
                 synchronized (depthState) {
                     depthState.lastDepthMap = null;
                     depthState.lastDepthMillis = 0L;
@@ -460,42 +615,28 @@ public class MainActivity extends ComponentActivity {
                 return;
             }
 
-            // 2) We DO have a model (asset or downloaded) -> try to create DepthEstimator
-            try {
-                DepthEstimator newDepth = new DepthEstimator(this, envMode);
-                depthEstimator = newDepth;
-
-                synchronized (depthState) {
-                    depthState.lastDepthMap = null;
-                    depthState.lastDepthMillis = 0L;
-                    depthState.lastDepthCacheTime = 0L;
-                }
-
-                Toast.makeText(
-                        this,
-                        "Depth model loaded for " +
-                                (envMode == EnvMode.OUTDOOR ? "Outdoor" : "Indoor"),
-                        Toast.LENGTH_SHORT
-                ).show();
-
-            } catch (Throwable e) {
-                Log.w(TAG, "Depth estimator re-init failed", e);
-                depthEstimator = null;
-                synchronized (depthState) {
-                    depthState.lastDepthMap = null;
-                    depthState.lastDepthMillis = 0L;
-                    depthState.lastDepthCacheTime = 0L;
+            // 2) We DO have a model (asset or downloaded) -> build DepthEstimator off the UI thread
+            closeDepthEstimator();
+            createDepthEstimatorAsync(envMode, newDepth -> {
+                if (newDepth != null) {
+                    Toast.makeText(
+                            this,
+                            "Depth model loaded for " +
+                                    (envMode == EnvMode.OUTDOOR ? "Outdoor" : "Indoor"),
+                            Toast.LENGTH_SHORT
+                    ).show();
+                } else {
+                    Toast.makeText(
+                            this,
+                            "Failed to init depth for " +
+                                    (envMode == EnvMode.OUTDOOR ? "Outdoor" : "Indoor"),
+                            Toast.LENGTH_LONG
+                    ).show();
                 }
-                Toast.makeText(
-                        this,
-                        "Failed to init depth for " +
-                                (envMode == EnvMode.OUTDOOR ? "Outdoor" : "Indoor"),
-                        Toast.LENGTH_LONG
-                ).show();
-            }
 
-            // Re-enable realtime (with or without depth depending on success)
-            realtimeEnabled = true;
+                // Re-enable realtime (with or without depth depending on success)
+                realtimeEnabled = true;
+            });
         });
     }
 
@@ -536,17 +677,29 @@ public class MainActivity extends ComponentActivity {
     //  Pipelines startup (detector + depth + camera)
     // ---------------------------------------------------------------------------------------------
     private void startPipelines() {
-        initDetectorAndDepth();
-        initCameraProvider();
+        if (replaySource != null) {
+            // A replay waits for the depth model so every run has depth from its first frame.
+            initDetectorAndDepth(this::startReplay);
+        } else {
+            initDetectorAndDepth(null);
+            initCameraProvider();
+        }
     }
 
-    private void initDetectorAndDepth() {
+    /** {@code onDepthReady}, if any, runs on the UI thread once depth is loaded or known absent. */
+    private void initDetectorAndDepth(Runnable onDepthReady) {
         try {
             detector = new ObjectDetector(this);
+            // A replay keeps the default input size so runs on different builds are comparable.
+            if (replaySource == null) detector.setAutoInputSize(DETECT_TARGET_MS);
+            metricsReporter.putConfig("detector_profile", detector.getSessionProfile().encode());
+            metricsReporter.putConfig("detector_input_sizes",
+                    Arrays.toString(detector.getSupportedInputSizes()));
         } catch (Throwable e) {
             Log.e(TAG, "Detector init failed", e);
             Toast.makeText(this, "Detector load failed: " + e.getMessage(),
                     Toast.LENGTH_LONG).show();
+            if (onDepthReady != null) onDepthReady.run();
             return;
         }
 
@@ -562,25 +715,108 @@ public class MainActivity extends ComponentActivity {
             depthState.lastDepthCacheTime = 0L;
             stereoProcessor = null;
             updateStereoSwitchAvailability(false);
+            if (onDepthReady != null) onDepthReady.run();
             return;
         }
 
-        try {
-            depthEstimator = new DepthEstimator(this, envMode);
-            depthState.lastDepthMap = null;
-            depthState.lastDepthMillis = 0L;
-            depthState.lastDepthCacheTime = 0L;
-        } catch (Throwable e) {
-            Log.w(TAG, "Depth estimator disabled", e);
-            depthEstimator = null;
-            depthState.lastDepthMap = null;
-            depthState.lastDepthMillis = 0L;
-            depthState.lastDepthCacheTime = 0L;
-        }
+        createDepthEstimatorAsync(envMode, est -> {
+            if (onDepthReady != null) onDepthReady.run();
+        });
         stereoProcessor = null;
         updateStereoSwitchAvailability(false);
     }
 
+    /**
+     * Builds the depth estimator for {@code mode} on the depth executor, since the first launch
+     * installs the model (copy, fsync, SHA-256) and that takes seconds. The estimator is then
+     * published with a cleared depth cache and warmed up, and {@code onDone} gets it (or null if
+     * it failed) on the UI thread. A build overtaken by a mode change or by onDestroy is closed
+     * unpublished and {@code onDone} is not called.
+     */
+    private void createDepthEstimatorAsync(EnvMode mode, Consumer<DepthEstimator> onDone) {
+        depthExec.execute(() -> {
+            DepthEstimator built = null;
+            try {
+                built = new DepthEstimator(this, mode);
+            } catch (Throwable e) {
+                Log.w(TAG, "Depth estimator disabled", e);
+            }
+            DepthEstimator est = built;
+            runOnUiThread(() -> {
+                if (isDestroyed() || envMode != mode) {
+                    closeDepthAsync(est);
+                    return;
+                }
+                // Two builds for one mode (e.g. a download landing during the first) keep the last.
+                closeDepthAsync(depthEstimator);
+                depthEstimator = est;
+                synchronized (depthState) {
+                    depthState.lastDepthMap = null;
+                    depthState.lastDepthMillis = 0L;
+                    depthState.lastDepthCacheTime = 0L;
+                }
+                warmUpDepthAsync(est);
+                onDone.accept(est);
+            });
+        });
+    }
+
+    /**
+     * Builds the persistent depth session off the UI thread so the first depth frame is fast,
+     * warming it at the size frames will arrive in.
+     */
+    private void warmUpDepthAsync(DepthEstimator est) {
+        if (est == null || depthExec == null) return;
+        int w = lastFrameW, h = lastFrameH;
+        if (w <= 0 || h <= 0) {
+            // Nothing analyzed yet: the 4:3 analysis stream is rotated to the display orientation.
+            boolean portrait = getResources().getConfiguration().orientation
+                    == Configuration.ORIENTATION_PORTRAIT;
+            w = portrait ? 360 : 480;
+            h = portrait ? 480 : 360;
+        }
+        final int frameW = w, frameH = h;
+        depthExec.execute(() -> {
+            try {
+                est.warmUp(frameW, frameH);
+            } catch (Throwable e) {
+                Log.w(TAG, "Depth warm-up failed", e);
+            }
+        });
+    }
+
+    /**
+     * Detaches the current estimator and closes it on the depth executor: close() waits for an
+     * in-flight inference, which must not happen on the UI thread. Queued there, it also runs
+     * before the replacement's warm-up, so the two sessions never coexist.
+     */
+    private void closeDepthEstimator() {
+        DepthEstimator old = depthEstimator;
+        depthEstimator = null;
+        closeDepthAsync(old);
+    }
+
+    private void closeDepthAsync(DepthEstimator old) {
+        if (old == null) return;
+        Runnable close = () -> {
+            try {
+                old.close();
+            } catch (Exception e) {
+                Log.w(TAG, "DepthEstimator close failed", e);
+            }
+        };
+        ExecutorService ex = depthExec;
+        if (ex != null) {
+            try {
+                ex.execute(close);
+                return;
+            } catch (RejectedExecutionException ignore) {
+                // Shutting down: close inline.
+            }
+        }
+        close.run();
+    }
+
     private void showMissingDepthModelDialog(EnvMode targetMode) {
         String modeLabel = (targetMode == EnvMode.OUTDOOR) ? "Outdoor" : "Indoor";
 
@@ -764,6 +1000,7 @@ public class MainActivity extends ComponentActivity {
     // ---------------------------------------------------------------------------------------------
     //  Camera pipeline (realtime analysis)
     // ---------------------------------------------------------------------------------------------
+    @OptIn(markerClass = ExperimentalCamera2Interop.class)
     private void bindCameraUseCases() {
         if (cameraProvider == null) return;
         try {
@@ -780,7 +1017,7 @@ public class MainActivity extends ComponentActivity {
                     .build();
             preview.setSurfaceProvider(previewView.getSurfaceProvider());
 
-            ImageAnalysis analysis = new ImageAnalysis.Builder()
+            ImageAnalysis.Builder analysisBuilder = new ImageAnalysis.Builder()
                     .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
                     .setResolutionSelector(
                             new ResolutionSelector.Builder()
@@ -795,10 +1032,23 @@ public class MainActivity extends ComponentActivity {
                                             )
                                     )
                                     .build()
-                    )
-                    .build();
+                    );
+            // The sensor's frame duration gives the drop estimator the true camera period.
+            new Camera2Interop.Extender<>(analysisBuilder).setSessionCaptureCallback(
+                    new CameraCaptureSession.CaptureCallback() {
+                        @Override
+                        public void onCaptureCompleted(@NonNull CameraCaptureSession session,
+                                                       @NonNull CaptureRequest request,
+                                                       @NonNull TotalCaptureResult result) {
+                            Long duration = result.get(CaptureResult.SENSOR_FRAME_DURATION);
+                            if (duration != null) frameDrops.setReportedPeriodNs(duration);
+                        }
+                    });
+            ImageAnalysis analysis = analysisBuilder.build();
 
-            analysis.setAnalyzer(exec, this::analyzeFrame);
+            analysis.setAnalyzer(exec, image -> analyzeFrame(image,
+                    image.getImageInfo().getRotationDegrees(),
+                    image.getImageInfo().getTimestamp(), -1));
 
             CameraSelector selector =
                     CameraUtils.buildBackSelector(cameraProvider, lensFacing);
@@ -817,48 +1067,195 @@ public class MainActivity extends ComponentActivity {
         }
     }
 
+    // ---------------------------------------------------------------------------------------------
+    //  Replay of a recorded session (no camera)
+    // ---------------------------------------------------------------------------------------------
+
+    /** The recording named by {@link #EXTRA_REPLAY} (a file in recordings/), or null. */
+    private FrameReplaySource openReplaySource(Intent intent) {
+        String name = intent != null ? intent.getStringExtra(EXTRA_REPLAY) : null;
+        if (name == null) return null;
+        File file = new File(recordingsDir(), new File(name).getName());
+        FrameReplaySource.Pacing pacing =
+                "realtime".equalsIgnoreCase(intent.getStringExtra(EXTRA_REPLAY_PACING))
+                        ? FrameReplaySource.Pacing.REALTIME
+                        : FrameReplaySource.Pacing.NATIVE;
+        try {
+            return new FrameReplaySource(file, pacing);
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot open recording " + file, e);
+            Toast.makeText(this, "Replay failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
+            return null;
+        }
+    }
+
     /**
-     * Runs depth estimation if the interval has passed, otherwise returns cached depth.
-     * Thread-safe; can be called from background threads.
+     * Plays the recording through {@link #analyzeFrame} in place of the camera and writes every
+     * rendered frame's detections and depth to {@code replay/<recording>-<pacing>-<time>.jsonl}.
+     * Time comes from the recorded timestamps, so depth refresh and caching decisions match the
+     * recorded session.
      */
-    private DepthEstimator.DepthMap maybeRunDepthSync(
-            int[] argb,
-            int width,
-            int height,
-            long nowMs
-    ) {
-        if (depthEstimator == null) return null;
+    private void startReplay() {
+        FrameReplaySource source = replaySource;
+        if (detector == null) {
+            Log.w(TAG, "No detector, replay not started");
+            return;
+        }
+        String name = getIntent().getStringExtra(EXTRA_REPLAY);
+        String base = new File(name).getName().replaceFirst("\\.[^.]*$", "");
+        String pacing = source.getPacing().name().toLowerCase(Locale.US);
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        File out = new File(new File(recordingsBaseDir(), REPLAY_OUTPUT_DIR),
+                base + "-" + pacing + "-" + stamp + ".jsonl");
+        try {
+            replayLog = new DetectionLog(out);
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot write replay output " + out, e);
+        }
+        metricsReporter.putConfig("replay", base);
+        metricsReporter.putConfig("replay_pacing", pacing);
+        Log.i(TAG, "Replaying " + source.getFrameCount() + " frames of " + name
+                + " (" + pacing + ")");
+        replayClockBaseMs = SystemClock.elapsedRealtime();
+        source.start(this::replayFrame, () -> runOnUiThread(() -> finishReplay(out)));
+    }
 
-        synchronized (depthState) {
-            boolean hasDepth = (depthState.lastDepthMap != null);
-            boolean tooSoon = (nowMs - depthState.lastDepthMillis) < DEPTH_INTERVAL_MS;
-            boolean cacheValid = hasDepth &&
-                    (nowMs - depthState.lastDepthCacheTime) <= DEPTH_CACHE_MS;
-
-            if (tooSoon && cacheValid) {
-                depthState.lastDepthCacheTime = nowMs;
-                return depthState.lastDepthMap;
+    /** Replay thread: one recorded frame, on the same path as a camera frame. */
+    private boolean replayFrame(FrameRecording.Frame frame, int index) {
+        if (index == 0) replayFirstTimestampNs = frame.getTimestampNs();
+        replayClockMs = replayClockBaseMs
+                + (frame.getTimestampNs() - replayFirstTimestampNs) / 1_000_000L;
+        return analyzeFrame(frame, frame.getRotationDegrees(), frame.getTimestampNs(), index);
+    }
+
+    private void finishReplay(File out) {
+        boolean logged = replayLog != null;
+        closeReplayLog();
+        Log.i(TAG, "Replay finished" + (logged ? ", output in " + out : ""));
+        Toast.makeText(this, logged ? getString(R.string.replay_finished, out.getName())
+                : getString(R.string.replay_finished_no_output), Toast.LENGTH_LONG).show();
+        depthExec.execute(() -> {
+            try {
+                metricsReporter.dump();
+            } catch (IOException e) {
+                Log.w(TAG, "Metrics dump failed", e);
             }
+        });
+    }
+
+    private void closeReplayLog() {
+        DetectionLog log = replayLog;
+        replayLog = null;
+        if (log == null) return;
+        try {
+            log.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Replay output close failed", e);
         }
+    }
 
+    /** Render thread: the frame's final detections and depth, one JSON line per frame. */
+    private void logReplayFrame(FrameJob job, List<ObjectDetector.Detection> dets) {
+        DetectionLog log = replayLog;
+        if (log == null) return;
         try {
-            DepthEstimator.DepthMap map =
-                    depthEstimator.estimate(argb, width, height);
+            log.write(job.replayIndex, job.sensorTimestampNs, job.timestampMs,
+                    job.frameW, job.frameH, dets, job.depthMap);
+        } catch (IOException e) {
+            Log.w(TAG, "Replay output write failed", e);
+        }
+    }
 
-            synchronized (depthState) {
-                depthState.lastDepthMap = map;
-                depthState.lastDepthMillis = nowMs;
-                depthState.lastDepthCacheTime = nowMs;
+    /** {@link SystemClock#elapsedRealtime()}, or the recorded frame time during a replay. */
+    private long clockMs() {
+        long t = replayClockMs;
+        return t >= 0 ? t : SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Claims the next depth refresh if one is due and none is running. Depth is produced in the
+     * background; frames never wait for it.
+     */
+    private boolean claimDepthRefresh(long nowMs) {
+        synchronized (depthState) {
+            if (depthState.refreshInFlight) return false;
+            if (depthState.lastDepthMap != null
+                    && (nowMs - depthState.lastDepthMillis) < DEPTH_INTERVAL_MS) {
+                return false;
             }
-            return map;
+            depthState.refreshInFlight = true;
+            depthState.lastDepthMillis = nowMs;
+            DEPTH_REFRESH.inc();
+            return true;
+        }
+    }
+
+    private void releaseDepthClaim() {
+        synchronized (depthState) {
+            depthState.refreshInFlight = false;
+        }
+    }
+
+    /** The most recently published depth map, or null when none is recent enough to use. */
+    private DepthEstimator.DepthMap latestDepth(long nowMs) {
+        synchronized (depthState) {
+            if (depthState.lastDepthMap == null) return null;
+            if ((nowMs - depthState.lastDepthCacheTime) > DEPTH_CACHE_MS) return null;
+            return depthState.lastDepthMap;
+        }
+    }
+
+    private void publishDepth(DepthEstimator source, DepthEstimator.DepthMap map) {
+        synchronized (depthState) {
+            // The estimator was swapped (env change, reload) while this map was computed.
+            if (depthEstimator != source) return;
+            depthState.lastDepthMap = map;
+            depthState.lastDepthCacheTime = clockMs();
+        }
+    }
+
+    private void runDepthRefresh(DepthRequest req) {
+        DepthEstimator est = depthEstimator;
+        try {
+            if (est == null) return;
+            publishDepth(est, est.estimate(req.argb, req.width, req.height, req.timestampMs));
         } catch (Exception e) {
             Log.e(TAG, "Depth estimation failed", e);
-            return null;
+        } finally {
+            releaseDepthClaim();
         }
     }
 
-    private void analyzeFrame(ImageProxy image) {
+    /** A rotated ARGB frame handed to the depth producer. */
+    private static final class DepthRequest {
+        final int[] argb;
+        final int width, height;
+        final long timestampMs;
+
+        DepthRequest(int[] argb, int width, int height, long timestampMs) {
+            this.argb = argb;
+            this.width = width;
+            this.height = height;
+            this.timestampMs = timestampMs;
+        }
+    }
+
+    /**
+     * Analyzer thread (the replay thread during a replay). {@code replayIndex} is the recorded
+     * frame's index, or -1 for a camera frame. Returns whether the frame entered the pipeline.
+     */
+    private boolean analyzeFrame(ImageProxy image, int rotation, long timestampNs,
+                                 int replayIndex) {
         boolean singleShotFrame = false;
+        boolean handedOff = false;
+        // Set while this thread holds a depth refresh claim nobody else will release yet
+        boolean depthClaimHeld = false;
+        FrameJob job = null;
+        long t0 = Metrics.now();
+        CAMERA_DROPPED.add(frameDrops.onFrame(timestampNs, lastAnalyzeNs));
+        CAMERA_PERIOD_US.set(frameDrops.periodNs() / 1000);
+        FrameRecorder recorder = frameRecorder;
+        if (recorder != null) recorder.record(image, rotation, timestampNs);
         try {
             boolean shouldProcess = realtimeEnabled;
             if (!shouldProcess && singleShotRequested && !singleShotRunning) {
@@ -869,104 +1266,230 @@ public class MainActivity extends ComponentActivity {
                 if (stereoFusionEnabled && !stereoPipelineAvailable) {
                     singleShotFrame = false;
                     handleSequentialDualShot();
-                    return;
+                    return false;
                 }
             }
-            if (!shouldProcess) return;
+            if (!shouldProcess) return false;
 
             // Basic frame info
             int frameW = image.getWidth();
             int frameH = image.getHeight();
-            int rotation = image.getImageInfo().getRotationDegrees();
-
-            // YUV → ARGB (+ rotation)
-            int[] argb = Yuv.toArgb(image);
-            if (rotation != 0) {
-                argb = Yuv.rotate(argb, frameW, frameH, rotation);
-                if (rotation == 90 || rotation == 270) {
-                    int tmp = frameW;
-                    frameW = frameH;
-                    frameH = tmp;
-                }
+            if (rotation == 90 || rotation == 270) {
+                int tmp = frameW;
+                frameW = frameH;
+                frameH = tmp;
             }
+            lastFrameW = frameW;
+            lastFrameH = frameH;
 
             if (stereoProcessor != null) {
                 stereoProcessor.setReferenceSize(frameW, frameH);
             }
 
-            int[] detectorInput = (blurEnabled && BLUR_RADIUS > 0)
-                    ? ImageUtils.boxBlur(argb, frameW, frameH, BLUR_RADIUS)
-                    : argb;
-
-            final long nowMs = SystemClock.elapsedRealtime();
-
-            // Run YOLO + depth in parallel on inferenceExec
-            int finalFrameW1 = frameW;
-            int finalFrameH1 = frameH;
-            Future<List<ObjectDetector.Detection>> detFuture =
-                    inferenceExec.submit(() -> {
-                        try {
-                            return detector.detect(detectorInput, finalFrameW1, finalFrameH1);
-                        } catch (OrtException e) {
-                            Log.e(TAG, "detect failed", e);
-                            return null;
-                        } catch (Throwable t) {
-                            Log.e(TAG, "detect crashed", t);
-                            return null;
-                        }
-                    });
-
-            Future<DepthEstimator.DepthMap> depthFuture = null;
-            if (depthEstimator != null) {
-                int[] finalArgb = argb;
-                int finalFrameW = frameW;
-                int finalFrameH = frameH;
-                depthFuture = inferenceExec.submit(() ->
-                        maybeRunDepthSync(finalArgb, finalFrameW, finalFrameH, nowMs)
-                );
+            final long nowMs = clockMs();
+            final boolean blurFrame = blurEnabled && BLUR_RADIUS > 0;
+            DepthEstimator est = depthEstimator;
+            // A one-off capture has no running depth producer behind it, so it estimates inline
+            // when nothing recent is cached; realtime frames only kick the background refresh.
+            boolean depthInline = singleShotFrame && est != null && latestDepth(nowMs) == null;
+            boolean depthRefresh = !depthInline && est != null && claimDepthRefresh(nowMs);
+            depthClaimHeld = depthRefresh;
+            // A lockstep replay runs its refreshes inline too, so every run gets depth from the
+            // same frames instead of whenever the background producer finishes.
+            boolean depthClaimed =
+                    depthRefresh && replaySource != null && replaySource.isLockstep();
+            if (depthClaimed) {
+                depthInline = true;
+                depthRefresh = false;
             }
 
-            // Wait for results
-            List<ObjectDetector.Detection> dets = detFuture.get();
+            // Keyframes run the detector; in-between frames reuse the tracker's predictions. The
+            // claim advances the cadence here, not when the busy detect stage gets to the frame.
+            final boolean keyframe = singleShotFrame || tracker.claimKeyframe();
+
+            // Convert stage: everything that needs the ImageProxy happens here so the image can
+            // be closed (and CameraX can deliver the next frame) before detection starts.
+            job = new FrameJob(frameW, frameH, nowMs, singleShotFrame);
+            job.sensorTimestampNs = timestampNs;
+            job.replayIndex = replayIndex;
+            job.depthClaimed = depthClaimed;
+            job.keyframe = keyframe;
+            if (keyframe) {
+                // Fused path: the detector reads the YUV planes directly; the optional blur is
+                // folded into its area downscale instead of a full-resolution pass.
+                job.input = detector.prepare(image, rotation, blurFrame ? BLUR_RADIUS : 0);
+            }
+            if (depthInline || depthRefresh) {
+                int[] depthArgb = toRotatedArgb(image, rotation);
+                if (depthInline) {
+                    job.depthArgb = depthArgb;
+                } else {
+                    depthStage.offer(new DepthRequest(depthArgb, frameW, frameH, nowMs));
+                    // The depth stage releases the claim when it runs or drops the request.
+                    depthClaimHeld = false;
+                }
+            }
+            detectStage.offer(job);
+            handedOff = true;
+            FRAMES_ANALYZED.inc();
+            ANALYZE_TIME.recordSince(t0);
 
-            DepthEstimator.DepthMap depthMap = null;
-            if (depthFuture != null) {
-                depthMap = depthFuture.get();
+        } catch (Throwable t) {
+            Log.e(TAG, "analyzer crash", t);
+        } finally {
+            image.close();
+            if (!handedOff) {
+                // Whatever failed, a claim left set here would stop depth refreshing for good.
+                if (depthClaimHeld) releaseDepthClaim();
+                if (job != null && job.input != null) detector.recycle(job.input);
+                if (singleShotFrame) finishSingleShot();
             }
+            lastAnalyzeNs = Metrics.now() - t0;
+        }
+        return handedOff;
+    }
+
+    /** One frame travelling through the pipeline stages; each stage fills in its part. */
+    private static final class FrameJob {
+        final int frameW, frameH;
+        final long timestampMs;
+        final boolean singleShot;
+        long sensorTimestampNs;
+        int replayIndex = -1;                   // recorded frame index during a replay
+        boolean depthClaimed;                   // inline estimate holds the depth refresh claim
+        boolean keyframe;                       // claimed a detector run from the tracker
+        ObjectDetector.PreparedInput input;     // null on tracker-only frames
+        int[] depthArgb;                        // single-shot frames that estimate depth inline
+        List<ObjectDetector.Detection> dets;
+        DepthEstimator.DepthMap depthMap;
+
+        FrameJob(int frameW, int frameH, long timestampMs, boolean singleShot) {
+            this.frameW = frameW;
+            this.frameH = frameH;
+            this.timestampMs = timestampMs;
+            this.singleShot = singleShot;
+        }
+    }
+
+    /**
+     * Builds the detect -> render chain plus the depth producer. Each stage has its own thread
+     * and keeps only the newest pending item, so detection of frame N overlaps rendering of
+     * frame N-1 and conversion of frame N+1, while depth refreshes run beside them at their own
+     * pace and are picked up by whichever frame renders next.
+     */
+    private void initFrameStages() {
+        // A waiting keyframe is never displaced by a tracker-only frame, or the claimed detection
+        // would be lost until the next interval.
+        detectStage = new LatestWinsStage<>("detect", this::runDetectStage, this::dropFrameJob,
+                (waiting, incoming) -> waiting.keyframe && !incoming.keyframe);
+        renderStage = new LatestWinsStage<>("render", this::runRenderStage, this::dropFrameJob);
+        depthStage = new LatestWinsStage<>("depth", this::runDepthRefresh,
+                req -> releaseDepthClaim());
+    }
 
-            if (depthMap != null && dets != null) {
-                dets = depthEstimator.attachDepth(dets, depthMap);
+    private void runDetectStage(FrameJob job) {
+        boolean offered = false;
+        try {
+            List<ObjectDetector.Detection> dets = null;
+            if (job.input != null) {
+                try {
+                    dets = detector.detect(job.input);
+                } catch (OrtException e) {
+                    Log.e(TAG, "detect failed", e);
+                } catch (Throwable t) {
+                    Log.e(TAG, "detect crashed", t);
+                } finally {
+                    detector.recycle(job.input);
+                    job.input = null;
+                }
             }
+            job.dets = (dets != null)
+                    ? tracker.update(dets, job.frameW, job.frameH)
+                    : tracker.predict(job.frameW, job.frameH);
+            renderStage.offer(job);
+            offered = true;
+        } finally {
+            // A job that never reaches render must still give back its claim and replay slot.
+            if (!offered) dropFrameJob(job);
+        }
+    }
 
+    private void runRenderStage(FrameJob job) {
+        try {
+            attachLatestDepth(job);
+            List<ObjectDetector.Detection> dets = job.dets;
             if (stereoFusionEnabled && stereoProcessor != null
-                    && depthMap != null && dets != null) {
-                dets = stereoProcessor.fuseDepth(depthMap, dets, frameW, frameH);
+                    && job.depthMap != null && dets != null) {
+                long t0 = Metrics.now();
+                dets = stereoProcessor.fuseDepth(job.depthMap, dets, job.frameW, job.frameH);
+                FUSE_TIME.recordSince(t0);
             }
-
-            int finalW = frameW;
-            int finalH = frameH;
+            if (job.replayIndex >= 0) logReplayFrame(job, dets);
             List<ObjectDetector.Detection> finalDets = dets;
             runOnUiThread(() -> {
-                overlay.setDetections(finalDets, finalW, finalH);
+                overlay.setDetections(finalDets, job.frameW, job.frameH);
 
                 // ★ THÊM GỌI TTS Ở ĐÂY ★
                 processTTSWarning(finalDets);
             });
-
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            Log.w(TAG, "analyzeFrame interrupted", e);
-        } catch (Throwable t) {
-            Log.e(TAG, "analyzer crash", t);
+            if (job.singleShot) finishSingleShot();
         } finally {
-            image.close();
-            if (singleShotFrame) {
-                singleShotRunning = false;
-                runOnUiThread(() -> {
-                    if (detectOnceButton != null) detectOnceButton.setEnabled(true);
-                });
+            if (job.depthClaimed) releaseDepthClaim();
+            if (job.replayIndex >= 0) replaySource.frameDone();
+        }
+    }
+
+    /**
+     * Attaches the current depth map without waiting for a refresh; each detection records how
+     * stale that map is relative to its frame.
+     */
+    private void attachLatestDepth(FrameJob job) {
+        DepthEstimator est = depthEstimator;
+        if (est == null) return;
+        DepthEstimator.DepthMap depthMap = null;
+        if (job.depthArgb != null) {
+            DEPTH_INLINE.inc();
+            try {
+                depthMap = est.estimate(job.depthArgb, job.frameW, job.frameH, job.timestampMs);
+                publishDepth(est, depthMap);
+            } catch (Exception e) {
+                Log.e(TAG, "Depth estimation failed", e);
             }
+            job.depthArgb = null;
+        } else {
+            depthMap = latestDepth(clockMs());
+            (depthMap != null ? DEPTH_CACHE_HIT : DEPTH_CACHE_MISS).inc();
+        }
+        if (depthMap != null && job.dets != null) {
+            job.dets = est.attachDepth(job.dets, depthMap, job.timestampMs);
         }
+        job.depthMap = depthMap;
+    }
+
+    /**
+     * A newer frame replaced this one in a stage mailbox (or its stage failed): return its
+     * buffers and release what it holds.
+     */
+    private void dropFrameJob(FrameJob job) {
+        if (job.input != null) {
+            detector.recycle(job.input);
+            job.input = null;
+        }
+        job.depthArgb = null;
+        if (job.depthClaimed) releaseDepthClaim();
+        if (job.singleShot) finishSingleShot();
+        if (job.replayIndex >= 0) replaySource.frameDone();
+    }
+
+    private void finishSingleShot() {
+        singleShotRunning = false;
+        runOnUiThread(() -> {
+            if (detectOnceButton != null) detectOnceButton.setEnabled(true);
+        });
+    }
+
+    private static int[] toRotatedArgb(ImageProxy image, int rotation) {
+        return Yuv.toArgb(image, rotation);
     }
 
     @SuppressLint("RestrictedApi")
@@ -1157,50 +1680,10 @@ public class MainActivity extends ComponentActivity {
         bindCameraUseCases();
         updateDepthModeLabel();
     }
-    private void processTTSWarning(List<ObjectDetector.Detection> results) {
-        Log.d("TTS_DEBUG", "====================================");
-        Log.d("TTS_DEBUG", "processTTSWarning called!");
-        Log.d("TTS_DEBUG", "Results: " + (results != null ? results.size() : 0));
-        Log.d("TTS_DEBUG", "TTS: " + (tts != null ? "initialized" : "NULL"));
-
-        if (results == null || results.isEmpty() || tts == null) {
-            Log.d("TTS_DEBUG", "Skipped - results or tts is null/empty");
-            return;
-        }
-
-        List<TTSWarning.Detection> ttsDetections = new java.util.ArrayList<>();
-        List<String> labels = Arrays.asList(LabelHelper.loadLabels(this, "labels.txt"));
-
-        for (ObjectDetector.Detection det : results) {
-            if (Float.isNaN(det.depth) || det.depth <= 0) {
-                Log.w("TTS_DEBUG", "⚠️ Invalid depth for detection: " + det.depth);
-                continue;
-            }
-
-
-            float depthInCm = det.depth;
-            float depthInMeters = depthInCm / 100.0f; // Chia 100 để ra mét
-
-            Log.d("TTS_DEBUG", "Depth: " + depthInCm + "cm = " + depthInMeters + "m");
 
-            // Lấy tên label
-            String label = (det.cls >= 0 && det.cls < labels.size())
-                    ? labels.get(det.cls)
-                    : "object";
-
-            // Tạo detection với depth đã chuyển sang mét
-            TTSWarning.Detection d = new TTSWarning.Detection(label, depthInMeters);
-            ttsDetections.add(d);
-        }
-
-        if (!ttsDetections.isEmpty()) {
-            Log.d("TTS_DEBUG", "Calling TTS with " + ttsDetections.size() + " detections");
-            tts.processDetections(ttsDetections);
-        } else {
-            Log.d("TTS_DEBUG", "No valid detections to speak");
-        }
-
-        Log.d("TTS_DEBUG", "====================================");
+    /** UI thread, every rendered frame: the warning picks its class attributes by index. */
+    private void processTTSWarning(List<ObjectDetector.Detection> results) {
+        if (tts != null) tts.processDetections(results);
     }
 }
 
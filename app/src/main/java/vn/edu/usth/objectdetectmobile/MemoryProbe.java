@@ -0,0 +1,134 @@
+package vn.edu.usth.objectdetectmobile;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Peak-memory accounting around a blocking operation such as ORT session creation.
+ * <p>
+ * {@link #start} takes a baseline and samples Java heap use and process RSS on a daemon thread
+ * until {@link #stop}; the report carries the deltas and the peaks seen in between, plus the
+ * kernel's RSS high-water mark ({@code VmHWM}), which catches spikes shorter than the sampling
+ * interval. Everything is read from {@link Runtime} and {@code /proc/self/status}, so it works the
+ * same on a desktop JVM.
+ */
+public final class MemoryProbe {
+
+    private static final long SAMPLE_INTERVAL_MS = 5;
+
+    /** Memory deltas and peaks for one measured operation, in KiB. */
+    public static final class Report {
+        public final String label;
+        public final long wallMs;
+        public final long javaHeapDeltaKb, javaHeapPeakDeltaKb;
+        public final long rssDeltaKb, rssPeakDeltaKb;
+        /** Highest RSS sampled during this operation; -1 if unavailable. */
+        public final long rssPeakKb;
+        /**
+         * Process RSS high-water mark after the operation; -1 if unavailable. This is the peak
+         * over the whole process lifetime, so it may predate the operation.
+         */
+        public final long rssHighWaterKb;
+
+        Report(String label, long wallMs, long javaHeapDeltaKb, long javaHeapPeakDeltaKb,
+               long rssDeltaKb, long rssPeakDeltaKb, long rssPeakKb, long rssHighWaterKb) {
+            this.label = label;
+            this.wallMs = wallMs;
+            this.javaHeapDeltaKb = javaHeapDeltaKb;
+            this.javaHeapPeakDeltaKb = javaHeapPeakDeltaKb;
+            this.rssDeltaKb = rssDeltaKb;
+            this.rssPeakDeltaKb = rssPeakDeltaKb;
+            this.rssPeakKb = rssPeakKb;
+            this.rssHighWaterKb = rssHighWaterKb;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%s: %d ms, heap %+d KiB (peak %+d), rss %+d KiB (peak %+d, hwm %d)",
+                    label, wallMs, javaHeapDeltaKb, javaHeapPeakDeltaKb,
+                    rssDeltaKb, rssPeakDeltaKb, rssHighWaterKb);
+        }
+    }
+
+    private final String label;
+    private final long t0;
+    private final long heap0, rss0;
+    private volatile long heapPeak, rssPeak;
+    private volatile boolean running = true;
+    private final Thread sampler;
+
+    private MemoryProbe(String label) {
+        this.label = label;
+        heap0 = heapUsedKb();
+        rss0 = readStatusKb("VmRSS:");
+        heapPeak = heap0;
+        rssPeak = rss0;
+        sampler = new Thread(this::sampleLoop, "mem-probe");
+        sampler.setDaemon(true);
+        t0 = System.nanoTime();
+        sampler.start();
+    }
+
+    public static MemoryProbe start(String label) {
+        return new MemoryProbe(label);
+    }
+
+    /** Stops sampling and returns the report; safe to call once. */
+    public Report stop() {
+        running = false;
+        sampler.interrupt();
+        try {
+            sampler.join(100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sample();
+        long wallMs = (System.nanoTime() - t0) / 1_000_000L;
+        long heap = heapUsedKb(), rss = readStatusKb("VmRSS:");
+        return new Report(label, wallMs, heap - heap0, heapPeak - heap0,
+                rss0 < 0 ? -1 : rss - rss0, rss0 < 0 ? -1 : rssPeak - rss0,
+                rss0 < 0 ? -1 : rssPeak, readStatusKb("VmHWM:"));
+    }
+
+    private void sampleLoop() {
+        while (running) {
+            sample();
+            try {
+                Thread.sleep(SAMPLE_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void sample() {
+        long heap = heapUsedKb();
+        if (heap > heapPeak) heapPeak = heap;
+        long rss = readStatusKb("VmRSS:");
+        if (rss > rssPeak) rssPeak = rss;
+    }
+
+    private static long heapUsedKb() {
+        Runtime rt = Runtime.getRuntime();
+        return (rt.totalMemory() - rt.freeMemory()) / 1024;
+    }
+
+    /** Value in kB of a {@code /proc/self/status} field, or -1 if it cannot be read. */
+    static long readStatusKb(String field) {
+        try (BufferedReader r = new BufferedReader(new FileReader("/proc/self/status"))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (!line.startsWith(field)) continue;
+                String v = line.substring(field.length()).trim();
+                int sp = v.indexOf(' ');
+                return Long.parseLong(sp > 0 ? v.substring(0, sp) : v);
+            }
+        } catch (IOException | NumberFormatException ignored) {
+            // Not Linux or restricted procfs.
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,361 @@
+package vn.edu.usth.objectdetectmobile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide pipeline metrics: stage timers, value histograms, counters and gauges.
+ * <p>
+ * Instruments are created once (typically into {@code static final} fields) and recording is
+ * lock-free: a histogram is a fixed array of atomic bucket counts on a log-linear scale
+ * (HDR-style, {@value Histogram#SUB_BUCKETS} sub-buckets per power of two, so quantiles are
+ * within about 3%), counters are {@link LongAdder}s and gauges a single atomic. Timers take
+ * {@link System#nanoTime()} readings, which are monotonic. Readers take snapshots, so a HUD or
+ * a dump never blocks the frame threads. Plain Java; {@link MetricsReporter} does the Android
+ * side.
+ */
+public final class Metrics {
+
+    // Sorted by name so dumps and the HUD list instruments in a stable order.
+    private static final ConcurrentMap<String, Histogram> HISTOGRAMS =
+            new ConcurrentSkipListMap<>();
+    private static final ConcurrentMap<String, Counter> COUNTERS = new ConcurrentSkipListMap<>();
+    private static final ConcurrentMap<String, Gauge> GAUGES = new ConcurrentSkipListMap<>();
+    private static volatile boolean enabled = true;
+
+    private Metrics() {}
+
+    /** Monotonic timestamp for {@link Histogram#recordSince}. */
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    /** Turns all recording into a no-op (instruments and their values are kept). */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Duration histogram recorded in ns, reported in ms. */
+    public static Histogram timer(String name) {
+        return histogram(name, "ms", 1e-6);
+    }
+
+    /** Histogram of plain non-negative values (counts, sizes). */
+    public static Histogram histogram(String name) {
+        return histogram(name, "", 1);
+    }
+
+    private static Histogram histogram(String name, String unit, double scale) {
+        Histogram h = HISTOGRAMS.get(name);
+        if (h == null) {
+            Histogram created = new Histogram(name, unit, scale);
+            h = HISTOGRAMS.putIfAbsent(name, created);
+            if (h == null) h = created;
+        }
+        return h;
+    }
+
+    public static Counter counter(String name) {
+        Counter c = COUNTERS.get(name);
+        if (c == null) {
+            Counter created = new Counter(name);
+            c = COUNTERS.putIfAbsent(name, created);
+            if (c == null) c = created;
+        }
+        return c;
+    }
+
+    public static Gauge gauge(String name) {
+        Gauge g = GAUGES.get(name);
+        if (g == null) {
+            Gauge created = new Gauge(name);
+            g = GAUGES.putIfAbsent(name, created);
+            if (g == null) g = created;
+        }
+        return g;
+    }
+
+    /** Zeroes every instrument, e.g. when the pipeline is rebuilt with new settings. */
+    public static void reset() {
+        for (Histogram h : HISTOGRAMS.values()) h.reset();
+        for (Counter c : COUNTERS.values()) c.reset();
+    }
+
+    /** Snapshot of every histogram, by name. */
+    public static List<Snapshot> snapshots() {
+        List<Snapshot> out = new ArrayList<>(HISTOGRAMS.size());
+        for (Histogram h : HISTOGRAMS.values()) out.add(h.snapshot());
+        return out;
+    }
+
+    public static List<Counter> counters() {
+        return new ArrayList<>(COUNTERS.values());
+    }
+
+    public static List<Gauge> gauges() {
+        return new ArrayList<>(GAUGES.values());
+    }
+
+    /**
+     * Appends {@code "counters":{..},"gauges":{..},"histograms":{..}} (no enclosing braces) so
+     * callers can add their own fields around it. Histograms carry their non-empty buckets as
+     * {@code [lowerBound, count]} pairs in recorded units (ns for timers), which lets dumps from
+     * many sessions or devices be merged exactly.
+     */
+    public static void appendJson(StringBuilder sb) {
+        sb.append("\"counters\":{");
+        String sep = "";
+        for (Counter c : COUNTERS.values()) {
+            sb.append(sep).append(quote(c.name)).append(':').append(c.get());
+            sep = ",";
+        }
+        sb.append("},\"gauges\":{");
+        sep = "";
+        for (Gauge g : GAUGES.values()) {
+            sb.append(sep).append(quote(g.name)).append(':').append(g.get());
+            sep = ",";
+        }
+        sb.append("},\"histograms\":{");
+        sep = "";
+        for (Histogram h : HISTOGRAMS.values()) {
+            sb.append(sep);
+            h.snapshot().appendJson(sb);
+            sep = ",";
+        }
+        sb.append('}');
+    }
+
+    static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c < 0x20) sb.append(String.format(Locale.US, "\\u%04x", (int) c));
+            else sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+
+    private static String number(double v) {
+        return String.format(Locale.US, "%.3f", v);
+    }
+
+    /** Monotonic count of events. */
+    public static final class Counter {
+        public final String name;
+        private final LongAdder value = new LongAdder();
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        public void inc() {
+            if (enabled) value.increment();
+        }
+
+        public void add(long n) {
+            if (enabled) value.add(n);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+
+        void reset() {
+            value.reset();
+        }
+    }
+
+    /** Last-written value, e.g. the active input size. */
+    public static final class Gauge {
+        public final String name;
+        private final AtomicLong value = new AtomicLong();
+
+        Gauge(String name) {
+            this.name = name;
+        }
+
+        public void set(long v) {
+            value.set(v);
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    /**
+     * Log-linear histogram of non-negative longs. Values below {@value #SUB_BUCKETS} get a bucket
+     * each; above that every power of two is split into {@value #SUB_BUCKETS} equal buckets.
+     * Values beyond 2^{@value #MAX_EXPONENT} (about 18 minutes in ns) land in the last bucket.
+     */
+    public static final class Histogram {
+        static final int SUB_BITS = 5;
+        static final int SUB_BUCKETS = 1 << SUB_BITS;
+        static final int MAX_EXPONENT = 40;
+        static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BITS + 1) * SUB_BUCKETS;
+
+        public final String name;
+        /** Unit values are reported in after multiplying by {@link #scale}. */
+        public final String unit;
+        final double scale;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram(String name, String unit, double scale) {
+            this.name = name;
+            this.unit = unit;
+            this.scale = scale;
+        }
+
+        public void record(long value) {
+            if (!enabled) return;
+            long v = Math.max(0L, value);
+            counts.incrementAndGet(index(v));
+            sum.addAndGet(v);
+            long m = max.get();
+            while (v > m && !max.compareAndSet(m, v)) m = max.get();
+        }
+
+        /** Records {@code now() - startNs}; returns the current {@link #now()} for chaining. */
+        public long recordSince(long startNs) {
+            long t = System.nanoTime();
+            record(t - startNs);
+            return t;
+        }
+
+        static int index(long v) {
+            if (v < SUB_BUCKETS) return (int) v;
+            int e = 63 - Long.numberOfLeadingZeros(v);
+            if (e > MAX_EXPONENT) return BUCKETS - 1;
+            int sub = (int) (v >>> (e - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return SUB_BUCKETS + (e - SUB_BITS) * SUB_BUCKETS + sub;
+        }
+
+        /** Smallest value that maps to bucket {@code i}. */
+        static long lowerBound(int i) {
+            if (i < SUB_BUCKETS) return i;
+            int e = (i - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+            int sub = (i - SUB_BUCKETS) % SUB_BUCKETS;
+            return (long) (SUB_BUCKETS + sub) << (e - SUB_BITS);
+        }
+
+        /** Representative value of bucket {@code i} (its midpoint). */
+        static long midpoint(int i) {
+            long lo = lowerBound(i);
+            long hi = i + 1 < BUCKETS ? lowerBound(i + 1) : lo + 1;
+            return lo + (hi - lo - 1) / 2;
+        }
+
+        /**
+         * Copy of the current state. Bucket counts are read one by one while writers keep going,
+         * so the copy is not atomic, but every bucket is a value it really had.
+         */
+        public Snapshot snapshot() {
+            long[] c = new long[BUCKETS];
+            long n = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                c[i] = counts.get(i);
+                n += c[i];
+            }
+            return new Snapshot(name, unit, scale, c, n, sum.get(), max.get());
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+            sum.set(0);
+            max.set(0);
+        }
+    }
+
+    /** Immutable view of a histogram; {@link #since} turns two snapshots into a window. */
+    public static final class Snapshot {
+        public final String name, unit;
+        public final long count;
+        private final double scale;
+        private final long[] counts;
+        private final long sum, max;
+
+        Snapshot(String name, String unit, double scale, long[] counts, long count, long sum,
+                 long max) {
+            this.name = name;
+            this.unit = unit;
+            this.scale = scale;
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * What was recorded between {@code earlier} and this snapshot. The window's max is the
+         * top of its highest non-empty bucket rather than an exact value.
+         */
+        public Snapshot since(Snapshot earlier) {
+            if (earlier == null) return this;
+            long[] c = new long[counts.length];
+            long n = 0;
+            int top = -1;
+            for (int i = 0; i < c.length; i++) {
+                c[i] = Math.max(0, counts[i] - earlier.counts[i]);
+                n += c[i];
+                if (c[i] > 0) top = i;
+            }
+            long m = top < 0 ? 0 : Math.min(max, top + 1 < c.length
+                    ? Histogram.lowerBound(top + 1) - 1 : max);
+            return new Snapshot(name, unit, scale, c, n, Math.max(0, sum - earlier.sum), m);
+        }
+
+        /** {@code q}-quantile in reported units, or NaN when empty. */
+        public double quantile(double q) {
+            if (count == 0) return Double.NaN;
+            long rank = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(Histogram.midpoint(i), max) * scale;
+            }
+            return max * scale;
+        }
+
+        public double mean() {
+            return count == 0 ? Double.NaN : sum * scale / count;
+        }
+
+        public double max() {
+            return max * scale;
+        }
+
+        void appendJson(StringBuilder sb) {
+            sb.append(quote(name)).append(":{\"unit\":").append(quote(unit))
+                    .append(",\"count\":").append(count);
+            if (count > 0) {
+                sb.append(",\"mean\":").append(number(mean()))
+                        .append(",\"p50\":").append(number(quantile(0.5)))
+                        .append(",\"p90\":").append(number(quantile(0.9)))
+                        .append(",\"p99\":").append(number(quantile(0.99)))
+                        .append(",\"max\":").append(number(max()));
+            }
+            sb.append(",\"buckets\":[");
+            String sep = "";
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) continue;
+                sb.append(sep).append('[').append(Histogram.lowerBound(i)).append(',')
+                        .append(counts[i]).append(']');
+                sep = ",";
+            }
+            sb.append("]}");
+        }
+    }
+}
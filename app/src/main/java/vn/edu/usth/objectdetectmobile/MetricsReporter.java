@@ -0,0 +1,191 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Android side of {@link Metrics}: a periodic JSON dump to app storage and an optional on-screen
+ * HUD.
+ * <p>
+ * Each app session writes one file, {@code filesDir/metrics/metrics-<start time>.json}, rewritten
+ * atomically every {@value #DUMP_INTERVAL_MS} ms and once more on {@link #stop}. It holds device
+ * details, the pipeline configuration registered with {@link #putConfig} and the cumulative
+ * instruments, so files pulled from different devices can be compared per device class. Only the
+ * newest {@value #MAX_FILES} files are kept. The HUD shows the last
+ * {@value #HUD_INTERVAL_MS} ms of every timer plus counters and gauges.
+ */
+public final class MetricsReporter {
+    private static final String TAG = "MetricsReporter";
+    private static final long DUMP_INTERVAL_MS = 30_000;
+    private static final long HUD_INTERVAL_MS = 1_000;
+    private static final int MAX_FILES = 10;
+
+    private final File dir;
+    private final File file;
+    private final long startWallMs = System.currentTimeMillis();
+    private final Map<String, String> config = new TreeMap<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private ScheduledExecutorService scheduler;
+
+    private TextView hud;
+    private final Map<String, Metrics.Snapshot> hudPrevious = new HashMap<>();
+    private final Runnable hudTick = new Runnable() {
+        @Override
+        public void run() {
+            TextView view = hud;
+            if (view == null || view.getVisibility() != View.VISIBLE) return;
+            view.setText(hudText());
+            mainHandler.postDelayed(this, HUD_INTERVAL_MS);
+        }
+    };
+
+    public MetricsReporter(Context ctx) {
+        dir = new File(ctx.getFilesDir(), "metrics");
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date(startWallMs));
+        file = new File(dir, "metrics-" + stamp + ".json");
+    }
+
+    /** Records a setting that shapes the numbers (intervals, sizes, profiles) in every dump. */
+    public void putConfig(String key, Object value) {
+        synchronized (config) {
+            config.put(key, String.valueOf(value));
+        }
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::dumpQuietly, DUMP_INTERVAL_MS, DUMP_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /** Stops the periodic dump after writing a final one. */
+    public synchronized void stop() {
+        if (scheduler == null) return;
+        scheduler.shutdownNow();
+        scheduler = null;
+        setHud(null, false);
+        dumpQuietly();
+    }
+
+    /** Shows or hides {@code view} as the HUD; it is refreshed on the main thread while shown. */
+    public void setHud(TextView view, boolean visible) {
+        mainHandler.removeCallbacks(hudTick);
+        if (hud != null && hud != view) hud.setVisibility(View.GONE);
+        hud = view;
+        if (view == null) return;
+        view.setVisibility(visible ? View.VISIBLE : View.GONE);
+        if (visible) {
+            hudPrevious.clear();
+            for (Metrics.Snapshot s : Metrics.snapshots()) hudPrevious.put(s.name, s);
+            view.setText("");
+            mainHandler.postDelayed(hudTick, HUD_INTERVAL_MS);
+        }
+    }
+
+    /** Writes the current state now; returns the file. */
+    public File dump() throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        byte[] json = toJson().getBytes(StandardCharsets.UTF_8);
+        File tmp = new File(dir, file.getName() + ".tmp");
+        try (OutputStream os = new FileOutputStream(tmp)) {
+            os.write(json);
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Cannot rename " + tmp + " to " + file);
+        }
+        prune();
+        return file;
+    }
+
+    private void dumpQuietly() {
+        try {
+            dump();
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Metrics dump failed", e);
+        }
+    }
+
+    private void prune() {
+        File[] files = dir.listFiles((d, name) -> name.startsWith("metrics-") && name.endsWith(".json"));
+        if (files == null || files.length <= MAX_FILES) return;
+        // Names embed the start time, so lexical order is chronological.
+        Arrays.sort(files);
+        for (int i = 0; i < files.length - MAX_FILES; i++) files[i].delete();
+    }
+
+    String toJson() {
+        StringBuilder sb = new StringBuilder(16 * 1024);
+        sb.append("{\"schema\":1")
+                .append(",\"started_ms\":").append(startWallMs)
+                .append(",\"written_ms\":").append(System.currentTimeMillis())
+                .append(",\"uptime_ms\":").append(SystemClock.elapsedRealtime())
+                .append(",\"device\":{")
+                .append("\"manufacturer\":").append(Metrics.quote(String.valueOf(Build.MANUFACTURER)))
+                .append(",\"model\":").append(Metrics.quote(String.valueOf(Build.MODEL)))
+                .append(",\"hardware\":").append(Metrics.quote(String.valueOf(Build.HARDWARE)))
+                .append(",\"sdk\":").append(Build.VERSION.SDK_INT)
+                .append(",\"cores\":").append(Runtime.getRuntime().availableProcessors())
+                .append(",\"max_heap_mb\":").append(Runtime.getRuntime().maxMemory() >> 20)
+                .append("},\"config\":{");
+        synchronized (config) {
+            String sep = "";
+            for (Map.Entry<String, String> e : config.entrySet()) {
+                sb.append(sep).append(Metrics.quote(e.getKey())).append(':')
+                        .append(Metrics.quote(e.getValue()));
+                sep = ",";
+            }
+        }
+        sb.append("},");
+        Metrics.appendJson(sb);
+        return sb.append('}').toString();
+    }
+
+    private String hudText() {
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append(String.format(Locale.US, "%-18s %5s %6s %6s", "last 1s", "n", "p50", "p99"));
+        List<Metrics.Snapshot> now = Metrics.snapshots();
+        for (Metrics.Snapshot s : now) {
+            Metrics.Snapshot window = s.since(hudPrevious.get(s.name));
+            hudPrevious.put(s.name, s);
+            if (window.count == 0) continue;
+            sb.append('\n').append(String.format(Locale.US, "%-18s %5d %6.1f %6.1f %s",
+                    s.name, window.count, window.quantile(0.5), window.quantile(0.99), s.unit));
+        }
+        for (Metrics.Counter c : Metrics.counters()) {
+            sb.append('\n').append(String.format(Locale.US, "%-18s %5d", c.name, c.get()));
+        }
+        for (Metrics.Gauge g : Metrics.gauges()) {
+            sb.append('\n').append(String.format(Locale.US, "%-18s %5d", g.name, g.get()));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,30 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.content.Context;
+
+import java.io.IOException;
+
+/**
+ * Everything {@link ObjectDetector} and {@link DepthEstimator} need from their surroundings:
+ * where model files come from, where optimized graphs are cached and where tuned
+ * {@link SessionProfile}s are kept. On a device this is {@link AndroidModelHost}; a host-side
+ * harness can use plain directories instead, so the inference code runs unchanged on a desktop JVM.
+ */
+public interface ModelHost {
+
+    /** Whether model {@code name} is present. Cheap: never extracts or downloads anything. */
+    boolean hasModel(String name);
+
+    /** Local file path of model {@code name}, installing it first if needed. Blocking. */
+    String modelPath(String name) throws IOException;
+
+    OptimizedModelCache optimizedModelCache();
+
+    SessionProfile loadProfile(String model, SessionProfile fallback);
+
+    void saveProfile(String model, SessionProfile profile);
+
+    static ModelHost forContext(Context ctx) {
+        return new AndroidModelHost(ctx);
+    }
+}
@@ -0,0 +1,253 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Installs bundled model assets into {@code filesDir/models} and hands them to ORT without
+ * copying them through the Java heap.
+ * <p>
+ * An asset is copied with channel transfers into a temp file, synced, hashed and only then
+ * renamed over the final name, so a process killed mid-copy never leaves a file that looks
+ * installed. Expected hashes come from the {@value #ASSET_MANIFEST} asset ({@code sha256sum}
+ * format) that the build generates for every bundled {@code .onnx}, so an app update that ships a
+ * different model replaces the installed copy. The hash, size and mtime of every installed file
+ * are recorded in a local manifest, and a file whose size or mtime no longer matches its record
+ * is re-hashed and reinstalled if it changed.
+ */
+public final class ModelStore {
+
+    /** Asset listing {@code <sha256>  <file>} per line for the bundled models (build-generated). */
+    public static final String ASSET_MANIFEST = "models.sha256";
+    private static final String LOCAL_MANIFEST = "manifest.sha256";
+    private static final String TMP_SUFFIX = ".part";
+
+    private static ModelStore instance;
+
+    private final AssetManager assets;
+    private final File dir;
+    private Map<String, String> bundled;
+    private Map<String, Record> installed;
+
+    private static final class Record {
+        final String sha256;
+        final long size, mtime;
+
+        Record(String sha256, long size, long mtime) {
+            this.sha256 = sha256;
+            this.size = size;
+            this.mtime = mtime;
+        }
+    }
+
+    ModelStore(AssetManager assets, File dir) {
+        this.assets = assets;
+        this.dir = dir;
+    }
+
+    public static synchronized ModelStore get(Context ctx) {
+        if (instance == null) {
+            Context app = ctx.getApplicationContext();
+            instance = new ModelStore(app.getAssets(), new File(app.getFilesDir(), "models"));
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the installed copy of asset {@code name}, extracting or repairing it first if needed.
+     * Blocking; the first call per model copies and hashes the whole file.
+     */
+    public synchronized File install(String name) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        loadManifests();
+        File out = new File(dir, name);
+        String expected = bundled.get(name);
+        Record rec = installed.get(name);
+
+        if (out.isFile() && rec != null) {
+            if (out.length() == rec.size && out.lastModified() == rec.mtime) {
+                if (expected == null || expected.equalsIgnoreCase(rec.sha256)) return out;
+            } else if (out.length() == rec.size && rec.sha256.equalsIgnoreCase(sha256(out))) {
+                // Only the mtime moved (e.g. restored from backup): refresh the record.
+                record(name, out, rec.sha256);
+                if (expected == null || expected.equalsIgnoreCase(rec.sha256)) return out;
+            }
+        }
+        return extract(name, out, expected);
+    }
+
+    /** Read-only mapping of the installed model; direct, so ORT can read it without a heap copy. */
+    public MappedByteBuffer map(String name) throws IOException {
+        File f = install(name);
+        try (FileInputStream in = new FileInputStream(f); FileChannel ch = in.getChannel()) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+    }
+
+    /** Deletes the installed copy so the next {@link #install} extracts it again. */
+    public synchronized void invalidate(String name) throws IOException {
+        loadManifests();
+        new File(dir, name).delete();
+        installed.remove(name);
+        writeLocalManifest();
+    }
+
+    private File extract(String name, File out, String expected) throws IOException {
+        File tmp = new File(dir, name + TMP_SUFFIX);
+        try (FileOutputStream fos = new FileOutputStream(tmp); FileChannel dst = fos.getChannel()) {
+            copyAsset(name, dst);
+            dst.force(true);
+        }
+        String actual = sha256(tmp);
+        if (expected != null && !expected.equalsIgnoreCase(actual)) {
+            tmp.delete();
+            throw new IOException("Checksum mismatch for " + name + ": expected " + expected
+                    + ", got " + actual);
+        }
+        // rename(2) within one directory is atomic: readers see the old file or the complete new one.
+        if (!tmp.renameTo(out)) {
+            tmp.delete();
+            throw new IOException("Cannot rename " + tmp + " to " + out);
+        }
+        record(name, out, actual);
+        return out;
+    }
+
+    private void copyAsset(String name, FileChannel dst) throws IOException {
+        AssetFileDescriptor afd = null;
+        try {
+            afd = assets.openFd(name);
+        } catch (FileNotFoundException compressed) {
+            // Compressed in the APK (no noCompress entry): no fd, stream it instead.
+        }
+        if (afd != null) {
+            try (FileInputStream in = afd.createInputStream();
+                 FileChannel src = in.getChannel()) {
+                long start = afd.getStartOffset(), len = afd.getLength(), done = 0;
+                while (done < len) {
+                    long n = src.transferTo(start + done, len - done, dst);
+                    if (n <= 0) throw new IOException("Short copy of " + name);
+                    done += n;
+                }
+            } finally {
+                afd.close();
+            }
+            return;
+        }
+        try (InputStream is = assets.open(name); ReadableByteChannel src = Channels.newChannel(is)) {
+            long pos = 0, n;
+            while ((n = dst.transferFrom(src, pos, 1 << 20)) > 0) pos += n;
+        }
+    }
+
+    private void record(String name, File f, String sha) throws IOException {
+        installed.put(name, new Record(sha, f.length(), f.lastModified()));
+        writeLocalManifest();
+    }
+
+    private void loadManifests() throws IOException {
+        if (bundled == null) {
+            bundled = new HashMap<>();
+            try (InputStream is = assets.open(ASSET_MANIFEST)) {
+                for (String[] f : readLines(is)) {
+                    // sha256sum marks binary mode with a leading '*'.
+                    if (f.length >= 2) bundled.put(f[1].replaceFirst("^\\*", ""), f[0]);
+                }
+            } catch (FileNotFoundException none) {
+                // No bundled manifest: hashes recorded at install time still guard the copy.
+            }
+        }
+        if (installed == null) {
+            installed = new HashMap<>();
+            File local = new File(dir, LOCAL_MANIFEST);
+            if (local.isFile()) {
+                try (InputStream is = new FileInputStream(local)) {
+                    for (String[] f : readLines(is)) {
+                        if (f.length < 4) continue;
+                        try {
+                            installed.put(f[3], new Record(f[0], Long.parseLong(f[1]), Long.parseLong(f[2])));
+                        } catch (NumberFormatException ignored) {
+                            // Corrupt line: that model is simply re-verified.
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeLocalManifest() throws IOException {
+        File tmp = new File(dir, LOCAL_MANIFEST + TMP_SUFFIX);
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             Writer w = new OutputStreamWriter(fos, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Record> e : installed.entrySet()) {
+                Record r = e.getValue();
+                w.write(String.format(Locale.US, "%s %d %d %s%n", r.sha256, r.size, r.mtime, e.getKey()));
+            }
+            w.flush();
+            fos.getFD().sync();
+        }
+        if (!tmp.renameTo(new File(dir, LOCAL_MANIFEST))) throw new IOException("Cannot write manifest");
+    }
+
+    private static List<String[]> readLines(InputStream is) throws IOException {
+        List<String[]> out = new ArrayList<>();
+        BufferedReader r = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+        String line;
+        while ((line = r.readLine()) != null) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) out.add(line.split("\\s+"));
+        }
+        return out;
+    }
+
+    /** SHA-256 of {@code f}, read through a mapping rather than heap buffers. */
+    static String sha256(File f) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (FileInputStream in = new FileInputStream(f); FileChannel ch = in.getChannel()) {
+            long size = ch.size(), pos = 0;
+            // Map in windows so 32-bit address spaces are not exhausted by large models.
+            final long window = 64L << 20;
+            while (pos < size) {
+                long len = Math.min(window, size - pos);
+                md.update(ch.map(FileChannel.MapMode.READ_ONLY, pos, len));
+                pos += len;
+            }
+        }
+        return hex(md.digest());
+    }
+
+    static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) sb.append(String.format(Locale.US, "%02x", b));
+        return sb.toString();
+    }
+}
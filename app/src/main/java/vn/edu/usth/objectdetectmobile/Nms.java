@@ -0,0 +1,186 @@
+package vn.edu.usth.objectdetectmobile;
+
+import java.util.Arrays;
+
+/**
+ * Non-maximum suppression over the primitive arrays of {@link YoloDecoder.Candidates}.
+ * <p>
+ * Candidates are bucketed by class with a counting pass and each bucket is sorted once by
+ * descending score. Box areas are cached and suppression is tracked in a bitmap, so nothing is
+ * shifted or re-allocated while suppressing. Boxes of different classes are never compared
+ * unless {@link Mode#CLASS_AGNOSTIC} is used. Surviving indices are exposed through
+ * {@link #keep()} in descending score order. Not thread-safe: keep one instance per detector.
+ * <p>
+ * Equal scores are ordered by candidate index. {@link YoloDecoder} fills candidates in its top-K
+ * heap order rather than anchor order, so which of two tied overlapping boxes survives, and the
+ * order tied survivors are reported in, follows the heap layout.
+ */
+public final class Nms {
+
+    public enum Mode {
+        /** Greedy NMS within each class (the classic YOLO behaviour). */
+        CLASS_AWARE,
+        /** Greedy NMS across all classes in one batch; overlapping boxes of any class compete. */
+        CLASS_AGNOSTIC,
+        /** Gaussian soft-NMS within each class: overlapping scores decay instead of being dropped. */
+        SOFT
+    }
+
+    private static final float SOFT_SIGMA = 0.5f;
+
+    private int[] keep = new int[0];
+    private float[] area = new float[0];
+    private long[] sortKeys = new long[0];
+    private long[] suppressed = new long[0];
+    private int[] classCount = new int[0];
+    private int[] order = new int[0];
+
+    /** Indices into the candidate arrays that survived the last {@link #run}. */
+    int[] keep() {
+        return keep;
+    }
+
+    /**
+     * Runs suppression and returns how many entries of {@link #keep()} are valid.
+     * For {@link Mode#SOFT} the decayed scores are written back into {@code c.score} and
+     * {@code iouThresh} is unused; survivors must still score at least {@code scoreThresh}.
+     */
+    int run(YoloDecoder.Candidates c, Mode mode, float iouThresh, float scoreThresh) {
+        int n = c.count;
+        ensureCapacity(n);
+        if (n == 0) return 0;
+        for (int i = 0; i < n; i++) {
+            area[i] = Math.max(0f, c.x2[i] - c.x1[i]) * Math.max(0f, c.y2[i] - c.y1[i]);
+        }
+        int buckets;
+        if (mode == Mode.CLASS_AGNOSTIC) {
+            for (int i = 0; i < n; i++) order[i] = i;
+            classCount[0] = n;
+            buckets = 1;
+        } else {
+            buckets = bucketByClass(c);
+        }
+
+        int kept = 0;
+        int start = 0;
+        for (int b = 0; b < buckets; b++) {
+            int end = start + classCount[b];
+            if (end - start > 0) {
+                sortByScoreDesc(c.score, start, end);
+                kept = mode == Mode.SOFT
+                        ? softBucket(c, start, end, scoreThresh, kept)
+                        : greedyBucket(c, start, end, iouThresh, kept);
+            }
+            start = end;
+        }
+        sortKeepByScore(c.score, kept);
+        return kept;
+    }
+
+    /**
+     * Counting sort of candidate indices into {@link #order}, grouped by class. On return
+     * classCount[b] holds the size of bucket b; buckets are laid out in class order.
+     */
+    private int bucketByClass(YoloDecoder.Candidates c) {
+        int n = c.count;
+        int maxCls = 0;
+        for (int i = 0; i < n; i++) maxCls = Math.max(maxCls, c.cls[i]);
+        int buckets = maxCls + 1;
+        if (classCount.length < buckets + 1) classCount = new int[buckets + 1];
+        int[] cc = classCount;
+        Arrays.fill(cc, 0, buckets + 1, 0);
+        for (int i = 0; i < n; i++) cc[c.cls[i] + 1]++;
+        for (int b = 0; b < buckets; b++) cc[b + 1] += cc[b];
+        // cc[b] is the start of bucket b; after placing, it becomes the end of bucket b.
+        for (int i = 0; i < n; i++) order[cc[c.cls[i]]++] = i;
+        for (int b = buckets - 1; b > 0; b--) cc[b] -= cc[b - 1];
+        return buckets;
+    }
+
+    /** Sorts order[start,end) by descending score using packed (score, index) keys. */
+    private void sortByScoreDesc(float[] score, int start, int end) {
+        for (int p = start; p < end; p++) {
+            sortKeys[p] = packDesc(score[order[p]], order[p]);
+        }
+        Arrays.sort(sortKeys, start, end);
+        for (int p = start; p < end; p++) order[p] = (int) sortKeys[p];
+    }
+
+    private int greedyBucket(YoloDecoder.Candidates c, int start, int end, float iouThresh, int kept) {
+        for (int p = start; p < end; p++) {
+            int a = order[p];
+            if (isSuppressed(a)) continue;
+            keep[kept++] = a;
+            for (int q = p + 1; q < end; q++) {
+                int b = order[q];
+                if (!isSuppressed(b) && iou(c, a, b) > iouThresh) markSuppressed(b);
+            }
+        }
+        return kept;
+    }
+
+    private int softBucket(YoloDecoder.Candidates c, int start, int end, float scoreThresh, int kept) {
+        float[] score = c.score;
+        for (int p = start; p < end; p++) {
+            // Pick the best remaining box; scores change as neighbours decay.
+            int bestP = -1;
+            float best = -1f;
+            for (int q = p; q < end; q++) {
+                float s = score[order[q]];
+                if (s > best) { best = s; bestP = q; }
+            }
+            int tmp = order[p]; order[p] = order[bestP]; order[bestP] = tmp;
+            int a = order[p];
+            if (best < scoreThresh) break;
+            keep[kept++] = a;
+            for (int q = p + 1; q < end; q++) {
+                int b = order[q];
+                float o = iou(c, a, b);
+                score[b] *= (float) Math.exp(-(o * o) / SOFT_SIGMA);
+            }
+        }
+        return kept;
+    }
+
+    private void sortKeepByScore(float[] score, int kept) {
+        for (int k = 0; k < kept; k++) sortKeys[k] = packDesc(score[keep[k]], keep[k]);
+        Arrays.sort(sortKeys, 0, kept);
+        for (int k = 0; k < kept; k++) keep[k] = (int) sortKeys[k];
+    }
+
+    /** Ascending order of the packed key is descending score; the low word carries the index. */
+    private static long packDesc(float score, int index) {
+        int bits = Float.floatToIntBits(Math.max(0f, score));
+        return ((long) (Integer.MAX_VALUE - bits) << 32) | (index & 0xFFFFFFFFL);
+    }
+
+    private float iou(YoloDecoder.Candidates c, int a, int b) {
+        float iw = Math.min(c.x2[a], c.x2[b]) - Math.max(c.x1[a], c.x1[b]);
+        if (iw <= 0f) return 0f;
+        float ih = Math.min(c.y2[a], c.y2[b]) - Math.max(c.y1[a], c.y1[b]);
+        if (ih <= 0f) return 0f;
+        float inter = iw * ih;
+        return inter / (area[a] + area[b] - inter + 1e-6f);
+    }
+
+    private boolean isSuppressed(int i) {
+        return (suppressed[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private void markSuppressed(int i) {
+        suppressed[i >>> 6] |= 1L << i;
+    }
+
+    private void ensureCapacity(int n) {
+        if (area.length < n) {
+            area = new float[n];
+            keep = new int[n];
+            order = new int[n];
+            sortKeys = new long[n];
+        }
+        int words = (n + 63) >>> 6;
+        if (suppressed.length < words) suppressed = new long[words];
+        Arrays.fill(suppressed, 0, words, 0L);
+        if (classCount.length < 1) classCount = new int[1];
+    }
+}
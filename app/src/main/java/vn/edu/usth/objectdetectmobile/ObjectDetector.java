@@ -1,202 +1,535 @@
 package vn.edu.usth.objectdetectmobile;
 
 import android.content.Context;
+import android.util.Log;
 import androidx.annotation.NonNull;
+import androidx.camera.core.ImageProxy;
 import ai.onnxruntime.*;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.util.*;
-import static java.lang.Math.*;
 
 public class ObjectDetector implements AutoCloseable {
+    private static final String TAG = "ObjectDetector";
+    public static final String MODEL_NAME = "yolov8m_compatible.onnx";
+    private static final Metrics.Histogram PREPROCESS_TIME = Metrics.timer("detect.preprocess");
+    private static final Metrics.Histogram INFER_TIME = Metrics.timer("detect.infer");
+    private static final Metrics.Histogram DECODE_TIME = Metrics.timer("detect.decode");
+    private static final Metrics.Histogram NMS_TIME = Metrics.timer("detect.nms");
+    private static final Metrics.Histogram NMS_CANDIDATES = Metrics.histogram("nms.candidates");
+    private static final Metrics.Histogram NMS_KEPT = Metrics.histogram("nms.kept");
+    private static final Metrics.Gauge INPUT_W = Metrics.gauge("detect.input_w");
+    private static final Metrics.Gauge INPUT_H = Metrics.gauge("detect.input_h");
     public static class Detection {
+        public static final int NO_TRACK = -1;
+        public static final long NO_DEPTH_AGE = -1L;
         public final float x1,y1,x2,y2,score,depth; public final int cls;
+        /** Stable id assigned by {@link ObjectTracker}, or {@link #NO_TRACK}. */
+        public final int trackId;
+        /**
+         * How much older the depth map was than this frame (ms), or {@link #NO_DEPTH_AGE}. Spoken
+         * warnings skip boxes whose depth is too old to trust.
+         */
+        public final long depthAgeMs;
         public Detection(float x1,float y1,float x2,float y2,float score,int cls){
-            this(x1,y1,x2,y2,score,cls,Float.NaN);
+            this(x1,y1,x2,y2,score,cls,Float.NaN,NO_TRACK,NO_DEPTH_AGE);
         }
-        private Detection(float x1,float y1,float x2,float y2,float score,int cls,float depth){
+        Detection(float x1,float y1,float x2,float y2,float score,int cls,float depth,int trackId,long depthAgeMs){
             this.x1=x1; this.y1=y1; this.x2=x2; this.y2=y2; this.score=score; this.cls=cls; this.depth=depth;
+            this.trackId=trackId; this.depthAgeMs=depthAgeMs;
         }
         public Detection withDepth(float depthValue){
-            return new Detection(x1,y1,x2,y2,score,cls,depthValue);
+            return new Detection(x1,y1,x2,y2,score,cls,depthValue,trackId,depthAgeMs);
+        }
+        public Detection withDepth(float depthValue, long ageMs){
+            return new Detection(x1,y1,x2,y2,score,cls,depthValue,trackId,ageMs);
         }
     }
 
     private final OrtEnvironment env;
     private final OrtSession session;
-    private final int inputW = 640, inputH = 640;
+    private final SessionProfile sessionProfile;
+    // Mapped model backing the session, if any; kept reachable until close().
+    private final ByteBuffer sessionBytes;
+    private final MemoryProbe.Report loadReport;
+    public static final int DEFAULT_INPUT_SIZE = 640;
+    /** Sizes offered when the model has dynamic spatial dims (multiples of the 32 px stride). */
+    public static final int[] DYNAMIC_INPUT_SIZES = {320, 416, 480, 640};
+    // YOLOv8 feature stride; rectangular inputs round their short side up to a multiple of it.
+    private static final int STRIDE = 32;
+    private final int[] supportedSizes;
+    private final boolean dynamicShape;
+    // Declared input size of a static-shape model (may itself be rectangular, e.g. 640x480).
+    private final int fixedW, fixedH;
+    private volatile int inputSize;
+    private volatile boolean rectangularInput;
+    // Tensor size of the most recently prepared input; pooled inputs of any other size are dropped.
+    private volatile int activeW, activeH;
+    private volatile InputSizeController sizeController;
+    private volatile float lastInferenceMs;
+    // Split of the last detect(): session run (incl. output copy), decode, NMS. Guarded by this.
+    private long lastRunNs, lastDecodeNs, lastNmsNs;
     private final float confThresh = 0.25f, iouThresh = 0.45f;
+    public static final int DEFAULT_PRE_NMS_TOP_K = 300;
+    private volatile int preNmsTopK = DEFAULT_PRE_NMS_TOP_K;
+    private final YoloDecoder decoder = new YoloDecoder();
+    private final YoloDecoder.Candidates candidates = new YoloDecoder.Candidates();
+    private final Nms nms = new Nms();
+    private volatile Nms.Mode nmsMode = Nms.Mode.CLASS_AWARE;
+    private volatile Resampler.Filter resampleFilter = Resampler.Filter.AREA;
     private final String inputName;
+    private final String outputName;
+
+    // Tensors owned by this detector, bound once and reused by every run; freed in close().
+    // Inputs live in a small pool of direct buffers (see PreparedInput) that preprocessing
+    // writes into in place. The output tensor is pinned when the model has a static output
+    // shape, so ORT writes results straight into outputBuffer instead of allocating per run,
+    // and the decoder reads them from there without a copy.
+    private static final int INPUT_POOL_SIZE = 3;
+    private final ArrayDeque<PreparedInput> freeInputs = new ArrayDeque<>();
+    private final List<PreparedInput> allInputs = new ArrayList<>();
+    private final long[] outputShape;
+    private final FloatBuffer outputBuffer;     // null when the output shape is dynamic
+    private final OnnxTensor outputTensor;      // null when the output shape is dynamic
+    private final Map<String, OnnxTensor> pinnedOutputs;
+
+    /**
+     * A letterboxed detector input in its own direct buffer and tensor. Filling one (via
+     * {@link #prepare}) does not hold the detector lock, so preprocessing of the next frame can
+     * overlap inference of the current one. Hand it back with {@link #recycle} once detected
+     * (or dropped). The padding stays zero until the frame geometry changes.
+     */
+    public static final class PreparedInput {
+        final int inputW, inputH;
+        final FloatBuffer buffer;
+        final OnnxTensor tensor;
+        final Map<String, OnnxTensor> inputs;
+        int frameW = -1, frameH = -1;
+        float scale;
+        int padX, padY;
+        Resampler.Taps tapsX, tapsY;
+        Resampler.Filter tapsFilter;
+        int tapsRadius = -1, tapsFrameW = -1, tapsFrameH = -1;
+        final Yuv.RotationMap rotationMap = new Yuv.RotationMap();
+
+        PreparedInput(int inputW, int inputH, FloatBuffer buffer, OnnxTensor tensor, String inputName) {
+            this.inputW = inputW;
+            this.inputH = inputH;
+            this.buffer = buffer;
+            this.tensor = tensor;
+            this.inputs = Collections.singletonMap(inputName, tensor);
+        }
+
+        public int getFrameWidth() { return frameW; }
+        public int getFrameHeight() { return frameH; }
+    }
 
     public ObjectDetector(@NonNull Context ctx) throws OrtException {
+        this(ModelHost.forContext(ctx));
+    }
+
+    public ObjectDetector(@NonNull Context ctx, @NonNull SessionProfile profile) throws OrtException {
+        this(ModelHost.forContext(ctx), profile);
+    }
+
+    public ObjectDetector(@NonNull ModelHost host) throws OrtException {
+        this(host, host.loadProfile(SessionProfileStore.MODEL_DETECTOR, SessionProfile.DEFAULT));
+    }
+
+    /**
+     * Builds the session from {@code profile}, falling back through its execution providers to
+     * CPU. The profile that actually worked is saved through {@code host}.
+     */
+    public ObjectDetector(@NonNull ModelHost host, @NonNull SessionProfile profile) throws OrtException {
         env = OrtEnvironment.getEnvironment();
-        String modelPath = Util.cacheAsset(ctx, "yolov8m_compatible.onnx");
-        OrtSession.SessionOptions so = new OrtSession.SessionOptions();
-        // Optional: enable NNAPI on supported devices
-        // so.addNnapi();  // See ORT NNAPI EP docs
-        session = env.createSession(modelPath, so);
+        String modelPath;
+        try {
+            modelPath = host.modelPath(MODEL_NAME);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        MemoryProbe probe = MemoryProbe.start("detector session");
+        SessionProfile.Opened opened;
+        try {
+            opened = host.optimizedModelCache().open(env, modelPath, profile);
+        } finally {
+            loadReport = probe.stop();
+        }
+        for (String s : opened.skipped) Log.w(TAG, "Detector EP skipped: " + s);
+        Log.i(TAG, "Detector session profile: " + opened.profile + ", " + loadReport);
+        session = opened.session;
+        sessionBytes = opened.modelBytes;
+        sessionProfile = opened.profile;
+        host.saveProfile(SessionProfileStore.MODEL_DETECTOR, sessionProfile);
         inputName = session.getInputInfo().keySet().iterator().next();
+        outputName = session.getOutputInfo().keySet().iterator().next();
+
+        // [1,3,H,W]: a static export pins one size; dynamic H/W lets us switch at runtime.
+        long[] inShape = ((TensorInfo) session.getInputInfo().get(inputName).getInfo()).getShape();
+        dynamicShape = inShape.length == 4 && (inShape[2] <= 0 || inShape[3] <= 0);
+        boolean known = inShape.length == 4 && !dynamicShape;
+        fixedW = known ? (int) inShape[3] : DEFAULT_INPUT_SIZE;
+        fixedH = known ? (int) inShape[2] : DEFAULT_INPUT_SIZE;
+        supportedSizes = dynamicShape ? DYNAMIC_INPUT_SIZES.clone()
+                : new int[]{Math.max(fixedW, fixedH)};
+        inputSize = dynamicShape ? DEFAULT_INPUT_SIZE : supportedSizes[0];
+        rectangularInput = dynamicShape;
+        activeW = dynamicShape ? inputSize : fixedW;
+        activeH = dynamicShape ? inputSize : fixedH;
+
+        // Rectangular inputs are sized from the first frame, so only pre-fill a fixed-size pool.
+        if (!dynamicShape) {
+            for (int i=0; i<INPUT_POOL_SIZE; i++) freeInputs.add(newInput(fixedW, fixedH));
+        }
+
+        long[] shape = ((TensorInfo) session.getOutputInfo().get(outputName).getInfo()).getShape();
+        long count = 1;
+        for (long d : shape) count = d > 0 ? count*d : -1;
+        if (count > 0) {
+            outputShape = shape;
+            outputBuffer = allocateFloats((int) count);
+            outputTensor = OnnxTensor.createTensor(env, outputBuffer, shape);
+            pinnedOutputs = Collections.singletonMap(outputName, outputTensor);
+        } else {
+            outputShape = null;
+            outputBuffer = null;
+            outputTensor = null;
+            pinnedOutputs = null;
+        }
     }
 
-    public List<Detection> detect(int[] argb, int srcW, int srcH) throws OrtException {
-        Letterbox lb = letterbox(argb, srcW, srcH);
-        float[] chw = toCHW(lb.rgb, inputW, inputH);
-        OnnxTensor input = OnnxTensor.createTensor(env, FloatBuffer.wrap(chw),
-                new long[]{1,3,inputH,inputW});
+    /** Time and memory spent creating the session. */
+    public MemoryProbe.Report getLoadReport() {
+        return loadReport;
+    }
 
-        try (OrtSession.Result out = session.run(Collections.singletonMap(inputName, input))) {
-            OnnxValue ov = out.get(0);
-            return parse(ov, lb.scale, lb.padX, lb.padY, srcW, srcH);
+    /** Profile the session was built with (providers that failed are not listed). */
+    public SessionProfile getSessionProfile() {
+        return sessionProfile;
+    }
+
+    /** Caps how many above-threshold candidates (highest scores first) are passed to NMS. */
+    public void setPreNmsTopK(int topK) {
+        preNmsTopK = Math.max(1, topK);
+    }
+
+    public void setNmsMode(@NonNull Nms.Mode mode) {
+        nmsMode = mode;
+    }
+
+    private static FloatBuffer allocateFloats(int count) {
+        return ByteBuffer.allocateDirect(count*4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    /** Input sizes this model accepts, ascending. A single entry means the size is fixed. */
+    public int[] getSupportedInputSizes() {
+        return supportedSizes.clone();
+    }
+
+    /** Long edge of the input used for frames prepared from now on. */
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    /**
+     * Rectangular mode (default for dynamic-shape models) keeps the long edge at
+     * {@link #getInputSize()} and shrinks the short edge to the frame's aspect ratio, rounded up
+     * to the model stride, so a 4:3 frame runs at 640x480 instead of a padded 640x640. Ignored
+     * for static-shape models.
+     */
+    public void setRectangularInput(boolean enabled) {
+        rectangularInput = enabled && dynamicShape;
+    }
+
+    public boolean isRectangularInput() {
+        return rectangularInput;
+    }
+
+    /** Tensor width/height of the most recently prepared input. */
+    public int getInputWidth() { return activeW; }
+    public int getInputHeight() { return activeH; }
+
+    /** Selects the supported size nearest to {@code size}; ignored while auto-scaling is on. */
+    public void setInputSize(int size) {
+        if (sizeController != null) return;
+        inputSize = nearestSupported(size);
+    }
+
+    /**
+     * Lets measured inference latency choose the input size so inference stays within
+     * {@code targetFrameMs}; {@code targetFrameMs <= 0} turns auto-scaling off and keeps the
+     * current size. Has no effect on models with a fixed input size.
+     */
+    public void setAutoInputSize(long targetFrameMs) {
+        if (targetFrameMs <= 0 || supportedSizes.length < 2) {
+            sizeController = null;
+            return;
+        }
+        InputSizeController c = sizeController;
+        if (c != null) {
+            c.setTargetFrameMs(targetFrameMs);
+        } else {
+            sizeController = new InputSizeController(supportedSizes, inputSize, targetFrameMs);
         }
     }
 
-    // --- preprocessing ---
-    private static class Letterbox { int[] rgb; float scale, padX, padY; }
-    private Letterbox letterbox(int[] src, int w, int h) {
-        float r = Math.min(inputW/(float)w, inputH/(float)h);
-        int nw = (int)(w*r), nh = (int)(h*r);
-        int dx = (inputW - nw)/2, dy = (inputH - nh)/2;
-
-        int[] dst = new int[inputW*inputH]; // zero-padded
-        for (int y=0; y<nh; y++) {
-            int sy = Math.min((int)(y/r), h-1);
-            for (int x=0; x<nw; x++) {
-                int sx = Math.min((int)(x/r), w-1);
-                dst[(y+dy)*inputW + (x+dx)] = src[sy*w + sx];
-            }
+    /** Wall time of the last session run plus decode/NMS, in ms. */
+    public float getLastInferenceMs() {
+        return lastInferenceMs;
+    }
+
+    /**
+     * Stage split of the last {@link #detect(PreparedInput)} in ns: session run (including the
+     * output copy), decode, NMS.
+     */
+    public synchronized long[] getLastStageNanos() {
+        return new long[]{lastRunNs, lastDecodeNs, lastNmsNs};
+    }
+
+    private int nearestSupported(int size) {
+        int best = supportedSizes[0];
+        for (int s : supportedSizes) {
+            if (Math.abs(s - size) < Math.abs(best - size)) best = s;
         }
-        Letterbox lb = new Letterbox();
-        lb.rgb = dst; lb.scale = r; lb.padX = dx; lb.padY = dy;
-        return lb;
+        return best;
     }
 
-    private float[] toCHW(int[] rgb, int w, int h) {
-        int size = w*h; float[] out = new float[3*size];
-        int rI=0, gI=size, bI=2*size;
-        for (int i=0;i<size;i++){
-            int p = rgb[i];
-            out[rI++] = ((p>>16)&0xFF)/255f;
-            out[gI++] = ((p>>8)&0xFF)/255f;
-            out[bI++] = (p&0xFF)/255f;
+    private PreparedInput newInput(int w, int h) throws OrtException {
+        FloatBuffer buf = allocateFloats(3*w*h);
+        OnnxTensor t = OnnxTensor.createTensor(env, buf, new long[]{1,3,h,w});
+        PreparedInput in = new PreparedInput(w, h, buf, t, inputName);
+        synchronized (freeInputs) {
+            allInputs.add(in);
         }
-        return out;
+        return in;
     }
 
-    // --- parse YOLOv8 output + NMS ---
-    private List<Detection> parse(OnnxValue val, float scale, float padX, float padY, int imgW, int imgH) throws OrtException {
-        OnnxTensor t = (OnnxTensor) val;
-        long[] shape = t.getInfo().getShape(); // expect [1,84,N] or [1,N,84]
-        float[] flat = t.getFloatBuffer().array();
-
-        int dim1 = (int)shape[1], dim2 = (int)shape[2];
-        boolean colsAreProps = (dim1==84); // [1,84,N]
-        int props = colsAreProps ? dim1 : dim2;
-        int clsCount = props - 4;
-        int N = colsAreProps ? dim2 : dim1;
-
-        List<Detection> dets = new ArrayList<>(N);
-        if (colsAreProps) {
-            int stride = N; // properties are stored in separate contiguous rows
-            for (int i=0;i<N;i++){
-                float x = flat[i];
-                float y = flat[stride + i];
-                float w = flat[2*stride + i];
-                float h = flat[3*stride + i];
-
-                int bestC = -1; float bestS = 0f;
-                for (int c=0;c<clsCount;c++){
-                    float s = flat[(4+c)*stride + i];
-                    if (s>bestS){ bestS = s; bestC = c; }
-                }
-                if (bestS < confThresh) continue;
-
-                float bx = x - w/2f, by = y - h/2f, ex = x + w/2f, ey = y + h/2f;
-                float x1 = clamp((bx - padX)/scale, 0, imgW);
-                float y1 = clamp((by - padY)/scale, 0, imgH);
-                float x2 = clamp((ex - padX)/scale, 0, imgW);
-                float y2 = clamp((ey - padY)/scale, 0, imgH);
-                dets.add(new Detection(x1,y1,x2,y2,bestS,bestC));
+    private PreparedInput acquireInput(int frameW, int frameH) throws OrtException {
+        int size = inputSize;
+        int w = size, h = size;
+        if (!dynamicShape) {
+            w = fixedW;
+            h = fixedH;
+        } else if (rectangularInput) {
+            // Long edge stays at size; short edge follows the aspect ratio, rounded up to STRIDE.
+            if (frameW >= frameH) h = roundUpToStride(size * frameH / (float) frameW, size);
+            else w = roundUpToStride(size * frameW / (float) frameH, size);
+        }
+        activeW = w;
+        activeH = h;
+        INPUT_W.set(w);
+        INPUT_H.set(h);
+        synchronized (freeInputs) {
+            PreparedInput in;
+            while ((in = freeInputs.poll()) != null) {
+                if (in.inputW == w && in.inputH == h) return in;
+                discardLocked(in);
             }
-        } else {
-            for (int i=0;i<N;i++){
-                int base = i*props;
-                float x = flat[base+0], y = flat[base+1],
-                        w = flat[base+2], h = flat[base+3];
-
-                int bestC = -1; float bestS = 0f;
-                for (int c=0;c<clsCount;c++){
-                    float s = flat[base+4+c];
-                    if (s>bestS){ bestS = s; bestC = c; }
-                }
-                if (bestS < confThresh) continue;
-
-                float bx = x - w/2f, by = y - h/2f, ex = x + w/2f, ey = y + h/2f;
-                float x1 = clamp((bx - padX)/scale, 0, imgW);
-                float y1 = clamp((by - padY)/scale, 0, imgH);
-                float x2 = clamp((ex - padX)/scale, 0, imgW);
-                float y2 = clamp((ey - padY)/scale, 0, imgH);
-                dets.add(new Detection(x1,y1,x2,y2,bestS,bestC));
+        }
+        // Pool exhausted (more frames in flight than expected) or resized: grow it.
+        return newInput(w, h);
+    }
+
+    private static int roundUpToStride(float len, int max) {
+        int n = (int) Math.ceil(len / STRIDE) * STRIDE;
+        return Math.max(STRIDE, Math.min(max, n));
+    }
+
+    public void recycle(PreparedInput in) {
+        if (in == null) return;
+        synchronized (freeInputs) {
+            if (!allInputs.contains(in)) return;
+            if (in.inputW != activeW || in.inputH != activeH) {
+                // Input size changed while this one was in flight.
+                discardLocked(in);
+                return;
             }
+            freeInputs.push(in);
         }
-        return nms(dets, iouThresh);
     }
 
-    private static float clamp(float v, int lo, int hi){ return Math.max(lo, Math.min(hi, v)); }
+    private void discardLocked(PreparedInput in) {
+        allInputs.remove(in);
+        in.tensor.close();
+    }
 
-    private static float iou(Detection A, Detection B){
-        float ix1 = max(A.x1,B.x1), iy1 = max(A.y1,B.y1);
-        float ix2 = min(A.x2,B.x2), iy2 = min(A.y2,B.y2);
-        float iw = max(0f, ix2-ix1), ih = max(0f, iy2-iy1);
-        float inter = iw*ih;
-        float a = (A.x2-A.x1)*(A.y2-A.y1);
-        float b = (B.x2-B.x1)*(B.y2-B.y1);
-        return inter/(a+b-inter+1e-6f);
+    /**
+     * Converts, rotates and letterboxes a camera frame straight from its YUV planes into a pooled
+     * input in one pass. Boxes detected from it are in the rotated frame's coordinates.
+     */
+    public PreparedInput prepare(ImageProxy image, int rotation) throws OrtException {
+        return prepare(image, rotation, 0);
     }
 
-    private static List<Detection> nms(List<Detection> in, float iouTh){
-        ArrayList<Detection> dets = new ArrayList<>(in);
-        dets.sort((d1,d2)-> Float.compare(d2.score, d1.score));
-        List<Detection> keep = new ArrayList<>();
-        while(!dets.isEmpty()){
-            Detection a = dets.remove(0);
-            keep.add(a);
-            dets.removeIf(b -> b.cls==a.cls && iou(a,b) > iouTh);
+    /**
+     * Like {@link #prepare(ImageProxy, int)}, additionally smoothing with a box of
+     * {@code 2*smoothRadius+1} source pixels folded into the {@link Resampler.Filter#AREA}
+     * downscale (replaces a separate full-resolution blur).
+     */
+    public PreparedInput prepare(ImageProxy image, int rotation, int smoothRadius) throws OrtException {
+        long t0 = Metrics.now();
+        boolean swap = rotation == 90 || rotation == 270;
+        int frameW = swap ? image.getHeight() : image.getWidth();
+        int frameH = swap ? image.getWidth() : image.getHeight();
+        PreparedInput in = acquireInput(frameW, frameH);
+        updateLetterbox(in, frameW, frameH);
+        updateTaps(in, smoothRadius);
+        Yuv.toLetterboxedChw(image, rotation, in.buffer, in.inputW, in.inputH, in.padX, in.padY,
+                in.tapsX, in.tapsY, in.rotationMap);
+        PREPROCESS_TIME.recordSince(t0);
+        return in;
+    }
+
+    public PreparedInput prepare(int[] argb, int srcW, int srcH) throws OrtException {
+        return prepare(argb, srcW, srcH, 0);
+    }
+
+    public PreparedInput prepare(int[] argb, int srcW, int srcH, int smoothRadius) throws OrtException {
+        long t0 = Metrics.now();
+        PreparedInput in = acquireInput(srcW, srcH);
+        updateLetterbox(in, srcW, srcH);
+        updateTaps(in, smoothRadius);
+        Resampler.argbToChw(argb, srcW, in.tapsX, in.tapsY, in.buffer, in.inputW, in.inputH, in.padX, in.padY);
+        PREPROCESS_TIME.recordSince(t0);
+        return in;
+    }
+
+    /** Downscale filter for the letterbox (default {@link Resampler.Filter#AREA}). */
+    public void setResampleFilter(Resampler.Filter filter) {
+        this.resampleFilter = filter;
+    }
+
+    /** Runs inference on a prepared input. The caller still owns {@code in} and must recycle it. */
+    public synchronized List<Detection> detect(PreparedInput in) throws OrtException {
+        long t0 = System.nanoTime();
+        List<Detection> dets = runAndParse(in);
+        long elapsed = System.nanoTime() - t0;
+        lastInferenceMs = elapsed / 1e6f;
+        InputSizeController c = sizeController;
+        // Latency at a stale size would mislead the controller; only feed runs at the active size.
+        if (c != null && Math.max(in.inputW, in.inputH) == c.getSize()) {
+            int next = c.record(elapsed);
+            if (next != inputSize) {
+                Log.i(TAG, "Detector input size " + inputSize + " -> " + next
+                        + " (mean " + c.getMeanLatencyMs() + " ms)");
+                inputSize = next;
+            }
         }
-        return keep;
+        return dets;
     }
 
-    @Override public void close() throws Exception {
-        session.close();
+    public List<Detection> detect(ImageProxy image, int rotation) throws OrtException {
+        PreparedInput in = prepare(image, rotation);
+        try {
+            return detect(in);
+        } finally {
+            recycle(in);
+        }
     }
 
-    // Utility to read asset fully
-    static class Util {
-        static byte[] readAllBytes(android.content.res.AssetManager am, String name){
-            try(java.io.InputStream is = am.open(name);
-                java.io.ByteArrayOutputStream bos = new java.io.ByteArrayOutputStream()){
-                byte[] buf = new byte[1<<16]; int r;
-                while ((r=is.read(buf))!=-1) bos.write(buf,0,r);
-                return bos.toByteArray();
-            } catch (Exception e){ throw new RuntimeException(e); }
-        }
-
-        static String cacheAsset(Context ctx, String assetName){
-            File dir = new File(ctx.getFilesDir(), "models");
-            if (!dir.exists()) dir.mkdirs();
-            File out = new File(dir, assetName);
-            if (out.exists() && out.length() > 0) return out.getAbsolutePath();
-            try (InputStream is = ctx.getAssets().open(assetName);
-                 FileOutputStream fos = new FileOutputStream(out)) {
-                byte[] buf = new byte[1<<16]; int r;
-                while ((r = is.read(buf)) != -1) fos.write(buf, 0, r);
-                fos.flush();
-                return out.getAbsolutePath();
-            } catch (Exception e){
-                throw new RuntimeException(e);
+    public List<Detection> detect(int[] argb, int srcW, int srcH) throws OrtException {
+        return detect(argb, srcW, srcH, 0);
+    }
+
+    public List<Detection> detect(int[] argb, int srcW, int srcH, int smoothRadius) throws OrtException {
+        PreparedInput in = prepare(argb, srcW, srcH, smoothRadius);
+        try {
+            return detect(in);
+        } finally {
+            recycle(in);
+        }
+    }
+
+    private List<Detection> runAndParse(PreparedInput in) throws OrtException {
+        long t0 = System.nanoTime();
+        if (pinnedOutputs != null) {
+            try (OrtSession.Result ignored = session.run(in.inputs, pinnedOutputs)) {
+                recordRun(t0);
+                return parse(outputBuffer, outputShape, in.scale, in.padX, in.padY, in.frameW, in.frameH);
             }
         }
+        // Dynamic output shape: let ORT allocate and decode its buffer directly.
+        try (OrtSession.Result out = session.run(in.inputs)) {
+            OnnxTensor t = (OnnxTensor) out.get(0);
+            long[] shape = t.getInfo().getShape();
+            FloatBuffer buf = t.getFloatBuffer();
+            recordRun(t0);
+            return parse(buf, shape, in.scale, in.padX, in.padY, in.frameW, in.frameH);
+        }
+    }
+
+    private void recordRun(long t0) {
+        lastRunNs = System.nanoTime() - t0;
+        INFER_TIME.record(lastRunNs);
+    }
+
+    // --- preprocessing ---
+    private void updateLetterbox(PreparedInput in, int frameW, int frameH) {
+        if (frameW == in.frameW && frameH == in.frameH) return;
+        // Geometry changed: recompute the letterbox and clear stale content from the padding.
+        float r = Math.min(in.inputW/(float)frameW, in.inputH/(float)frameH);
+        in.scale = r;
+        in.padX = (in.inputW - (int)(frameW*r))/2;
+        in.padY = (in.inputH - (int)(frameH*r))/2;
+        FloatBuffer buf = in.buffer;
+        for (int i=0, n=buf.capacity(); i<n; i++) buf.put(i, 0f);
+        in.frameW = frameW;
+        in.frameH = frameH;
+    }
+
+    /** Rebuilds the input's resampling taps when the filter, smoothing or geometry changed. */
+    private void updateTaps(PreparedInput in, int smoothRadius) {
+        Resampler.Filter filter = resampleFilter;
+        int radius = Math.max(0, smoothRadius);
+        if (in.tapsX != null && in.tapsFilter == filter && in.tapsRadius == radius
+                && in.tapsFrameW == in.frameW && in.tapsFrameH == in.frameH) {
+            return;
+        }
+        int nw = Math.min((int)(in.frameW*in.scale), in.inputW - in.padX);
+        int nh = Math.min((int)(in.frameH*in.scale), in.inputH - in.padY);
+        float inv = 1f/in.scale;
+        in.tapsX = Resampler.taps(filter, in.frameW, nw, inv, radius);
+        in.tapsY = Resampler.taps(filter, in.frameH, nh, inv, radius);
+        in.tapsFilter = filter;
+        in.tapsRadius = radius;
+        in.tapsFrameW = in.frameW;
+        in.tapsFrameH = in.frameH;
+    }
+
+    // --- parse YOLOv8 output + NMS ---
+    private List<Detection> parse(FloatBuffer flat, long[] shape, float scale, float padX, float padY, int imgW, int imgH) {
+        // shape: expect [1,84,N] or [1,N,84]
+        long t0 = System.nanoTime();
+        decoder.decode(flat, shape, confThresh, preNmsTopK, scale, padX, padY, imgW, imgH, candidates);
+        long t1 = System.nanoTime();
+        YoloDecoder.Candidates c = candidates;
+        int decoded = c.count;
+        int kept = nms.run(c, nmsMode, iouThresh, confThresh);
+        long t2 = System.nanoTime();
+        lastDecodeNs = t1 - t0;
+        lastNmsNs = t2 - t1;
+        DECODE_TIME.record(lastDecodeNs);
+        NMS_TIME.record(lastNmsNs);
+        NMS_CANDIDATES.record(decoded);
+        NMS_KEPT.record(kept);
+        int[] keep = nms.keep();
+        List<Detection> dets = new ArrayList<>(kept);
+        for (int k=0;k<kept;k++){
+            int i = keep[k];
+            dets.add(new Detection(c.x1[i],c.y1[i],c.x2[i],c.y2[i],c.score[i],c.cls[i]));
+        }
+        return dets;
+    }
+
+    @Override public synchronized void close() throws Exception {
+        synchronized (freeInputs) {
+            for (PreparedInput in : allInputs) in.tensor.close();
+            allInputs.clear();
+            freeInputs.clear();
+        }
+        if (outputTensor != null) outputTensor.close();
+        session.close();
     }
 }
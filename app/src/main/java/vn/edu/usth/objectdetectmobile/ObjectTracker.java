@@ -0,0 +1,273 @@
+package vn.edu.usth.objectdetectmobile;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * SORT-style multi-object tracker that sits between {@link ObjectDetector} and the overlay.
+ * <p>
+ * Each track runs a constant-velocity Kalman filter on its box centre and size. On keyframes
+ * the detector output is associated to the predicted tracks by greedy IoU matching (same class
+ * only); on the frames in between {@link #predict} extrapolates the boxes without running the
+ * detector. {@link #needsDetection()} asks for a keyframe every {@code detectInterval} frames,
+ * or earlier when coasting one more frame would leave a track's predicted centre too uncertain
+ * for its size (a new track whose velocity is still unknown, a small or erratic object).
+ * Every emitted {@link ObjectDetector.Detection} carries its stable track id.
+ * <p>
+ * The keyframe cadence is counted where frames are produced: the convert stage calls
+ * {@link #claimKeyframe()} once per frame it hands on, so the decision does not lag behind a busy
+ * detect stage. Once a keyframe is claimed, the early trigger stays quiet until {@link #update}
+ * applies it; only the interval can claim another one meanwhile.
+ * <p>
+ * Thread-safe: the convert stage claims keyframes while the detect stage feeds results in, so
+ * every public method locks the tracker.
+ */
+public class ObjectTracker {
+    private static final float MATCH_IOU = 0.3f;
+    private static final int MAX_MISSED_KEYFRAMES = 2;
+    // Per predicted frame the emitted score decays, so coasted boxes read as less certain.
+    private static final float CERTAINTY_DECAY = 0.8f;
+    // Predicted centre std-dev, as a fraction of the box's smaller side, past which a keyframe is
+    // due early. Never below MIN_CENTER_SIGMA_PX: for small boxes the fraction would sit under the
+    // detector's own jitter (sqrt(R_MEAS) = 4 px) and every distant object would force keyframes.
+    private static final float MAX_CENTER_SIGMA = 0.25f;
+    private static final float MIN_CENTER_SIGMA_PX = 8f;
+    // Kalman noise (pixels^2 per frame): process noise on position / velocity, measurement noise.
+    private static final float Q_POS = 1f, Q_VEL = 0.5f, R_MEAS = 16f;
+    // Velocity variance of a new track: about 4 px/frame, a brisk walk across the frame at 30 fps.
+    private static final float V0_VAR = 16f;
+
+    private final int detectInterval;
+    private final List<Track> tracks = new ArrayList<>();
+    private int nextId = 1;
+    // Frames handed on since the last claimed keyframe; advanced by claimKeyframe() only.
+    private int framesSinceDetection = Integer.MAX_VALUE / 2;
+    private boolean keyframePending;
+    private int frameW = -1, frameH = -1;
+
+    /** @param detectInterval run the detector at most every N frames (1 = every frame). */
+    public ObjectTracker(int detectInterval) {
+        this.detectInterval = Math.max(1, detectInterval);
+    }
+
+    /** Whether the next frame should be a keyframe (full detector run). Does not claim it. */
+    public synchronized boolean needsDetection() {
+        if (framesSinceDetection + 1 >= detectInterval) return true;
+        if (keyframePending) return false;
+        for (Track t : tracks) {
+            if (t.missedKeyframes == 0 && t.predictionUntrusted()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Decides for the frame about to enter the pipeline and advances the cadence: returns true if
+     * it is a keyframe, which then counts as the last detection.
+     */
+    public synchronized boolean claimKeyframe() {
+        if (needsDetection()) {
+            framesSinceDetection = 0;
+            keyframePending = true;
+            return true;
+        }
+        framesSinceDetection++;
+        return false;
+    }
+
+    /** Keyframe: advances all tracks, associates {@code dets} and returns the tracked boxes. */
+    public synchronized List<ObjectDetector.Detection> update(List<ObjectDetector.Detection> dets,
+                                                              int frameW, int frameH) {
+        checkFrameSize(frameW, frameH);
+        keyframePending = false;
+        for (Track t : tracks) t.predict();
+        if (dets == null) dets = new ArrayList<>();
+
+        boolean[] detUsed = new boolean[dets.size()];
+        boolean[] trackUsed = new boolean[tracks.size()];
+        associate(dets, detUsed, trackUsed);
+
+        for (int ti = tracks.size() - 1; ti >= 0; ti--) {
+            Track t = tracks.get(ti);
+            if (!trackUsed[ti] && ++t.missedKeyframes > MAX_MISSED_KEYFRAMES) {
+                tracks.remove(ti);
+            }
+        }
+        for (int di = 0; di < dets.size(); di++) {
+            if (!detUsed[di]) tracks.add(new Track(nextId++, dets.get(di)));
+        }
+        return emit();
+    }
+
+    /** In-between frame: extrapolates every track one frame and returns the predicted boxes. */
+    public synchronized List<ObjectDetector.Detection> predict(int frameW, int frameH) {
+        checkFrameSize(frameW, frameH);
+        for (Track t : tracks) {
+            t.predict();
+            t.certainty *= CERTAINTY_DECAY;
+        }
+        return emit();
+    }
+
+    public synchronized void reset() {
+        tracks.clear();
+        framesSinceDetection = Integer.MAX_VALUE / 2;
+        keyframePending = false;
+    }
+
+    private void checkFrameSize(int w, int h) {
+        if (w != frameW || h != frameH) {
+            tracks.clear();
+            // A claimed keyframe (possibly this very frame) already restarts the tracks; only
+            // without one must the next frame be forced.
+            if (!keyframePending) framesSinceDetection = Integer.MAX_VALUE / 2;
+            frameW = w;
+            frameH = h;
+        }
+    }
+
+    /** Greedy association on descending IoU; equivalent to SORT's Hungarian step in practice. */
+    private void associate(List<ObjectDetector.Detection> dets, boolean[] detUsed, boolean[] trackUsed) {
+        int nd = dets.size(), nt = tracks.size();
+        if (nd == 0 || nt == 0) return;
+        long[] pairs = new long[nd * nt];
+        int np = 0;
+        for (int ti = 0; ti < nt; ti++) {
+            Track t = tracks.get(ti);
+            for (int di = 0; di < nd; di++) {
+                ObjectDetector.Detection d = dets.get(di);
+                if (d.cls != t.cls) continue;
+                float iou = t.iou(d);
+                if (iou < MATCH_IOU) continue;
+                // Ascending key order = descending IoU; low bits carry the pair.
+                int bits = Integer.MAX_VALUE - Float.floatToIntBits(iou);
+                pairs[np++] = ((long) bits << 32) | ((long) ti << 16) | di;
+            }
+        }
+        Arrays.sort(pairs, 0, np);
+        for (int p = 0; p < np; p++) {
+            int ti = (int) ((pairs[p] >>> 16) & 0xFFFF);
+            int di = (int) (pairs[p] & 0xFFFF);
+            if (trackUsed[ti] || detUsed[di]) continue;
+            trackUsed[ti] = true;
+            detUsed[di] = true;
+            tracks.get(ti).correct(dets.get(di));
+        }
+    }
+
+    private List<ObjectDetector.Detection> emit() {
+        List<ObjectDetector.Detection> out = new ArrayList<>(tracks.size());
+        for (Track t : tracks) {
+            // Tracks the last keyframe did not confirm are kept for re-association but not shown.
+            if (t.missedKeyframes > 0) continue;
+            ObjectDetector.Detection d = t.toDetection(frameW, frameH);
+            if (d != null) out.add(d);
+        }
+        return out;
+    }
+
+    private static final class Track {
+        final int id;
+        final int cls;
+        float score;
+        float certainty = 1f;
+        int missedKeyframes = 0;
+        final Kalman1D cx, cy, w, h;
+
+        Track(int id, @NonNull ObjectDetector.Detection d) {
+            this.id = id;
+            this.cls = d.cls;
+            this.score = d.score;
+            cx = new Kalman1D((d.x1 + d.x2) / 2f);
+            cy = new Kalman1D((d.y1 + d.y2) / 2f);
+            w = new Kalman1D(d.x2 - d.x1);
+            h = new Kalman1D(d.y2 - d.y1);
+        }
+
+        void predict() {
+            cx.predict(); cy.predict(); w.predict(); h.predict();
+        }
+
+        void correct(ObjectDetector.Detection d) {
+            cx.correct((d.x1 + d.x2) / 2f);
+            cy.correct((d.y1 + d.y2) / 2f);
+            w.correct(d.x2 - d.x1);
+            h.correct(d.y2 - d.y1);
+            score = d.score;
+            certainty = 1f;
+            missedKeyframes = 0;
+        }
+
+        /**
+         * Whether the centre predicted one frame ahead is too uncertain for the box size, with a
+         * pixel floor so small boxes are not held to a tighter bound than the detector's noise.
+         */
+        boolean predictionUntrusted() {
+            float var = Math.max(cx.predictedVariance(), cy.predictedVariance());
+            float sigma = Math.max(MIN_CENTER_SIGMA_PX, Math.min(w.x, h.x) * MAX_CENTER_SIGMA);
+            return var > sigma * sigma;
+        }
+
+        float iou(ObjectDetector.Detection d) {
+            float hw = Math.max(0f, w.x) / 2f, hh = Math.max(0f, h.x) / 2f;
+            float ax1 = cx.x - hw, ay1 = cy.x - hh, ax2 = cx.x + hw, ay2 = cy.x + hh;
+            float iw = Math.min(ax2, d.x2) - Math.max(ax1, d.x1);
+            float ih = Math.min(ay2, d.y2) - Math.max(ay1, d.y1);
+            if (iw <= 0f || ih <= 0f) return 0f;
+            float inter = iw * ih;
+            float a = (ax2 - ax1) * (ay2 - ay1);
+            float b = (d.x2 - d.x1) * (d.y2 - d.y1);
+            return inter / (a + b - inter + 1e-6f);
+        }
+
+        ObjectDetector.Detection toDetection(int frameW, int frameH) {
+            float hw = Math.max(0f, w.x) / 2f, hh = Math.max(0f, h.x) / 2f;
+            float x1 = clamp(cx.x - hw, frameW), y1 = clamp(cy.x - hh, frameH);
+            float x2 = clamp(cx.x + hw, frameW), y2 = clamp(cy.x + hh, frameH);
+            if (x2 - x1 < 1f || y2 - y1 < 1f) return null;
+            return new ObjectDetector.Detection(x1, y1, x2, y2, score * certainty, cls,
+                    Float.NaN, id, ObjectDetector.Detection.NO_DEPTH_AGE);
+        }
+
+        private static float clamp(float v, int hi) {
+            return Math.max(0f, Math.min(hi, v));
+        }
+    }
+
+    /** Constant-velocity Kalman filter on one scalar (value + velocity per frame). */
+    private static final class Kalman1D {
+        float x, v;
+        float p00 = R_MEAS, p01 = 0f, p11 = V0_VAR;
+
+        Kalman1D(float x0) {
+            this.x = x0;
+        }
+
+        void predict() {
+            x += v;
+            p00 += 2f * p01 + p11 + Q_POS;
+            p01 += p11;
+            p11 += Q_VEL;
+        }
+
+        /** Position variance after one more {@link #predict()}. */
+        float predictedVariance() {
+            return p00 + 2f * p01 + p11 + Q_POS;
+        }
+
+        void correct(float z) {
+            float s = p00 + R_MEAS;
+            float k0 = p00 / s, k1 = p01 / s;
+            float y = z - x;
+            x += k0 * y;
+            v += k1 * y;
+            float n00 = (1f - k0) * p00;
+            float n01 = (1f - k0) * p01;
+            p11 -= k1 * p01;
+            p00 = n00;
+            p01 = n01;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession.SessionOptions.OptLevel;
+
+/**
+ * Keeps the graph ORT produces after optimization so later launches skip the optimizer.
+ * <p>
+ * The first session for a model is created with {@code setOptimizedModelFilePath}, which makes
+ * ORT write the optimized graph in ORT format under the cache key; later sessions memory-map that
+ * file with optimizations turned off and let ORT use the mapped weights in place, so loading
+ * holds no second copy of the model. The key is the model's SHA-256, the ORT version and the
+ * {@link SessionProfile}, so a new model, runtime or profile gets a fresh entry, and stale
+ * entries for the same model are deleted when it is written. Only CPU-only profiles are cached:
+ * other EPs compile nodes that cannot be serialized. The optimized graph can be specific to the
+ * CPU it was built on, which is fine for an app-private cache. Apart from {@link #forContext}
+ * the class is plain Java.
+ */
+public final class OptimizedModelCache {
+
+    private static final String SUFFIX = ".opt.ort";
+    // Sidecar remembering the model hash for a given size/mtime so it is not recomputed per launch.
+    private static final String HASH_SUFFIX = ".sha256";
+
+    private final File dir;
+
+    public OptimizedModelCache(File dir) {
+        this.dir = dir;
+    }
+
+    /** App cache under code_cache, which Android clears whenever the app is updated. */
+    public static OptimizedModelCache forContext(Context ctx) {
+        return new OptimizedModelCache(new File(ctx.getCodeCacheDir(), "ort_optimized"));
+    }
+
+    /**
+     * Opens {@code modelPath} with {@code profile}, through the cache when the profile allows it.
+     * A cached file that fails to load is deleted and rebuilt from the source model. The returned
+     * {@link SessionProfile.Opened#profile} is always in terms of the requested profile.
+     */
+    public SessionProfile.Opened open(OrtEnvironment env, String modelPath, SessionProfile profile)
+            throws OrtException {
+        if (!profile.isCpuOnly() || !(dir.isDirectory() || dir.mkdirs())) {
+            return profile.open(env, modelPath);
+        }
+        File model = new File(modelPath);
+        String base = model.getName();
+        String key;
+        try {
+            key = key(model, env.getVersion(), profile);
+        } catch (IOException e) {
+            return profile.open(env, modelPath);
+        }
+        File cached = new File(dir, base + "-" + key + SUFFIX);
+
+        if (cached.length() > 0) {
+            try {
+                SessionProfile.Opened o = profile.withOptLevel(OptLevel.NO_OPT)
+                        .openOrtFormat(env, map(cached));
+                return new SessionProfile.Opened(o.session, profile, o.skipped, o.modelBytes);
+            } catch (OrtException | IOException e) {
+                // Corrupt or unreadable entry: rebuild it below.
+                cached.delete();
+            }
+        }
+
+        File tmp = new File(dir, cached.getName() + ".tmp");
+        tmp.delete();
+        SessionProfile.Opened o = profile.open(env, modelPath, tmp.getAbsolutePath());
+        if (tmp.length() > 0 && tmp.renameTo(cached)) {
+            deleteStale(base, cached);
+        } else {
+            tmp.delete();
+        }
+        return o;
+    }
+
+    /** Removes every cached entry. */
+    public void clear() {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File f : files) f.delete();
+    }
+
+    private void deleteStale(String base, File keep) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File f : files) {
+            String n = f.getName();
+            // Any older entry for this model, including other formats from earlier releases.
+            if (n.startsWith(base + "-") && !f.equals(keep)) f.delete();
+        }
+    }
+
+    private static MappedByteBuffer map(File f) throws IOException {
+        try (FileInputStream in = new FileInputStream(f); FileChannel ch = in.getChannel()) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+    }
+
+    private String key(File model, String ortVersion, SessionProfile profile) throws IOException {
+        MessageDigest md = sha256();
+        md.update(modelHash(model).getBytes(StandardCharsets.UTF_8));
+        md.update(ortVersion.getBytes(StandardCharsets.UTF_8));
+        md.update(profile.encode().getBytes(StandardCharsets.UTF_8));
+        return ModelStore.hex(md.digest()).substring(0, 16);
+    }
+
+    private String modelHash(File model) throws IOException {
+        String stamp = model.length() + ":" + model.lastModified() + ":";
+        File sidecar = new File(dir, model.getName() + HASH_SUFFIX);
+        String saved = readSmall(sidecar);
+        if (saved != null && saved.startsWith(stamp)) return saved.substring(stamp.length());
+
+        String hash = ModelStore.sha256(model);
+        try (OutputStream os = new FileOutputStream(sidecar)) {
+            os.write((stamp + hash).getBytes(StandardCharsets.UTF_8));
+        }
+        return hash;
+    }
+
+    private static String readSmall(File f) {
+        if (!f.isFile() || f.length() > 256) return null;
+        try (InputStream is = new FileInputStream(f)) {
+            byte[] b = new byte[(int) f.length()];
+            int n = 0, r;
+            while (n < b.length && (r = is.read(b, n, b.length - n)) != -1) n += r;
+            return new String(b, 0, n, StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
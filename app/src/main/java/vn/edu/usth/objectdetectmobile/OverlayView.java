@@ -14,7 +14,7 @@ public class OverlayView extends View {
     private final Paint box = new Paint();
     private final Paint text = new Paint();
     private List<ObjectDetector.Detection> dets = new ArrayList<>();
-    private String[] labels = new String[0];
+    private LabelRegistry labels = new LabelRegistry(new String[0]);
     private int frameW = 1, frameH = 1;
 
     public OverlayView(Context c, AttributeSet a) {
@@ -27,7 +27,7 @@ public class OverlayView extends View {
         text.setAntiAlias(true);
     }
 
-    public void setLabels(String[] labels) { this.labels = labels; }
+    public void setLabels(@NonNull LabelRegistry labels) { this.labels = labels; }
 
     public void setDetections(List<ObjectDetector.Detection> dets, int frameW, int frameH) {
         this.dets = dets != null ? dets : new ArrayList<>();
@@ -53,7 +53,7 @@ public class OverlayView extends View {
             float right = offsetX + d.x2 * scale;
             float bottom = offsetY + d.y2 * scale;
             canvas.drawRect(left, top, right, bottom, box);
-            String lab = (d.cls >= 0 && d.cls < labels.length) ? labels[d.cls] : ("cls " + d.cls);
+            String lab = labels.label(d.cls);
             StringBuilder sb = new StringBuilder();
             sb.append(lab).append(String.format(Locale.US, " %.2f", d.score));
             if (!Float.isNaN(d.depth)) {
@@ -0,0 +1,80 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.graphics.Rect;
+import android.media.Image;
+
+import androidx.camera.core.ImageInfo;
+import androidx.camera.core.ImageProxy;
+
+import java.nio.ByteBuffer;
+
+/**
+ * YUV_420_888 {@link ImageProxy} over packed planes already in memory: a luma buffer and one
+ * chroma buffer holding either U then V (pixel stride 1) or NV21-style interleaved VU (pixel
+ * stride 2, the U and V planes being views one byte apart). Row strides may carry padding.
+ * Replayed recordings and the host-side benchmarks hand frames to the pipeline through it.
+ * <p>
+ * {@link #getImageInfo()} and {@link #getImage()} are not available; callers pass rotation and
+ * timestamp explicitly. Closing is a no-op, the buffers belong to whoever made the image.
+ */
+public class PackedYuvImage implements ImageProxy {
+    private final int width, height;
+    private final PlaneProxy[] planes;
+    private Rect cropRect;
+
+    /**
+     * {@code chroma} holds U then V, each {@code uvRowStride * ceil(h/2)} bytes, when
+     * {@code uvPixelStride == 1}, or one interleaved VU plane when it is 2. Buffers are used from
+     * their position to their limit.
+     */
+    public PackedYuvImage(int w, int h, ByteBuffer y, int yRowStride,
+                          ByteBuffer chroma, int uvRowStride, int uvPixelStride) {
+        this.width = w;
+        this.height = h;
+        planes = new PlaneProxy[3];
+        planes[0] = plane(y.slice(), yRowStride, 1);
+        int len = chroma.remaining();
+        if (uvPixelStride == 2) {
+            // V at even offsets, U at odd ones; both views end one byte short.
+            planes[1] = plane(slice(chroma, 1, len - 1), uvRowStride, 2);
+            planes[2] = plane(slice(chroma, 0, len - 1), uvRowStride, 2);
+        } else {
+            int plane = uvRowStride * ((h + 1) / 2);
+            planes[1] = plane(slice(chroma, 0, plane), uvRowStride, 1);
+            planes[2] = plane(slice(chroma, plane, plane), uvRowStride, 1);
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer data, int offset, int len) {
+        ByteBuffer d = data.duplicate();
+        int at = d.position() + offset;
+        d.limit(at + len).position(at);
+        return d.slice();
+    }
+
+    private static PlaneProxy plane(ByteBuffer buffer, int rowStride, int pixelStride) {
+        return new PlaneProxy() {
+            @Override public int getRowStride() { return rowStride; }
+            @Override public int getPixelStride() { return pixelStride; }
+            @Override public ByteBuffer getBuffer() { return buffer; }
+        };
+    }
+
+    @Override public int getWidth() { return width; }
+    @Override public int getHeight() { return height; }
+    @Override public PlaneProxy[] getPlanes() { return planes; }
+    @Override public int getFormat() { return 35; } // ImageFormat.YUV_420_888
+    @Override public void close() { }
+
+    public Rect getCropRect() {
+        return cropRect != null ? cropRect : new Rect(0, 0, width, height);
+    }
+
+    public void setCropRect(Rect rect) {
+        cropRect = rect;
+    }
+
+    @Override public ImageInfo getImageInfo() { return null; }
+
+    public Image getImage() { return null; }
+}
@@ -0,0 +1,142 @@
+package vn.edu.usth.objectdetectmobile;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Separable resampling used by the detector letterbox. Each axis gets a tap table (source index
+ * range and weights per destination pixel) computed once per geometry; the kernels then read
+ * every source tap once per destination pixel and write straight into the CHW tensor.
+ * <p>
+ * {@link Filter#AREA} averages the source footprint of each destination pixel, widened to at
+ * least {@code 2*smoothRadius+1} source pixels, so the blur that used to run over the whole
+ * frame is folded into the downscale at no extra pass.
+ */
+public final class Resampler {
+
+    public enum Filter {
+        /** One tap per pixel; fastest, aliases on downscale. */
+        NEAREST,
+        /** Two taps per axis, pixel-centre aligned. */
+        BILINEAR,
+        /** Box average over the (optionally widened) source footprint. */
+        AREA
+    }
+
+    /** Per-axis taps: destination i reads source start[i] + k with weight[i*stride + k]. */
+    public static final class Taps {
+        final int n;
+        final int stride;
+        final int[] start;
+        final int[] count;
+        final float[] weight;
+
+        Taps(int n, int stride) {
+            this.n = n;
+            this.stride = stride;
+            this.start = new int[n];
+            this.count = new int[n];
+            this.weight = new float[n * stride];
+        }
+    }
+
+    private Resampler() {}
+
+    /**
+     * Builds taps mapping {@code dstLen} destination pixels onto {@code srcLen} source pixels,
+     * where one destination pixel spans {@code inv} source pixels.
+     */
+    static Taps taps(Filter filter, int srcLen, int dstLen, float inv, int smoothRadius) {
+        switch (filter) {
+            case NEAREST: {
+                Taps t = new Taps(dstLen, 1);
+                for (int i = 0; i < dstLen; i++) {
+                    t.start[i] = Math.min((int) (i * inv), srcLen - 1);
+                    t.count[i] = 1;
+                    t.weight[i] = 1f;
+                }
+                return t;
+            }
+            case BILINEAR: {
+                Taps t = new Taps(dstLen, 2);
+                for (int i = 0; i < dstLen; i++) {
+                    float c = Math.max(0f, Math.min(srcLen - 1f, (i + 0.5f) * inv - 0.5f));
+                    int i0 = Math.min((int) c, srcLen - 1);
+                    float f = c - i0;
+                    t.start[i] = i0;
+                    if (i0 + 1 < srcLen && f > 0f) {
+                        t.count[i] = 2;
+                        t.weight[2 * i] = 1f - f;
+                        t.weight[2 * i + 1] = f;
+                    } else {
+                        t.count[i] = 1;
+                        t.weight[2 * i] = 1f;
+                    }
+                }
+                return t;
+            }
+            case AREA:
+            default: {
+                float width = Math.max(inv, 2 * smoothRadius + 1);
+                int stride = (int) Math.ceil(width) + 1;
+                Taps t = new Taps(dstLen, stride);
+                for (int i = 0; i < dstLen; i++) {
+                    float centre = (i + 0.5f) * inv;
+                    float a = Math.max(0f, centre - width / 2f);
+                    float b = Math.min(srcLen, centre + width / 2f);
+                    if (b <= a) {
+                        // Degenerate footprint at the border: fall back to the nearest pixel.
+                        a = Math.min(srcLen - 1, (int) centre);
+                        b = a + 1;
+                    }
+                    int first = (int) a;
+                    int last = Math.min(srcLen - 1, (int) Math.ceil(b) - 1);
+                    int cnt = Math.min(stride, last - first + 1);
+                    float sum = 0f;
+                    for (int k = 0; k < cnt; k++) {
+                        int p = first + k;
+                        float cover = Math.min(b, p + 1) - Math.max(a, p);
+                        t.weight[i * stride + k] = Math.max(0f, cover);
+                        sum += Math.max(0f, cover);
+                    }
+                    float norm = sum > 0f ? 1f / sum : 0f;
+                    for (int k = 0; k < cnt; k++) t.weight[i * stride + k] *= norm;
+                    t.start[i] = first;
+                    t.count[i] = cnt;
+                }
+                return t;
+            }
+        }
+    }
+
+    /**
+     * Resamples an ARGB frame into normalized CHW planes of {@code dstW*dstH}, content placed at
+     * ({@code padX}, {@code padY}) with size {@code tx.n x ty.n}. Padding is left untouched.
+     */
+    static void argbToChw(int[] src, int srcW, Taps tx, Taps ty,
+                          FloatBuffer dst, int dstW, int dstH, int padX, int padY) {
+        final int plane = dstW * dstH;
+        for (int y = 0; y < ty.n; y++) {
+            int dstRow = (y + padY) * dstW + padX;
+            int y0 = ty.start[y], ny = ty.count[y], wyBase = y * ty.stride;
+            for (int x = 0; x < tx.n; x++) {
+                int x0 = tx.start[x], nx = tx.count[x], wxBase = x * tx.stride;
+                float r = 0f, g = 0f, b = 0f;
+                for (int j = 0; j < ny; j++) {
+                    float wy = ty.weight[wyBase + j];
+                    int row = (y0 + j) * srcW + x0;
+                    for (int i = 0; i < nx; i++) {
+                        float wgt = wy * tx.weight[wxBase + i];
+                        int p = src[row + i];
+                        r += wgt * ((p >> 16) & 0xFF);
+                        g += wgt * ((p >> 8) & 0xFF);
+                        b += wgt * (p & 0xFF);
+                    }
+                }
+                int idx = dstRow + x;
+                dst.put(idx, r / 255f);
+                dst.put(plane + idx, g / 255f);
+                dst.put(2 * plane + idx, b / 255f);
+            }
+        }
+    }
+}
@@ -195,22 +195,16 @@ public class SequentialStereoHelper {
                     int frameW = image.getWidth();
                     int frameH = image.getHeight();
                     int rotation = image.getImageInfo().getRotationDegrees();
-                    int[] argb = Yuv.toArgb(image);
-                    if (rotation != 0) {
-                        argb = Yuv.rotate(argb, frameW, frameH, rotation);
-                        if (rotation == 90 || rotation == 270) {
-                            int tmp = frameW;
-                            frameW = frameH;
-                            frameH = tmp;
-                        }
+                    int[] argb = Yuv.toArgb(image, rotation);
+                    if (rotation == 90 || rotation == 270) {
+                        int tmp = frameW;
+                        frameW = frameH;
+                        frameH = tmp;
                     }
 
-                    int[] detectorInput = (blurEnabled && blurRadius > 0)
-                            ? ImageUtils.boxBlur(argb, frameW, frameH, blurRadius)
-                            : argb;
-
-                    List<ObjectDetector.Detection> dets =
-                            detector.detect(detectorInput, frameW, frameH);
+                    // Blur is folded into the detector's downscale.
+                    List<ObjectDetector.Detection> dets = detector.detect(argb, frameW, frameH,
+                            (blurEnabled && blurRadius > 0) ? blurRadius : 0);
 
                     DepthEstimator.DepthMap depth = null;
                     if (depthEstimator != null) {
@@ -0,0 +1,353 @@
+package vn.edu.usth.objectdetectmobile;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import ai.onnxruntime.OrtSession.SessionOptions.ExecutionMode;
+import ai.onnxruntime.OrtSession.SessionOptions.OptLevel;
+
+/**
+ * ORT session settings for one model: thread counts, graph optimization level, execution mode,
+ * CPU arena / memory-pattern switches and an ordered execution provider preference.
+ * <p>
+ * {@link #open} tries the providers in order and drops any that the runtime lacks or that fail
+ * to compile the model, ending on the CPU EP, which is always available. The class has no
+ * Android dependencies, so the CPU path runs unchanged on a desktop JVM. Profiles are immutable;
+ * {@link #encode()} / {@link #decode} give the string form persisted by
+ * {@link SessionProfileStore}.
+ */
+public final class SessionProfile {
+
+    /** Execution providers in the order they may be preferred. */
+    public enum Provider {
+        NNAPI,
+        QNN,
+        XNNPACK,
+        CPU
+    }
+
+    /** ORT defaults, CPU only. */
+    public static final SessionProfile DEFAULT = new SessionProfile(0, 0, OptLevel.ALL_OPT,
+            ExecutionMode.SEQUENTIAL, true, true, Collections.singletonList(Provider.CPU));
+
+    /** 0 lets ORT pick. */
+    public final int intraOpThreads, interOpThreads;
+    public final OptLevel optLevel;
+    public final ExecutionMode executionMode;
+    public final boolean cpuArena;
+    public final boolean memoryPattern;
+    /** Preference order; always ends with {@link Provider#CPU}. */
+    public final List<Provider> providers;
+
+    private SessionProfile(int intraOpThreads, int interOpThreads, OptLevel optLevel,
+                           ExecutionMode executionMode, boolean cpuArena, boolean memoryPattern,
+                           List<Provider> providers) {
+        this.intraOpThreads = Math.max(0, intraOpThreads);
+        this.interOpThreads = Math.max(0, interOpThreads);
+        this.optLevel = optLevel;
+        this.executionMode = executionMode;
+        this.cpuArena = cpuArena;
+        this.memoryPattern = memoryPattern;
+        List<Provider> list = new ArrayList<>();
+        for (Provider p : providers) {
+            if (p != Provider.CPU && !list.contains(p)) list.add(p);
+        }
+        list.add(Provider.CPU);
+        this.providers = Collections.unmodifiableList(list);
+    }
+
+    public SessionProfile withThreads(int intraOp, int interOp) {
+        return new SessionProfile(intraOp, interOp, optLevel, executionMode, cpuArena, memoryPattern, providers);
+    }
+
+    public SessionProfile withOptLevel(OptLevel level) {
+        return new SessionProfile(intraOpThreads, interOpThreads, level, executionMode, cpuArena, memoryPattern, providers);
+    }
+
+    public SessionProfile withExecutionMode(ExecutionMode mode) {
+        return new SessionProfile(intraOpThreads, interOpThreads, optLevel, mode, cpuArena, memoryPattern, providers);
+    }
+
+    public SessionProfile withMemory(boolean arena, boolean pattern) {
+        return new SessionProfile(intraOpThreads, interOpThreads, optLevel, executionMode, arena, pattern, providers);
+    }
+
+    /** {@link Provider#CPU} is appended if missing. */
+    public SessionProfile withProviders(List<Provider> order) {
+        return new SessionProfile(intraOpThreads, interOpThreads, optLevel, executionMode, cpuArena, memoryPattern, order);
+    }
+
+    /** A session together with the profile that actually built it. */
+    public static final class Opened {
+        public final OrtSession session;
+        /** Requested profile minus the providers that were skipped. */
+        public final SessionProfile profile;
+        /** One "PROVIDER: reason" line per skipped provider. */
+        public final List<String> skipped;
+        // Mapped model the session reads its weights from; must stay reachable while it is open.
+        final ByteBuffer modelBytes;
+
+        Opened(OrtSession session, SessionProfile profile, List<String> skipped) {
+            this(session, profile, skipped, null);
+        }
+
+        Opened(OrtSession session, SessionProfile profile, List<String> skipped, ByteBuffer modelBytes) {
+            this.session = session;
+            this.profile = profile;
+            this.skipped = Collections.unmodifiableList(skipped);
+            this.modelBytes = modelBytes;
+        }
+    }
+
+    /** How a session is created once its options are set. */
+    interface Source {
+        OrtSession create(OrtEnvironment env, OrtSession.SessionOptions so) throws OrtException;
+    }
+
+    /**
+     * Creates a session for {@code modelPath}, falling back through the provider list. A provider
+     * the runtime was built without is skipped when it is added. If creating the session fails,
+     * the provider the error names is dropped and the session rebuilt without it; an error that
+     * names none of them is resolved by trying each provider alone (with CPU) in order. Throws
+     * only if the CPU-only session fails too.
+     */
+    public Opened open(OrtEnvironment env, String modelPath) throws OrtException {
+        return open(env, modelPath, null);
+    }
+
+    /**
+     * Like {@link #open(OrtEnvironment, String)}, also writing the optimized graph in ORT format if
+     * a path is given.
+     */
+    Opened open(OrtEnvironment env, String modelPath, String optimizedOut) throws OrtException {
+        return open(env, (e, so) -> {
+            if (optimizedOut != null) {
+                so.addConfigEntry("session.save_model_format", "ORT");
+                so.setOptimizedModelFilePath(optimizedOut);
+            }
+            return e.createSession(modelPath, so);
+        }, null);
+    }
+
+    /**
+     * Opens an ORT-format model from a direct (typically memory-mapped) buffer. ORT keeps
+     * pointing into the buffer for the graph and initializers instead of copying them, so the
+     * weights are never duplicated on either heap.
+     */
+    Opened openOrtFormat(OrtEnvironment env, ByteBuffer ortModel) throws OrtException {
+        return open(env, (e, so) -> {
+            so.addConfigEntry("session.use_ort_model_bytes_directly", "1");
+            so.addConfigEntry("session.use_ort_model_bytes_for_initializers", "1");
+            return e.createSession(ortModel, so);
+        }, ortModel);
+    }
+
+    private Opened open(OrtEnvironment env, Source source, ByteBuffer modelBytes) throws OrtException {
+        List<Provider> remaining = new ArrayList<>(providers);
+        List<String> skipped = new ArrayList<>();
+        while (true) {
+            List<Provider> added = new ArrayList<>();
+            try {
+                OrtSession session = create(env, source, remaining, added, skipped);
+                return new Opened(session, withProviders(added), skipped, modelBytes);
+            } catch (OrtException e) {
+                List<Provider> accelerators = new ArrayList<>(added);
+                accelerators.remove(Provider.CPU);
+                if (accelerators.isEmpty()) throw e;
+                Provider named = named(e.getMessage(), accelerators);
+                if (named == null) {
+                    return openEachAlone(env, source, modelBytes, accelerators, skipped, e);
+                }
+                skipped.add(named + ": " + e.getMessage());
+                remaining.remove(named);
+            }
+        }
+    }
+
+    /**
+     * A combined session failed without naming a provider: tries {@code candidates} one at a time
+     * (each with CPU) in preference order, then CPU alone.
+     */
+    private Opened openEachAlone(OrtEnvironment env, Source source, ByteBuffer modelBytes,
+                                 List<Provider> candidates, List<String> skipped,
+                                 OrtException combined) throws OrtException {
+        for (int i = 0; i < candidates.size(); i++) {
+            Provider p = candidates.get(i);
+            List<Provider> added = new ArrayList<>();
+            try {
+                OrtSession session = create(env, source,
+                        new ArrayList<>(Arrays.asList(p, Provider.CPU)), added, skipped);
+                for (Provider rest : candidates.subList(i + 1, candidates.size())) {
+                    skipped.add(rest + ": not retried after " + combined.getMessage());
+                }
+                return new Opened(session, withProviders(added), skipped, modelBytes);
+            } catch (OrtException e) {
+                skipped.add(p + ": " + e.getMessage());
+            }
+        }
+        List<Provider> added = new ArrayList<>();
+        OrtSession session = create(env, source, new ArrayList<>(Collections.singletonList(
+                Provider.CPU)), added, skipped);
+        return new Opened(session, withProviders(added), skipped, modelBytes);
+    }
+
+    /**
+     * Creates a session with the providers of {@code order} that can be added; the others are
+     * reported in {@code skipped} and removed from {@code order} so a rebuild does not retry them.
+     */
+    private OrtSession create(OrtEnvironment env, Source source, List<Provider> order,
+                              List<Provider> added, List<String> skipped) throws OrtException {
+        try (OrtSession.SessionOptions so = toOptions(order, added, skipped)) {
+            order.retainAll(added);
+            return source.create(env, so);
+        }
+    }
+
+    /** The one provider of {@code candidates} that {@code message} mentions, or null. */
+    static Provider named(String message, List<Provider> candidates) {
+        if (message == null) return null;
+        String upper = message.toUpperCase(Locale.US);
+        Provider found = null;
+        for (Provider p : candidates) {
+            if (!upper.contains(p.name())) continue;
+            if (found != null) return null; // ambiguous
+            found = p;
+        }
+        return found;
+    }
+
+    /** Options for this profile; providers that cannot be added are reported in {@code skipped}. */
+    public OrtSession.SessionOptions toOptions(List<String> skipped) throws OrtException {
+        return toOptions(providers, new ArrayList<>(), skipped);
+    }
+
+    private OrtSession.SessionOptions toOptions(List<Provider> order, List<Provider> added,
+                                                List<String> skipped) throws OrtException {
+        OrtSession.SessionOptions so = new OrtSession.SessionOptions();
+        try {
+            if (intraOpThreads > 0) so.setIntraOpNumThreads(intraOpThreads);
+            if (interOpThreads > 0) so.setInterOpNumThreads(interOpThreads);
+            so.setOptimizationLevel(optLevel);
+            so.setExecutionMode(executionMode);
+            so.setCPUArenaAllocator(cpuArena);
+            so.setMemoryPatternOptimization(memoryPattern);
+            for (Provider p : order) {
+                try {
+                    addProvider(so, p);
+                    added.add(p);
+                } catch (OrtException | UnsatisfiedLinkError e) {
+                    if (p == Provider.CPU) throw e;
+                    skipped.add(p + ": " + e.getMessage());
+                }
+            }
+            return so;
+        } catch (OrtException | RuntimeException e) {
+            so.close();
+            throw e;
+        }
+    }
+
+    private void addProvider(OrtSession.SessionOptions so, Provider p) throws OrtException {
+        switch (p) {
+            case NNAPI:
+                so.addNnapi();
+                break;
+            case QNN: {
+                Map<String, String> opts = new HashMap<>();
+                opts.put("backend_path", "libQnnHtp.so");
+                so.addQnn(opts);
+                break;
+            }
+            case XNNPACK: {
+                // XNNPACK runs its own pool; give it the intra-op budget.
+                Map<String, String> opts = new HashMap<>();
+                if (intraOpThreads > 0) opts.put("intra_op_num_threads", String.valueOf(intraOpThreads));
+                so.addXnnpack(opts);
+                break;
+            }
+            case CPU:
+            default:
+                so.addCPU(cpuArena);
+                break;
+        }
+    }
+
+    /** True when only the CPU EP is requested, i.e. the optimized graph holds no EP-compiled nodes. */
+    public boolean isCpuOnly() {
+        return providers.size() == 1;
+    }
+
+    /** Compact {@code key=value;...} form, stable across releases. */
+    public String encode() {
+        StringBuilder ep = new StringBuilder();
+        for (Provider p : providers) {
+            if (ep.length() > 0) ep.append(',');
+            ep.append(p.name());
+        }
+        return String.format(Locale.US, "intra=%d;inter=%d;opt=%s;mode=%s;arena=%b;pattern=%b;ep=%s",
+                intraOpThreads, interOpThreads, optLevel.name(), executionMode.name(),
+                cpuArena, memoryPattern, ep);
+    }
+
+    /** Parses {@link #encode()} output; unknown or malformed fields keep {@code fallback}'s value. */
+    public static SessionProfile decode(String s, SessionProfile fallback) {
+        if (s == null || s.isEmpty()) return fallback;
+        int intra = fallback.intraOpThreads, inter = fallback.interOpThreads;
+        OptLevel opt = fallback.optLevel;
+        ExecutionMode mode = fallback.executionMode;
+        boolean arena = fallback.cpuArena, pattern = fallback.memoryPattern;
+        List<Provider> eps = fallback.providers;
+        for (String field : s.split(";")) {
+            int eq = field.indexOf('=');
+            if (eq <= 0) continue;
+            String k = field.substring(0, eq).trim(), v = field.substring(eq + 1).trim();
+            try {
+                switch (k) {
+                    case "intra": intra = Integer.parseInt(v); break;
+                    case "inter": inter = Integer.parseInt(v); break;
+                    case "opt": opt = OptLevel.valueOf(v); break;
+                    case "mode": mode = ExecutionMode.valueOf(v); break;
+                    case "arena": arena = Boolean.parseBoolean(v); break;
+                    case "pattern": pattern = Boolean.parseBoolean(v); break;
+                    case "ep": {
+                        List<Provider> list = new ArrayList<>();
+                        for (String name : v.split(",")) {
+                            if (!name.isEmpty()) list.add(Provider.valueOf(name.trim()));
+                        }
+                        eps = list;
+                        break;
+                    }
+                    default:
+                        break;
+                }
+            } catch (IllegalArgumentException ignored) {
+                // Keep the fallback value for this field.
+            }
+        }
+        return new SessionProfile(intra, inter, opt, mode, arena, pattern, eps);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SessionProfile && encode().equals(((SessionProfile) o).encode());
+    }
+
+    @Override
+    public int hashCode() {
+        return encode().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
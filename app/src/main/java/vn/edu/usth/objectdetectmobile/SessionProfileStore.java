@@ -0,0 +1,40 @@
+package vn.edu.usth.objectdetectmobile;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+/**
+ * Per-device persistence of {@link SessionProfile}s. Keys include the device model so a profile
+ * tuned on one SoC is not applied to another after a backup restore.
+ */
+public final class SessionProfileStore {
+
+    private static final String PREFS_NAME = "session_profiles";
+    private static final String PREF_KEY_PREFIX = "session_profile_";
+
+    public static final String MODEL_DETECTOR = "detector";
+    public static final String MODEL_DEPTH = "depth";
+
+    private SessionProfileStore() {}
+
+    public static SharedPreferences getPrefs(Context ctx) {
+        return ctx.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static String buildKey(String model) {
+        return PREF_KEY_PREFIX + model + "_" + Build.MANUFACTURER + "_" + Build.MODEL;
+    }
+
+    public static SessionProfile load(Context ctx, String model, SessionProfile fallback) {
+        return SessionProfile.decode(getPrefs(ctx).getString(buildKey(model), null), fallback);
+    }
+
+    public static void save(Context ctx, String model, SessionProfile profile) {
+        getPrefs(ctx).edit().putString(buildKey(model), profile.encode()).apply();
+    }
+
+    public static void clear(Context ctx, String model) {
+        getPrefs(ctx).edit().remove(buildKey(model)).apply();
+    }
+}
@@ -29,14 +29,25 @@ public class StereoDepthProcessor {
 
     private final CameraCharacteristics logicalCharacteristics;
     private final float baselineMeters;
+    // Focal length as a fraction of image width; used instead of the characteristics when set.
+    private final float focalPerWidth;
     private volatile int referenceWidth = 0;
     private volatile int referenceHeight = 0;
     private volatile float focalLengthPixels = 0f;
+    private final DepthAggregator aggregator = new DepthAggregator(DepthAggregator.Statistic.MEDIAN);
 
     public StereoDepthProcessor(@NonNull Context ctx,
                                 @NonNull CameraCharacteristics logicalCharacteristics) {
         this.logicalCharacteristics = logicalCharacteristics;
         this.baselineMeters = resolveBaseline(ctx, logicalCharacteristics);
+        this.focalPerWidth = 0f;
+    }
+
+    /** Fixed optics, for running the fusion without a camera (e.g. host-side benchmarks). */
+    StereoDepthProcessor(float baselineMeters, float focalPerWidth) {
+        this.logicalCharacteristics = null;
+        this.baselineMeters = baselineMeters;
+        this.focalPerWidth = focalPerWidth;
     }
 
     public void setReferenceSize(int width, int height) {
@@ -70,29 +81,9 @@ public class StereoDepthProcessor {
 
     private float sampleRawDepth(@NonNull DepthEstimator.DepthMap map,
                                  @NonNull ObjectDetector.Detection d) {
-        if (map.width <= 0 || map.height <= 0) return Float.NaN;
-        int x1 = clamp(Math.round(d.x1), 0, map.width - 1);
-        int y1 = clamp(Math.round(d.y1), 0, map.height - 1);
-        int x2 = clamp(Math.round(d.x2), 0, map.width - 1);
-        int y2 = clamp(Math.round(d.y2), 0, map.height - 1);
-        int spanX = Math.max(1, x2 - x1);
-        int spanY = Math.max(1, y2 - y1);
-        int stepX = Math.max(1, spanX / 10);
-        int stepY = Math.max(1, spanY / 10);
-        float sum = 0f;
-        int count = 0;
-        for (int y = y1; y <= y2; y += stepY) {
-            int base = y * map.width;
-            for (int x = x1; x <= x2; x += stepX) {
-                float v = map.depth[base + x];
-                if (!Float.isNaN(v) && v > 0f) {
-                    sum += v;
-                    count++;
-                }
-            }
+        synchronized (aggregator) {
+            return aggregator.aggregate(map, d);
         }
-        if (count == 0) return Float.NaN;
-        return sum / count;
     }
 
     private float convertRawToStereoDepth(float raw,
@@ -138,6 +129,7 @@ public class StereoDepthProcessor {
     }
 
     private float computeFocalLengthPixels(int targetWidth) {
+        if (logicalCharacteristics == null) return focalPerWidth * targetWidth;
         float[] intrinsics = logicalCharacteristics.get(
                 CameraCharacteristics.LENS_INTRINSIC_CALIBRATION);
         Size pixelArray = logicalCharacteristics.get(
@@ -204,11 +196,6 @@ public class StereoDepthProcessor {
         }
     }
 
-    private static int clamp(int v, int min, int max) {
-        if (v < min) return min;
-        return Math.min(v, max);
-    }
-
     private static float clamp01(float v) {
         if (v < 0f) return 0f;
         if (v > 1f) return 1f;
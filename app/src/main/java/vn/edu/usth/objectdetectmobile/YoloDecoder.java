@@ -0,0 +1,174 @@
+package vn.edu.usth.objectdetectmobile;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Single-pass decoder for raw YOLOv8 output ([1,4+C,N] or [1,N,4+C]).
+ * <p>
+ * For the channel-major layout the class rows are scanned contiguously while a running best
+ * score/class is kept per anchor, so memory is walked with stride 1 instead of stride N.
+ * Anchors below the confidence threshold are rejected before any box math, and at most
+ * {@code topK} survivors (highest scores) are kept so the NMS input size is bounded.
+ * The output is read in place with absolute gets, so the detector's pinned output buffer needs
+ * no copy. Results are written into a reusable struct-of-arrays {@link Candidates}.
+ * Not thread-safe: keep one instance per detector.
+ */
+final class YoloDecoder {
+
+    /** Struct-of-arrays candidate boxes in source-image coordinates. */
+    static final class Candidates {
+        float[] x1 = new float[0], y1 = new float[0], x2 = new float[0], y2 = new float[0];
+        float[] score = new float[0];
+        int[] cls = new int[0];
+        int count;
+
+        void reset(int capacity) {
+            if (score.length < capacity) {
+                x1 = new float[capacity]; y1 = new float[capacity];
+                x2 = new float[capacity]; y2 = new float[capacity];
+                score = new float[capacity];
+                cls = new int[capacity];
+            }
+            count = 0;
+        }
+    }
+
+    private float[] bestScore = new float[0];
+    private int[] bestCls = new int[0];
+    private int[] heapIdx = new int[0];
+    private float[] heapScore = new float[0];
+
+    /**
+     * Decodes {@code flat} (indexed from 0, position ignored) into {@code out}, undoing the
+     * letterbox ({@code scale}, {@code padX}, {@code padY}) and clamping boxes to
+     * {@code imgW x imgH}.
+     * <p>
+     * The layout is guessed from the shape: the smaller of dims 1 and 2 is taken to hold the
+     * {@code 4 + C} properties. That is only right while there are more anchors than properties;
+     * a model with {@code N <= 4 + C} anchors (e.g. 80 classes at a tiny input size) is read with
+     * rows and columns swapped.
+     */
+    void decode(FloatBuffer flat, long[] shape, float confThresh, int topK,
+                float scale, float padX, float padY, int imgW, int imgH, Candidates out) {
+        int dim1 = (int) shape[1], dim2 = (int) shape[2];
+        // Channel-major when the smaller dimension holds the 4+C properties (e.g. [1,84,8400]);
+        // wrong for N <= 4+C, see above.
+        boolean colsAreProps = dim1 < dim2;
+        int props = colsAreProps ? dim1 : dim2;
+        int clsCount = props - 4;
+        int n = colsAreProps ? dim2 : dim1;
+        ensureScratch(n, topK);
+
+        if (colsAreProps) {
+            scanChannelMajor(flat, n, clsCount);
+        } else {
+            scanAnchorMajor(flat, n, props, clsCount);
+        }
+
+        int kept = selectTopK(n, confThresh, topK);
+        out.reset(kept);
+        for (int k = 0; k < kept; k++) {
+            int i = heapIdx[k];
+            float x, y, w, h;
+            if (colsAreProps) {
+                x = flat.get(i); y = flat.get(n + i); w = flat.get(2*n + i); h = flat.get(3*n + i);
+            } else {
+                int base = i*props;
+                x = flat.get(base); y = flat.get(base+1); w = flat.get(base+2); h = flat.get(base+3);
+            }
+            int j = out.count++;
+            out.x1[j] = clamp((x - w/2f - padX)/scale, imgW);
+            out.y1[j] = clamp((y - h/2f - padY)/scale, imgH);
+            out.x2[j] = clamp((x + w/2f - padX)/scale, imgW);
+            out.y2[j] = clamp((y + h/2f - padY)/scale, imgH);
+            out.score[j] = bestScore[i];
+            out.cls[j] = bestCls[i];
+        }
+    }
+
+    private void scanChannelMajor(FloatBuffer flat, int n, int clsCount) {
+        float[] best = bestScore;
+        int[] bc = bestCls;
+        int row0 = 4*n;
+        for (int i = 0; i < n; i++) {
+            best[i] = flat.get(row0 + i);
+            bc[i] = 0;
+        }
+        for (int c = 1; c < clsCount; c++) {
+            int row = (4 + c)*n;
+            for (int i = 0; i < n; i++) {
+                float s = flat.get(row + i);
+                if (s > best[i]) { best[i] = s; bc[i] = c; }
+            }
+        }
+    }
+
+    private void scanAnchorMajor(FloatBuffer flat, int n, int props, int clsCount) {
+        for (int i = 0; i < n; i++) {
+            int base = i*props + 4;
+            float bs = flat.get(base); int b = 0;
+            for (int c = 1; c < clsCount; c++) {
+                float s = flat.get(base + c);
+                if (s > bs) { bs = s; b = c; }
+            }
+            bestScore[i] = bs;
+            bestCls[i] = b;
+        }
+    }
+
+    /** Keeps the indices of up to topK anchors scoring at least confThresh in heapIdx[0..k). */
+    private int selectTopK(int n, float confThresh, int topK) {
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            float s = bestScore[i];
+            if (s < confThresh) continue;
+            if (size < topK) {
+                heapIdx[size] = i; heapScore[size] = s;
+                siftUp(size++);
+            } else if (s > heapScore[0]) {
+                heapIdx[0] = i; heapScore[0] = s;
+                siftDown(0, size);
+            }
+        }
+        return size;
+    }
+
+    // Min-heap on heapScore so the weakest kept candidate is evicted first.
+    private void siftUp(int i) {
+        while (i > 0) {
+            int p = (i - 1) >> 1;
+            if (heapScore[p] <= heapScore[i]) break;
+            swap(i, p);
+            i = p;
+        }
+    }
+
+    private void siftDown(int i, int size) {
+        while (true) {
+            int l = 2*i + 1;
+            if (l >= size) break;
+            int m = (l + 1 < size && heapScore[l + 1] < heapScore[l]) ? l + 1 : l;
+            if (heapScore[i] <= heapScore[m]) break;
+            swap(i, m);
+            i = m;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int ti = heapIdx[a]; heapIdx[a] = heapIdx[b]; heapIdx[b] = ti;
+        float ts = heapScore[a]; heapScore[a] = heapScore[b]; heapScore[b] = ts;
+    }
+
+    private void ensureScratch(int n, int topK) {
+        if (bestScore.length < n) {
+            bestScore = new float[n];
+            bestCls = new int[n];
+        }
+        if (heapIdx.length < topK) {
+            heapIdx = new int[topK];
+            heapScore = new float[topK];
+        }
+    }
+
+    private static float clamp(float v, int hi) { return Math.max(0, Math.min(hi, v)); }
+}
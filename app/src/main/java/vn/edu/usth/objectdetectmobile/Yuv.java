@@ -2,71 +2,298 @@ package vn.edu.usth.objectdetectmobile;
 
 import androidx.camera.core.ImageProxy;
 import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 
-// Simple YUV_420_888 -> ARGB8888 converter (CPU). Adequate for prototyping.
+// YUV_420_888 -> ARGB8888 conversion (CPU) plus the fused detector preprocessing path.
 public final class Yuv {
+    // BT.601 limited-range contributions per byte value, so the inner loop is adds and shifts.
+    private static final int[] Y_TAB = new int[256];
+    private static final int[] RV_TAB = new int[256];
+    private static final int[] GU_TAB = new int[256];
+    private static final int[] GV_TAB = new int[256];
+    private static final int[] BU_TAB = new int[256];
+    static {
+        for (int i = 0; i < 256; i++) {
+            Y_TAB[i] = 298*(i - 16) + 128;
+            RV_TAB[i] = 409*(i - 128);
+            GU_TAB[i] = -100*(i - 128);
+            GV_TAB[i] = -208*(i - 128);
+            BU_TAB[i] = 516*(i - 128);
+        }
+    }
+
     public static int[] toArgb(ImageProxy image){
+        return toArgb(image, new int[image.getWidth()*image.getHeight()]);
+    }
+
+    /** Converts and rotates in one pass; the result is the rotated frame. */
+    public static int[] toArgb(ImageProxy image, int rotation){
+        return toArgb(image, rotation, new int[image.getWidth()*image.getHeight()]);
+    }
+
+    /**
+     * Converts {@code image} and writes it rotated by {@code rotation} into {@code out}, without
+     * an intermediate upright frame: each band converts {@link #TILE} source rows into a small
+     * scratch strip and scatters it tile by tile into its rotated position.
+     */
+    public static int[] toArgb(ImageProxy image, int rotation, int[] out){
+        if (rotation % 360 == 0) return toArgb(image, out);
+        checkRotation(rotation);
         final int w = image.getWidth(), h = image.getHeight();
-        int[] out = new int[w*h];
-
-        ByteBuffer yb = image.getPlanes()[0].getBuffer();
-        ByteBuffer ub = image.getPlanes()[1].getBuffer();
-        ByteBuffer vb = image.getPlanes()[2].getBuffer();
-        int yRowStride = image.getPlanes()[0].getRowStride();
-        int uvRowStride = image.getPlanes()[1].getRowStride();
-        int uvPixelStride = image.getPlanes()[1].getPixelStride();
-
-        byte[] y = new byte[yb.remaining()]; yb.get(y);
-        byte[] u = new byte[ub.remaining()]; ub.get(u);
-        byte[] v = new byte[vb.remaining()]; vb.get(v);
-
-        for (int j=0;j<h;j++){
-            int pY = j*yRowStride;
-            int pUV = (j/2)*uvRowStride;
-            for (int i=0;i<w;i++){
-                int Y = y[pY + i] & 0xFF;
-                int U = u[pUV + (i/2)*uvPixelStride] & 0xFF;
-                int V = v[pUV + (i/2)*uvPixelStride] & 0xFF;
-
-                int C = Y - 16; int D = U - 128; int E = V - 128;
-                int R = clamp((298*C + 409*E + 128)>>8);
-                int G = clamp((298*C - 100*D - 208*E + 128)>>8);
-                int B = clamp((298*C + 516*D + 128)>>8);
-                out[j*w + i] = 0xFF000000 | (R<<16) | (G<<8) | B;
+        ImageProxy.PlaneProxy[] planes = image.getPlanes();
+        final ByteBuffer yb = planes[0].getBuffer();
+        final ByteBuffer ub = planes[1].getBuffer();
+        final ByteBuffer vb = planes[2].getBuffer();
+        final int yRowStride = planes[0].getRowStride();
+        final int uvRowStride = planes[1].getRowStride();
+        final int uvPixelStride = planes[1].getPixelStride();
+        ImageUtils.forRowBands(w, h, (y0, y1) -> {
+            ByteBuffer ybd = yb.duplicate(), ubd = ub.duplicate(), vbd = vb.duplicate();
+            int[] strip = new int[TILE*w];
+            for (int r0=y0; r0<y1; r0+=TILE){
+                int r1 = Math.min(y1, r0 + TILE);
+                convertRows(ybd, ubd, vbd, yRowStride, uvRowStride, uvPixelStride, w, strip, r0, r0, r1);
+                rotateRows(strip, r0, r0, r1, w, h, rotation, out);
             }
-        }
+        });
         return out;
     }
 
+    /**
+     * Converts into {@code out} (at least width*height). Rows are converted in bands on the
+     * common fork-join pool; each band bulk-reads its Y row and chroma row and handles every
+     * U/V pair once for two output pixels. Planar (I420) and semi-planar (NV12/NV21) chroma
+     * layouts get their own inner loops.
+     */
+    public static int[] toArgb(ImageProxy image, int[] out){
+        final int w = image.getWidth(), h = image.getHeight();
+        ImageProxy.PlaneProxy[] planes = image.getPlanes();
+        final ByteBuffer yb = planes[0].getBuffer();
+        final ByteBuffer ub = planes[1].getBuffer();
+        final ByteBuffer vb = planes[2].getBuffer();
+        final int yRowStride = planes[0].getRowStride();
+        final int uvRowStride = planes[1].getRowStride();
+        final int uvPixelStride = planes[1].getPixelStride();
+        ImageUtils.forRowBands(w, h, (y0, y1) ->
+                convertRows(yb.duplicate(), ub.duplicate(), vb.duplicate(),
+                        yRowStride, uvRowStride, uvPixelStride, w, out, 0, y0, y1));
+        return out;
+    }
+
+    /** Converts source rows [y0, y1) into {@code out}, row j landing at row j - outRow0. */
+    private static void convertRows(ByteBuffer yb, ByteBuffer ub, ByteBuffer vb,
+                                    int yRowStride, int uvRowStride, int uvPixelStride,
+                                    int w, int[] out, int outRow0, int y0, int y1){
+        final int cw = (w + 1) >> 1;
+        final int uvLen = (cw - 1)*uvPixelStride + 1;
+        byte[] yRow = new byte[w];
+        byte[] uRow = new byte[uvLen];
+        byte[] vRow = new byte[uvLen];
+        int lastUvRow = -1;
+        for (int j=y0;j<y1;j++){
+            yb.position(j*yRowStride);
+            yb.get(yRow, 0, w);
+            int uvRow = j >> 1;
+            if (uvRow != lastUvRow) {
+                ub.position(uvRow*uvRowStride);
+                ub.get(uRow, 0, uvLen);
+                vb.position(uvRow*uvRowStride);
+                vb.get(vRow, 0, uvLen);
+                lastUvRow = uvRow;
+            }
+            int o = (j - outRow0)*w;
+            if (uvPixelStride == 1) {
+                convertRowPlanar(yRow, uRow, vRow, w, out, o);
+            } else {
+                convertRowInterleaved(yRow, uRow, vRow, uvPixelStride, w, out, o);
+            }
+        }
+    }
+
+    private static void convertRowPlanar(byte[] yRow, byte[] uRow, byte[] vRow,
+                                         int w, int[] out, int o){
+        int i = 0;
+        for (int k=0; i+1<w; k++, i+=2){
+            int u = uRow[k] & 0xFF, v = vRow[k] & 0xFF;
+            int r = RV_TAB[v], g = GU_TAB[u] + GV_TAB[v], b = BU_TAB[u];
+            out[o + i]     = pack(Y_TAB[yRow[i] & 0xFF], r, g, b);
+            out[o + i + 1] = pack(Y_TAB[yRow[i + 1] & 0xFF], r, g, b);
+        }
+        if (i < w) {
+            int u = uRow[i >> 1] & 0xFF, v = vRow[i >> 1] & 0xFF;
+            out[o + i] = pack(Y_TAB[yRow[i] & 0xFF], RV_TAB[v], GU_TAB[u] + GV_TAB[v], BU_TAB[u]);
+        }
+    }
+
+    private static void convertRowInterleaved(byte[] yRow, byte[] uRow, byte[] vRow, int ps,
+                                              int w, int[] out, int o){
+        int i = 0;
+        for (int p=0; i+1<w; p+=ps, i+=2){
+            int u = uRow[p] & 0xFF, v = vRow[p] & 0xFF;
+            int r = RV_TAB[v], g = GU_TAB[u] + GV_TAB[v], b = BU_TAB[u];
+            out[o + i]     = pack(Y_TAB[yRow[i] & 0xFF], r, g, b);
+            out[o + i + 1] = pack(Y_TAB[yRow[i + 1] & 0xFF], r, g, b);
+        }
+        if (i < w) {
+            int p = (i >> 1)*ps;
+            int u = uRow[p] & 0xFF, v = vRow[p] & 0xFF;
+            out[o + i] = pack(Y_TAB[yRow[i] & 0xFF], RV_TAB[v], GU_TAB[u] + GV_TAB[v], BU_TAB[u]);
+        }
+    }
+
+    private static int pack(int y, int r, int g, int b){
+        return 0xFF000000 | (clamp((y + r) >> 8) << 16) | (clamp((y + g) >> 8) << 8) | clamp((y + b) >> 8);
+    }
+
     public static int[] rotate(int[] src, int w, int h, int rotation){
         if (rotation % 360 == 0) return src;
-        int[] dst = new int[src.length];
-        switch(rotation){
-            case 90:
-                for (int y=0;y<h;y++){
-                    for (int x=0;x<w;x++){
-                        dst[x*h + (h-1-y)] = src[y*w + x];
+        return rotate(src, new int[src.length], w, h, rotation);
+    }
+
+    /**
+     * Rotates a {@code w x h} frame into {@code dst} (must not alias {@code src}). Works in
+     * {@link #TILE}-square blocks so the column-strided writes of 90/270 stay within a few
+     * cache lines per block instead of sweeping the whole destination per source row.
+     */
+    public static int[] rotate(int[] src, int[] dst, int w, int h, int rotation){
+        if (rotation % 360 == 0) {
+            System.arraycopy(src, 0, dst, 0, w*h);
+            return dst;
+        }
+        checkRotation(rotation);
+        ImageUtils.forRowBands(w, h, (y0, y1) -> rotateRows(src, 0, y0, y1, w, h, rotation, dst));
+        return dst;
+    }
+
+    /**
+     * Scatters source rows [y0, y1) of a {@code w x h} frame to their rotated positions in
+     * {@code dst}; source row j is read from {@code src} at row j - srcRow0.
+     */
+    private static void rotateRows(int[] src, int srcRow0, int y0, int y1, int w, int h,
+                                   int rotation, int[] dst){
+        for (int ty=y0; ty<y1; ty+=TILE){
+            int ty1 = Math.min(y1, ty + TILE);
+            for (int tx=0; tx<w; tx+=TILE){
+                int tx1 = Math.min(w, tx + TILE);
+                for (int y=ty; y<ty1; y++){
+                    int s = (y - srcRow0)*w;
+                    switch (rotation){
+                        case 90:
+                            for (int x=tx; x<tx1; x++) dst[x*h + (h-1-y)] = src[s + x];
+                            break;
+                        case 180: {
+                            int d = (h-1-y)*w + (w-1);
+                            for (int x=tx; x<tx1; x++) dst[d - x] = src[s + x];
+                            break;
+                        }
+                        default: // 270
+                            for (int x=tx; x<tx1; x++) dst[(w-1-x)*h + y] = src[s + x];
+                            break;
                     }
                 }
-                break;
-            case 180:
-                for (int y=0;y<h;y++){
-                    for (int x=0;x<w;x++){
-                        dst[(h-1-y)*w + (w-1-x)] = src[y*w + x];
-                    }
+            }
+        }
+    }
+
+    private static void checkRotation(int rotation){
+        if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270) {
+            throw new IllegalArgumentException("Unsupported rotation: " + rotation);
+        }
+    }
+
+    /**
+     * Plane offsets of a rotated frame, split per axis: rotated pixel (rx, ry) lives at
+     * {@code colY[rx] + rowY[ry]} in the Y plane and {@code colUv[rx] + rowUv[ry]} in the chroma
+     * planes. Rotation is thereby folded into the addressing and costs nothing per pixel.
+     * Rebuilt only when the frame geometry, strides or rotation change.
+     */
+    public static final class RotationMap {
+        int[] colY = new int[0], rowY = new int[0], colUv = new int[0], rowUv = new int[0];
+        private int w = -1, h = -1, rotation = -1, yRs, yPs, uvRs, uvPs;
+
+        void update(ImageProxy image, int rotation){
+            checkRotation(rotation);
+            ImageProxy.PlaneProxy[] planes = image.getPlanes();
+            int w = image.getWidth(), h = image.getHeight();
+            int yRs = planes[0].getRowStride(), yPs = planes[0].getPixelStride();
+            int uvRs = planes[1].getRowStride(), uvPs = planes[1].getPixelStride();
+            if (w == this.w && h == this.h && rotation == this.rotation && yRs == this.yRs
+                    && yPs == this.yPs && uvRs == this.uvRs && uvPs == this.uvPs) return;
+            boolean swap = rotation == 90 || rotation == 270;
+            int rw = swap ? h : w, rh = swap ? w : h;
+            colY = new int[rw]; colUv = new int[rw];
+            rowY = new int[rh]; rowUv = new int[rh];
+            for (int rx=0; rx<rw; rx++){
+                switch (rotation){
+                    case 90:  colY[rx] = (h-1-rx)*yRs; colUv[rx] = ((h-1-rx)>>1)*uvRs; break;
+                    case 180: colY[rx] = (w-1-rx)*yPs; colUv[rx] = ((w-1-rx)>>1)*uvPs; break;
+                    case 270: colY[rx] = rx*yRs;       colUv[rx] = (rx>>1)*uvRs;       break;
+                    default:  colY[rx] = rx*yPs;       colUv[rx] = (rx>>1)*uvPs;       break;
+                }
+            }
+            for (int ry=0; ry<rh; ry++){
+                switch (rotation){
+                    case 90:  rowY[ry] = ry*yPs;       rowUv[ry] = (ry>>1)*uvPs;       break;
+                    case 180: rowY[ry] = (h-1-ry)*yRs; rowUv[ry] = ((h-1-ry)>>1)*uvRs; break;
+                    case 270: rowY[ry] = (w-1-ry)*yPs; rowUv[ry] = ((w-1-ry)>>1)*uvPs; break;
+                    default:  rowY[ry] = ry*yRs;       rowUv[ry] = (ry>>1)*uvRs;       break;
                 }
-                break;
-            case 270:
-                for (int y=0;y<h;y++){
-                    for (int x=0;x<w;x++){
-                        dst[(w-1-x)*h + y] = src[y*w + x];
+            }
+            this.w = w; this.h = h; this.rotation = rotation;
+            this.yRs = yRs; this.yPs = yPs; this.uvRs = uvRs; this.uvPs = uvPs;
+        }
+    }
+
+    /**
+     * Fused YUV_420_888 -> detector tensor path. Reads the planes in place in rotated order
+     * (through {@code map}, updated here for {@code rotation}) and resamples through the
+     * {@link Resampler.Taps} of each axis (given in rotated-frame coordinates), writing RGB/255
+     * straight into {@code dst} as three CHW planes of {@code dstW*dstH}. Y, U and V are averaged
+     * over the taps before a single colour conversion per output pixel. Only the content
+     * rectangle is written, so the caller must keep the padding zeroed. Allocates nothing once
+     * {@code map} matches the frame.
+     */
+    public static void toLetterboxedChw(ImageProxy image, int rotation, FloatBuffer dst,
+                                        int dstW, int dstH, int padX, int padY,
+                                        Resampler.Taps tx, Resampler.Taps ty, RotationMap map){
+        map.update(image, rotation);
+        ImageProxy.PlaneProxy[] planes = image.getPlanes();
+        ByteBuffer yb = planes[0].getBuffer();
+        ByteBuffer ub = planes[1].getBuffer();
+        ByteBuffer vb = planes[2].getBuffer();
+        final int[] colY = map.colY, rowY = map.rowY, colUv = map.colUv, rowUv = map.rowUv;
+
+        final int plane = dstW*dstH;
+        for (int y=0;y<ty.n;y++){
+            int dstRow = (y+padY)*dstW + padX;
+            int ry0 = ty.start[y], ny = ty.count[y], wyBase = y*ty.stride;
+            for (int x=0;x<tx.n;x++){
+                int rx0 = tx.start[x], nx = tx.count[x], wxBase = x*tx.stride;
+                float accY = 0f, accU = 0f, accV = 0f;
+                for (int j=0;j<ny;j++){
+                    int oY = rowY[ry0 + j], oUv = rowUv[ry0 + j];
+                    float wy = ty.weight[wyBase + j];
+                    for (int i=0;i<nx;i++){
+                        int rx = rx0 + i;
+                        float wgt = wy * tx.weight[wxBase + i];
+                        int pUV = oUv + colUv[rx];
+                        accY += wgt * (yb.get(oY + colY[rx]) & 0xFF);
+                        accU += wgt * (ub.get(pUV) & 0xFF);
+                        accV += wgt * (vb.get(pUV) & 0xFF);
                     }
                 }
-                break;
-            default:
-                throw new IllegalArgumentException("Unsupported rotation: " + rotation);
+
+                int C = Math.round(accY) - 16; int D = Math.round(accU) - 128; int E = Math.round(accV) - 128;
+                int idx = dstRow + x;
+                dst.put(idx,           clamp((298*C + 409*E + 128)>>8) / 255f);
+                dst.put(plane + idx,   clamp((298*C - 100*D - 208*E + 128)>>8) / 255f);
+                dst.put(2*plane + idx, clamp((298*C + 516*D + 128)>>8) / 255f);
+            }
         }
-        return dst;
     }
+
+    // Block edge for the rotation kernels: 32x32 ints = 4 KiB per tile.
+    private static final int TILE = 32;
+
     private static int clamp(int v){ return v<0?0:(v>255?255:v); }
 }
@@ -4,10 +4,12 @@ import android.content.Context;
 import android.speech.tts.TextToSpeech;
 import android.util.Log;
 
-import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 
+import vn.edu.usth.objectdetectmobile.LabelRegistry;
+import vn.edu.usth.objectdetectmobile.ObjectDetector;
+
 
 public class TTSWarning {
     private static final String TAG = "TTSWarning";
@@ -16,12 +18,8 @@ public class TTSWarning {
     private static final long SPEAK_INTERVAL = 5000; // 3 giây giữa các cảnh báo
     private static final float MAX_WARNING_DISTANCE = 5.0f; // Cảnh báo khi < 5m
     private static final float DANGER_DISTANCE = 2.0f; // Nguy hiểm khi < 2m
-
-
-    private static final List<String> DANGEROUS_OBJECTS = Arrays.asList(
-            "car", "truck", "bus", "motorcycle", "bicycle",
-            "person", "pedestrian crossing sign", "electric pole", "tree"
-    );
+    // Bỏ qua depth map cũ hơn 3 giây (như DEPTH_CACHE_MS): vật có thể đã đến gần hơn nhiều
+    private static final long MAX_DEPTH_AGE_MS = 3000;
 
 
     private static TTSWarning instance;
@@ -39,12 +37,15 @@ public class TTSWarning {
 
 
     private TextToSpeech tts;
+    // Danger flag, priority and Vietnamese name per class index
+    private final LabelRegistry labels;
     private boolean ready = false;
     private long lastSpeakTime = 0;
     private boolean enabled = true;
 
 
     private TTSWarning(Context context) {
+        labels = LabelRegistry.get(context);
         tts = new TextToSpeech(context, status -> {
             if (status == TextToSpeech.SUCCESS) {
 
@@ -66,7 +67,11 @@ public class TTSWarning {
 
 
 
-    public void processDetections(List<Detection> detections) {
+    /**
+     * Gọi mỗi frame trên UI thread với kết quả cuối cùng (depth tính bằng cm). Không cấp phát gì
+     * trừ khi thực sự phát cảnh báo.
+     */
+    public void processDetections(List<ObjectDetector.Detection> detections) {
         if (!ready || !enabled || detections == null || detections.isEmpty()) {
             return;
         }
@@ -78,7 +83,7 @@ public class TTSWarning {
         }
 
         // Tìm object cần cảnh báo
-        Detection toWarn = findObjectToWarn(detections);
+        ObjectDetector.Detection toWarn = findObjectToWarn(detections);
 
         if (toWarn != null) {
             String message = buildWarningMessage(toWarn);
@@ -120,93 +125,54 @@ public class TTSWarning {
 
     /**
      * Tìm object cần cảnh báo với ưu tiên:
-     * 1. Vật nguy hiểm gần nhất
-     * 2. Vật gần nhất < MAX_WARNING_DISTANCE
+     * 1. Vật có priority cao nhất (vật nguy hiểm)
+     * 2. Gần nhất trong cùng priority, < MAX_WARNING_DISTANCE
+     * Bỏ qua detection có depth cũ hơn MAX_DEPTH_AGE_MS.
      */
-    private Detection findObjectToWarn(List<Detection> detections) {
-        Detection closestDanger = null;
-        Detection closestObject = null;
-        float minDangerDist = Float.MAX_VALUE;
-        float minObjectDist = Float.MAX_VALUE;
-
-        for (Detection det : detections) {
-            if (det.distance <= 0 || det.distance > MAX_WARNING_DISTANCE) {
+    private ObjectDetector.Detection findObjectToWarn(List<ObjectDetector.Detection> detections) {
+        ObjectDetector.Detection best = null;
+        int bestPriority = Integer.MIN_VALUE;
+        float bestDist = Float.MAX_VALUE;
+
+        for (int i = 0, n = detections.size(); i < n; i++) {
+            ObjectDetector.Detection det = detections.get(i);
+            if (det.depthAgeMs > MAX_DEPTH_AGE_MS) {
                 continue;
             }
-
-            if (isDangerous(det.label)) {
-                if (det.distance < minDangerDist) {
-                    minDangerDist = det.distance;
-                    closestDanger = det;
-                }
+            float distance = distanceMeters(det);
+            if (!(distance > 0) || distance > MAX_WARNING_DISTANCE) {
+                continue;
             }
-
-            if (det.distance < minObjectDist) {
-                minObjectDist = det.distance;
-                closestObject = det;
+            int priority = labels.priority(det.cls);
+            if (priority > bestPriority || (priority == bestPriority && distance < bestDist)) {
+                best = det;
+                bestPriority = priority;
+                bestDist = distance;
             }
         }
-
-        // Ưu tiên vật nguy hiểm
-        return closestDanger != null ? closestDanger : closestObject;
+        return best;
     }
 
-    /**
-     * Kiểm tra object có nguy hiểm không
-     */
-    private boolean isDangerous(String label) {
-        if (label == null) return false;
-        String lower = label.toLowerCase();
-        for (String dangerous : DANGEROUS_OBJECTS) {
-            if (lower.contains(dangerous)) {
-                return true;
-            }
-        }
-        return false;
+    /** Depth của detection (cm) đổi sang mét; NaN khi không có depth. */
+    private static float distanceMeters(ObjectDetector.Detection det) {
+        return det.depth / 100.0f;
     }
 
     /**
      * Tạo câu cảnh báo
      */
-    private String buildWarningMessage(Detection det) {
-        String name = getVietnameseName(det.label);
-        String distanceStr = String.format("%.1f", det.distance);
+    private String buildWarningMessage(ObjectDetector.Detection det) {
+        String name = labels.nameVi(det.cls);
+        float distance = distanceMeters(det);
+        String distanceStr = String.format(Locale.US, "%.1f", distance);
 
-        if (det.distance < DANGER_DISTANCE) {
+        if (distance < DANGER_DISTANCE) {
             return "Nguy hiểm! " + name + " rất gần, " + distanceStr + " mét!";
         } else {
             return "Cảnh báo! " + name + " phía trước, " + distanceStr + " mét";
         }
     }
 
-    /**
-     * Chuyển tên tiếng Anh sang tiếng Việt
-     */
-    private String getVietnameseName(String label) {
-        if (label == null) return "Vật thể";
-
-        String lower = label.toLowerCase();
-
-        // Phương tiện
-        if (lower.contains("car")) return "Xe hơi";
-        if (lower.contains("truck")) return "Xe tải";
-        if (lower.contains("bus")) return "Xe buýt";
-        if (lower.contains("motorcycle")) return "Xe máy";
-        if (lower.contains("bicycle")) return "Xe đạp";
-
-        // Người và động vật
-        if (lower.contains("person")) return "Người";
-
-        // Đồ vật
-        if (lower.contains("tree")) return "Cây";
-        if (lower.contains("electric pole")) return "Cột điện";
-        if (lower.contains("pedestrian crossing sign")) return "Biển báo";
-
-
-        // Mặc định
-        return label;
-    }
-
     /**
      * Phát âm thanh
      */
@@ -216,22 +182,4 @@ public class TTSWarning {
             Log.d(TAG, "Speaking: " + message);
         }
     }
-
-    /**
-     * Cấu trúc dữ liệu detection đơn giản
-     */
-    public static class Detection {
-        public String label;
-        public float distance;
-
-        public Detection(String label, float distance) {
-            this.label = label;
-            this.distance = distance;
-        }
-
-        @Override
-        public String toString() {
-            return String.format("Detection{label='%s', distance=%.2f}", label, distance);
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,164 @@
+package vn.edu.usth.objectdetectmobile;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DepthAggregatorTest {
+
+    private static final int G = DepthAggregator.GRID;
+
+    /** The valid grid samples of the box clipped to the map, in grid order. */
+    private static float[] referenceSamples(DepthEstimator.DepthMap map, ObjectDetector.Detection d,
+                                            float[] weightsOut) {
+        float x1 = Math.max(0f, Math.min(d.x1, d.x2)), x2 = Math.min(map.width, Math.max(d.x1, d.x2));
+        float y1 = Math.max(0f, Math.min(d.y1, d.y2)), y2 = Math.min(map.height, Math.max(d.y1, d.y2));
+        float w = Math.max(0f, x2 - x1), h = Math.max(0f, y2 - y1);
+        float[] out = new float[G * G];
+        int n = 0;
+        for (int gy = 0; gy < G; gy++) {
+            for (int gx = 0; gx < G; gx++) {
+                float v = map.sample(x1 + (gx + 0.5f) * w / G, y1 + (gy + 0.5f) * h / G);
+                if (Float.isNaN(v) || v <= 0f) continue;
+                float dx = (gx + 0.5f) / G * 2f - 1f, dy = (gy + 0.5f) / G * 2f - 1f;
+                weightsOut[n] = Math.max(0.05f, 1f - 0.5f * (dx * dx + dy * dy));
+                out[n++] = v;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static double mean(float[] sorted, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) sum += sorted[i];
+        return sum / (to - from);
+    }
+
+    private static double median(float[] sorted) {
+        int n = sorted.length;
+        return (n & 1) == 1 ? sorted[n / 2] : 0.5 * (sorted[n / 2 - 1] + sorted[n / 2]);
+    }
+
+    private static double reference(DepthAggregator.Statistic stat, float[] samples, float[] weights,
+                                    float trim, float percentile) {
+        if (samples.length == 0) return Double.NaN;
+        int n = samples.length;
+        float[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        switch (stat) {
+            case MEDIAN:
+                return median(sorted);
+            case TRIMMED_MEAN: {
+                int lo = (int) (n * trim);
+                return n - 2 * lo <= 0 ? median(sorted) : mean(sorted, lo, n - lo);
+            }
+            case NEAR_PERCENTILE:
+                return sorted[Math.round(percentile * (n - 1))];
+            case CENTER_WEIGHTED: {
+                double sum = 0, wsum = 0;
+                for (int i = 0; i < n; i++) {
+                    sum += samples[i] * weights[i];
+                    wsum += weights[i];
+                }
+                return sum / wsum;
+            }
+            default:
+                return mean(sorted, 0, n);
+        }
+    }
+
+    /** Random depth in 0.1..10 with a share of NaN, zero and negative pixels. */
+    private static DepthEstimator.DepthMap randomMap(Random rnd, int w, int h, float invalidShare) {
+        float[] depth = new float[w * h];
+        for (int i = 0; i < depth.length; i++) {
+            float r = rnd.nextFloat();
+            if (r < invalidShare / 3) depth[i] = Float.NaN;
+            else if (r < invalidShare * 2 / 3) depth[i] = 0f;
+            else if (r < invalidShare) depth[i] = -rnd.nextFloat();
+            else depth[i] = 0.1f + 9.9f * rnd.nextFloat();
+        }
+        return new DepthEstimator.DepthMap(depth, w, h, 0f, 10f, 0L);
+    }
+
+    @Test
+    public void statistics_matchSortBasedReference() {
+        Random rnd = new Random(10);
+        DepthAggregator.Statistic[] stats = {
+                DepthAggregator.Statistic.MEAN, DepthAggregator.Statistic.MEDIAN,
+                DepthAggregator.Statistic.TRIMMED_MEAN, DepthAggregator.Statistic.NEAR_PERCENTILE,
+                DepthAggregator.Statistic.CENTER_WEIGHTED};
+        float[] trims = {0f, 0.2f, 0.45f};
+        float[] percentiles = {0f, 0.25f, 0.5f, 1f};
+        DepthAggregator agg = new DepthAggregator(DepthAggregator.Statistic.MEDIAN);
+        float[] weights = new float[G * G];
+        int odd = 0, even = 0, clipped = 0, empty = 0;
+        for (int iter = 0; iter < 400; iter++) {
+            int w = 8 + rnd.nextInt(120), h = 8 + rnd.nextInt(90);
+            // Clean maps give the full 144 samples; noisy ones give arbitrary (odd and even) counts.
+            float invalid = iter % 5 == 0 ? 0f : iter % 17 == 0 ? 1f : rnd.nextFloat() * 0.6f;
+            DepthEstimator.DepthMap map = randomMap(rnd, w, h, invalid);
+            // Boxes may start off-map or run past the far edge, and corners may come in swapped.
+            float ax = -0.3f * w + rnd.nextFloat() * 1.3f * w, bx = ax + (rnd.nextFloat() - 0.3f) * w;
+            float ay = -0.3f * h + rnd.nextFloat() * 1.3f * h, by = ay + (rnd.nextFloat() - 0.3f) * h;
+            ObjectDetector.Detection d = new ObjectDetector.Detection(ax, ay, bx, by, 0.9f, 0);
+            if (Math.min(ax, bx) < 0 || Math.min(ay, by) < 0 || Math.max(ax, bx) > w || Math.max(ay, by) > h) {
+                clipped++;
+            }
+            float[] samples = referenceSamples(map, d, weights);
+            if (samples.length == 0) empty++;
+            else if ((samples.length & 1) == 1) odd++;
+            else even++;
+            for (DepthAggregator.Statistic stat : stats) {
+                agg.setStatistic(stat);
+                for (float trim : trims) {
+                    agg.setTrimFraction(trim);
+                    for (float p : percentiles) {
+                        agg.setPercentile(p);
+                        double expected = reference(stat, samples, weights, trim, p);
+                        float actual = agg.aggregate(map, d);
+                        String msg = stat + " trim=" + trim + " p=" + p + " n=" + samples.length
+                                + " iter=" + iter;
+                        if (Double.isNaN(expected)) {
+                            assertTrue(msg, Float.isNaN(actual));
+                        } else {
+                            assertEquals(msg, expected, actual, 1e-4 * Math.max(1.0, Math.abs(expected)));
+                        }
+                    }
+                }
+            }
+        }
+        assertTrue(odd > 20);
+        assertTrue(even > 20);
+        assertTrue(clipped > 50);
+        assertTrue(empty > 0);
+    }
+
+    @Test
+    public void invalidSamples_areIgnored() {
+        // Left half NaN, right half a constant 3; any robust statistic must read 3.
+        int w = 40, h = 20;
+        float[] depth = new float[w * h];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) depth[y * w + x] = x < 18 ? Float.NaN : x < 20 ? -1f : 3f;
+        }
+        DepthEstimator.DepthMap map = new DepthEstimator.DepthMap(depth, w, h, 0f, 3f, 0L);
+        ObjectDetector.Detection d = new ObjectDetector.Detection(0, 0, w, h, 0.9f, 0);
+        for (DepthAggregator.Statistic stat : DepthAggregator.Statistic.values()) {
+            assertEquals(stat.toString(), 3f, new DepthAggregator(stat).aggregate(map, d), 1e-6f);
+        }
+    }
+
+    @Test
+    public void noValidSamples_givesNaN() {
+        float[] depth = new float[16 * 16];
+        Arrays.fill(depth, 0f);
+        DepthEstimator.DepthMap map = new DepthEstimator.DepthMap(depth, 16, 16, 0f, 0f, 0L);
+        ObjectDetector.Detection d = new ObjectDetector.Detection(2, 2, 12, 12, 0.9f, 0);
+        for (DepthAggregator.Statistic stat : DepthAggregator.Statistic.values()) {
+            assertTrue(stat.toString(), Float.isNaN(new DepthAggregator(stat).aggregate(map, d)));
+        }
+    }
+}
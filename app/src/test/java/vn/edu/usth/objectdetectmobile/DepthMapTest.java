@@ -0,0 +1,84 @@
+package vn.edu.usth.objectdetectmobile;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DepthMapTest {
+
+    private static float lerp(float a, float b, float t) {
+        return a + (b - a) * t;
+    }
+
+    /** The original eager path: crop the letterbox content, then a corner-aligned bilinear resize. */
+    private static float[] cropAndResize(float[] raw, int rawW, int padX, int padY, int contentW,
+                                         int contentH, int dstW, int dstH) {
+        float[] src = new float[contentW * contentH];
+        for (int y = 0; y < contentH; y++) {
+            System.arraycopy(raw, (y + padY) * rawW + padX, src, y * contentW, contentW);
+        }
+        if (contentW == dstW && contentH == dstH) return src;
+        float[] dst = new float[dstW * dstH];
+        float xRatio = dstW > 1 ? (contentW - 1f) / (dstW - 1f) : 0f;
+        float yRatio = dstH > 1 ? (contentH - 1f) / (dstH - 1f) : 0f;
+        for (int y = 0; y < dstH; y++) {
+            float sy = y * yRatio;
+            int y0 = (int) Math.floor(sy);
+            int y1 = Math.min(y0 + 1, contentH - 1);
+            float ly = sy - y0;
+            for (int x = 0; x < dstW; x++) {
+                float sx = x * xRatio;
+                int x0 = (int) Math.floor(sx);
+                int x1 = Math.min(x0 + 1, contentW - 1);
+                float lx = sx - x0;
+                float top = lerp(src[y0 * contentW + x0], src[y0 * contentW + x1], lx);
+                float bottom = lerp(src[y1 * contentW + x0], src[y1 * contentW + x1], lx);
+                dst[y * dstW + x] = lerp(top, bottom, ly);
+            }
+        }
+        return dst;
+    }
+
+    @Test
+    public void sampleAndFullResolution_matchCropAndResize() {
+        Random rnd = new Random(9);
+        // {rawW, rawH, padX, padY, contentW, contentH, frameW, frameH}: landscape and portrait
+        // letterboxes, an upsample to an odd frame, a downsample, and an uncropped identity.
+        int[][] cases = {
+                {64, 64, 0, 10, 64, 44, 320, 220},
+                {64, 64, 11, 0, 42, 64, 121, 187},
+                {48, 40, 3, 5, 37, 29, 17, 13},
+                {30, 20, 0, 0, 30, 20, 30, 20},
+                {16, 16, 0, 4, 16, 8, 1, 1},
+        };
+        for (int[] c : cases) {
+            int rawW = c[0], rawH = c[1], padX = c[2], padY = c[3];
+            int contentW = c[4], contentH = c[5], frameW = c[6], frameH = c[7];
+            float[] raw = new float[rawW * rawH];
+            for (int i = 0; i < raw.length; i++) raw[i] = rnd.nextFloat() * 10f;
+            float[] expected = cropAndResize(raw, rawW, padX, padY, contentW, contentH, frameW, frameH);
+            DepthEstimator.DepthMap map = new DepthEstimator.DepthMap(raw, rawW, padX, padY,
+                    contentW, contentH, frameW, frameH, 0f, 10f, 0L);
+            String tag = frameW + "x" + frameH + " from " + contentW + "x" + contentH;
+            for (int y = 0; y < frameH; y++) {
+                for (int x = 0; x < frameW; x++) {
+                    assertEquals(tag + " (" + x + "," + y + ")",
+                            expected[y * frameW + x], map.sample(x, y), 1e-5f);
+                }
+            }
+            // Off-frame queries clamp to the border pixels.
+            int last = frameW * frameH - 1;
+            assertEquals(tag, expected[0], map.sample(-7f, -3f), 1e-5f);
+            assertEquals(tag, expected[last], map.sample(frameW + 5f, frameH + 9f), 1e-5f);
+            assertEquals(tag, expected[frameW - 1], map.sample(frameW, -1f), 1e-5f);
+            assertEquals(tag, expected[(frameH - 1) * frameW], map.sample(-1f, frameH), 1e-5f);
+
+            float[] full = map.toFullResolution();
+            assertEquals(tag, frameW * frameH, full.length);
+            assertArrayEquals(tag, expected, full, 1e-5f);
+            assertSame(tag, full, map.toFullResolution());
+        }
+    }
+}
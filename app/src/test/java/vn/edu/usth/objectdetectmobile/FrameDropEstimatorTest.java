@@ -0,0 +1,61 @@
+package vn.edu.usth.objectdetectmobile;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameDropEstimatorTest {
+    private static final long PERIOD = 33_333_333L;
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void fastAnalyzer_dropsNothing() {
+        FrameDropEstimator est = new FrameDropEstimator();
+        int dropped = 0;
+        for (int i = 0; i < 100; i++) dropped += est.onFrame(i * PERIOD, 5 * MS);
+        assertEquals(0, dropped);
+        assertEquals(PERIOD, est.periodNs());
+    }
+
+    @Test
+    public void steadyDoubleGap_withReportedPeriod_countsEveryOtherFrame() {
+        FrameDropEstimator est = new FrameDropEstimator();
+        est.setReportedPeriodNs(PERIOD);
+        int dropped = 0;
+        // Analyzer needs ~45 ms per frame: every delivered frame is two periods after the last.
+        for (int i = 0; i < 50; i++) dropped += est.onFrame(2 * i * PERIOD, 45 * MS);
+        assertEquals(49, dropped);
+        assertEquals(PERIOD, est.periodNs());
+    }
+
+    @Test
+    public void steadyDoubleGap_learnsPeriodFromIdleGaps() {
+        FrameDropEstimator est = new FrameDropEstimator();
+        long ts = 0;
+        // Idle analyzer first: gaps are the camera period.
+        for (int i = 0; i < 5; i++) est.onFrame(ts += PERIOD, 5 * MS);
+        int dropped = 0;
+        for (int i = 0; i < 20; i++) dropped += est.onFrame(ts += 2 * PERIOD, 45 * MS);
+        assertEquals(20, dropped);
+        assertEquals(PERIOD, est.periodNs());
+    }
+
+    @Test
+    public void busyGaps_doNotSetThePeriod() {
+        FrameDropEstimator est = new FrameDropEstimator();
+        long ts = 0;
+        est.onFrame(ts, 0);
+        est.onFrame(ts += PERIOD, 5 * MS);
+        // A window full of 2x gaps behind a busy analyzer must not become the period.
+        for (int i = 0; i < 40; i++) est.onFrame(ts += 2 * PERIOD, 45 * MS);
+        assertEquals(1, est.onFrame(ts + 2 * PERIOD, 45 * MS));
+    }
+
+    @Test
+    public void tripleGap_countsTwoDrops() {
+        FrameDropEstimator est = new FrameDropEstimator();
+        est.setReportedPeriodNs(PERIOD);
+        est.onFrame(0, 0);
+        assertEquals(2, est.onFrame(3 * PERIOD + 2 * MS, 80 * MS));
+    }
+}
@@ -0,0 +1,136 @@
+package vn.edu.usth.objectdetectmobile;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ImageUtilsTest {
+
+    /** The original O(r^2) blur: mean of the window clipped to the image. */
+    private static int[] directBoxBlur(int[] src, int w, int h, int radius) {
+        int[] dst = new int[w * h];
+        for (int y = 0; y < h; y++) {
+            int yMin = Math.max(0, y - radius), yMax = Math.min(h - 1, y + radius);
+            for (int x = 0; x < w; x++) {
+                int xMin = Math.max(0, x - radius), xMax = Math.min(w - 1, x + radius);
+                int count = 0, sumR = 0, sumG = 0, sumB = 0;
+                for (int yy = yMin; yy <= yMax; yy++) {
+                    for (int xx = xMin; xx <= xMax; xx++) {
+                        int c = src[yy * w + xx];
+                        sumR += (c >> 16) & 0xFF;
+                        sumG += (c >> 8) & 0xFF;
+                        sumB += c & 0xFF;
+                        count++;
+                    }
+                }
+                dst[y * w + x] = 0xFF000000 | ((sumR / count) << 16) | ((sumG / count) << 8)
+                        | (sumB / count);
+            }
+        }
+        return dst;
+    }
+
+    @Test
+    public void boxBlur_matchesDirectAverage() {
+        Random rnd = new Random(5);
+        // 1x1 and radii wider than the frame hit the clipping; 400x300 runs in parallel bands.
+        int[][] sizes = {{1, 1}, {7, 3}, {33, 17}, {400, 300}};
+        int[] radii = {0, 1, 2, 4, 9, 40};
+        for (int[] size : sizes) {
+            int w = size[0], h = size[1];
+            int[] src = new int[w * h];
+            for (int i = 0; i < src.length; i++) src[i] = 0xFF000000 | rnd.nextInt(0x1000000);
+            for (int r : radii) {
+                int[] dst = new int[w * h];
+                ImageUtils.boxBlur(src, dst, w, h, r);
+                assertArrayEquals(w + "x" + h + " r" + r, directBoxBlur(src, w, h, r), dst);
+                // Again into the same buffer: leftover pixels or column sums would show up here.
+                assertArrayEquals(w + "x" + h + " r" + r + " again",
+                        directBoxBlur(src, w, h, r), ImageUtils.boxBlur(src, dst, w, h, r));
+            }
+        }
+    }
+
+    /** Separable Gaussian over a 3-sigma window, renormalized where it is clipped by the frame. */
+    private static int[] directGaussian(int[] src, int w, int h, float sigma) {
+        int r = (int) Math.ceil(3 * sigma);
+        double[] k = new double[2 * r + 1];
+        for (int i = -r; i <= r; i++) k[i + r] = Math.exp(-(i * i) / (2.0 * sigma * sigma));
+        int[] dst = new int[w * h];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                double sumR = 0, sumG = 0, sumB = 0, norm = 0;
+                for (int dy = -r; dy <= r; dy++) {
+                    int yy = y + dy;
+                    if (yy < 0 || yy >= h) continue;
+                    for (int dx = -r; dx <= r; dx++) {
+                        int xx = x + dx;
+                        if (xx < 0 || xx >= w) continue;
+                        double wgt = k[dy + r] * k[dx + r];
+                        int c = src[yy * w + xx];
+                        sumR += wgt * ((c >> 16) & 0xFF);
+                        sumG += wgt * ((c >> 8) & 0xFF);
+                        sumB += wgt * (c & 0xFF);
+                        norm += wgt;
+                    }
+                }
+                dst[y * w + x] = 0xFF000000 | ((int) Math.round(sumR / norm) << 16)
+                        | ((int) Math.round(sumG / norm) << 8) | (int) Math.round(sumB / norm);
+            }
+        }
+        return dst;
+    }
+
+    @Test
+    public void gaussianBlur_approximatesDirectGaussian() {
+        int w = 96, h = 64;
+        Random rnd = new Random(6);
+        int[] src = new int[w * h];
+        // Edges, gradients and noise: where a poor approximation would show.
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int r = x < w / 2 ? 40 : 220;
+                int g = (y * 255) / (h - 1);
+                int b = rnd.nextInt(256);
+                src[y * w + x] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+        // Below sigma 2 three integer-width boxes cannot get close to a Gaussian.
+        for (float sigma : new float[]{2f, 3.5f, 5f, 8f}) {
+            // Each box of radius r adds r(r+1)/3 to the variance of the cascade.
+            double variance = 0;
+            for (int r : ImageUtils.gaussBoxRadii(sigma)) variance += r * (r + 1) / 3.0;
+            assertEquals("sigma " + sigma, sigma, Math.sqrt(variance), 0.15 * sigma);
+
+            int[] got = ImageUtils.gaussianBlur(src, new int[w * h], new int[w * h], w, h, sigma);
+            int[] want = directGaussian(src, w, h, sigma);
+            double sumErr = 0;
+            int maxErr = 0;
+            for (int i = 0; i < w * h; i++) {
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    int err = Math.abs(((got[i] >> shift) & 0xFF) - ((want[i] >> shift) & 0xFF));
+                    sumErr += err;
+                    maxErr = Math.max(maxErr, err);
+                }
+            }
+            // Every pass truncates its mean, so the cascade may sit up to about 1.5 levels low.
+            assertTrue("sigma " + sigma + " mean error " + sumErr / (3.0 * w * h),
+                    sumErr / (3.0 * w * h) < 1.5);
+            assertTrue("sigma " + sigma + " max error " + maxErr, maxErr <= 12);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void gaussianBlur_rejectsAliasedBuffers() {
+        int[] a = new int[16], b = new int[16];
+        ImageUtils.gaussianBlur(a, b, a, 4, 4, 1f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void boxBlur_rejectsInPlace() {
+        int[] buf = new int[16];
+        ImageUtils.boxBlur(buf, buf, 4, 4, 1);
+    }
+}
@@ -0,0 +1,57 @@
+package vn.edu.usth.objectdetectmobile;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LatestWinsStageTest {
+
+    /** Runs {@code offers} while the worker is blocked on the first item; returns handled items. */
+    private static List<String> run(LatestWinsStage.KeepPolicy<String> policy, List<String> dropped,
+                                    String... offers) throws InterruptedException {
+        List<String> handled = new CopyOnWriteArrayList<>();
+        CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(2);
+        LatestWinsStage<String> stage = new LatestWinsStage<>("test", item -> {
+            started.countDown();
+            release.await();
+            handled.add(item);
+            finished.countDown();
+        }, dropped::add, policy);
+        stage.offer("busy");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (String s : offers) stage.offer(s);
+        release.countDown();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        stage.shutdown();
+        return handled;
+    }
+
+    @Test
+    public void newestItemReplacesTheWaitingOne() throws InterruptedException {
+        List<String> dropped = new CopyOnWriteArrayList<>();
+        List<String> handled = run(null, dropped, "a", "b", "c");
+        assertEquals("c", handled.get(1));
+        assertEquals(2, dropped.size());
+        assertTrue(dropped.contains("a") && dropped.contains("b"));
+    }
+
+    @Test
+    public void keepPolicyProtectsTheWaitingItem() throws InterruptedException {
+        // Upper case stands for keyframes: a waiting keyframe survives tracker-only frames but
+        // still yields to a newer keyframe.
+        LatestWinsStage.KeepPolicy<String> keyframes = (waiting, incoming) ->
+                Character.isUpperCase(waiting.charAt(0))
+                        && !Character.isUpperCase(incoming.charAt(0));
+        List<String> dropped = new CopyOnWriteArrayList<>();
+        List<String> handled = run(keyframes, dropped, "a", "K1", "b", "K2", "c");
+        assertEquals("K2", handled.get(1));
+        assertEquals(4, dropped.size());
+        assertFalse(dropped.contains("K2"));
+    }
+}
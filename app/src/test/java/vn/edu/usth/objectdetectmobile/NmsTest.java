@@ -0,0 +1,88 @@
+package vn.edu.usth.objectdetectmobile;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NmsTest {
+    private static final float IOU = 0.45f;
+
+    /** Random boxes on a coarse grid with quantized scores, so ties in score and IoU are common. */
+    private static YoloDecoder.Candidates randomCandidates(Random rnd, int n, int classes) {
+        YoloDecoder.Candidates c = new YoloDecoder.Candidates();
+        c.reset(n);
+        for (int i = 0; i < n; i++) {
+            float x = 8 * rnd.nextInt(12), y = 8 * rnd.nextInt(12);
+            float w = 8 * (1 + rnd.nextInt(6)), h = 8 * (1 + rnd.nextInt(6));
+            c.x1[i] = x; c.y1[i] = y; c.x2[i] = x + w; c.y2[i] = y + h;
+            c.score[i] = (1 + rnd.nextInt(8)) / 8f;
+            c.cls[i] = rnd.nextInt(classes);
+        }
+        c.count = n;
+        return c;
+    }
+
+    /** Straightforward greedy NMS: stable sort by score, then drop overlaps of each survivor. */
+    private static int[] reference(YoloDecoder.Candidates c, boolean perClass) {
+        List<Integer> left = new ArrayList<>();
+        for (int i = 0; i < c.count; i++) left.add(i);
+        left.sort((a, b) -> Float.compare(c.score[b], c.score[a]));
+        List<Integer> keep = new ArrayList<>();
+        while (!left.isEmpty()) {
+            int a = left.remove(0);
+            keep.add(a);
+            left.removeIf(b -> (!perClass || c.cls[a] == c.cls[b]) && iou(c, a, b) > IOU);
+        }
+        return keep.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static float iou(YoloDecoder.Candidates c, int a, int b) {
+        float iw = Math.max(0f, Math.min(c.x2[a], c.x2[b]) - Math.max(c.x1[a], c.x1[b]));
+        float ih = Math.max(0f, Math.min(c.y2[a], c.y2[b]) - Math.max(c.y1[a], c.y1[b]));
+        float inter = iw * ih;
+        float areaA = (c.x2[a] - c.x1[a]) * (c.y2[a] - c.y1[a]);
+        float areaB = (c.x2[b] - c.x1[b]) * (c.y2[b] - c.y1[b]);
+        return inter / (areaA + areaB - inter + 1e-6f);
+    }
+
+    private static void assertMatchesReference(Nms.Mode mode, boolean perClass) {
+        Random rnd = new Random(42);
+        Nms nms = new Nms();
+        for (int round = 0; round < 500; round++) {
+            YoloDecoder.Candidates c = randomCandidates(rnd, rnd.nextInt(150), 1 + rnd.nextInt(5));
+            int[] expected = reference(c, perClass);
+            int kept = nms.run(c, mode, IOU, 0f);
+            assertArrayEquals("round " + round, expected, Arrays.copyOf(nms.keep(), kept));
+        }
+    }
+
+    @Test
+    public void classAware_matchesReference() {
+        assertMatchesReference(Nms.Mode.CLASS_AWARE, true);
+    }
+
+    @Test
+    public void classAgnostic_matchesReference() {
+        assertMatchesReference(Nms.Mode.CLASS_AGNOSTIC, false);
+    }
+
+    @Test
+    public void tiedScores_keepTheLowerCandidateIndex() {
+        YoloDecoder.Candidates c = new YoloDecoder.Candidates();
+        c.reset(3);
+        for (int i = 0; i < 3; i++) {
+            c.x1[i] = 10; c.y1[i] = 10; c.x2[i] = 50; c.y2[i] = 50;
+            c.score[i] = 0.5f;
+        }
+        c.x1[0] = 200; c.x2[0] = 240; // disjoint from the other two
+        c.count = 3;
+        Nms nms = new Nms();
+        assertEquals(2, nms.run(c, Nms.Mode.CLASS_AWARE, IOU, 0f));
+        assertArrayEquals(new int[]{0, 1}, Arrays.copyOf(nms.keep(), 2));
+    }
+}
@@ -0,0 +1,109 @@
+package vn.edu.usth.objectdetectmobile;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ObjectTrackerTest {
+    private static final int W = 640, H = 480;
+
+    private static List<ObjectDetector.Detection> box(float x, float y, float size) {
+        return Collections.singletonList(
+                new ObjectDetector.Detection(x, y, x + size, y + size, 0.9f, 0));
+    }
+
+    /** One frame through the pipeline: claim on convert, then update or predict on detect. */
+    private static boolean step(ObjectTracker tracker, List<ObjectDetector.Detection> dets) {
+        boolean keyframe = tracker.claimKeyframe();
+        if (keyframe) {
+            tracker.update(dets, W, H);
+        } else {
+            tracker.predict(W, H);
+        }
+        return keyframe;
+    }
+
+    @Test
+    public void largeSteadyTrack_followsTheInterval() {
+        ObjectTracker tracker = new ObjectTracker(3);
+        StringBuilder cadence = new StringBuilder();
+        for (int f = 0; f < 18; f++) {
+            boolean keyframe = step(tracker, box(100 + 2 * f, 100, 200));
+            if (f >= 9) cadence.append(keyframe ? 'K' : '.');
+        }
+        // Settled: one keyframe in every three frames, never two in a row.
+        assertEquals(3, cadence.toString().replace(".", "").length());
+        assertFalse(cadence.toString().contains("KK"));
+    }
+
+    @Test
+    public void newTrack_getsAnEarlyConfirmingKeyframe() {
+        ObjectTracker tracker = new ObjectTracker(10);
+        assertTrue(step(tracker, box(300, 200, 30)));
+        assertFalse(step(tracker, box(302, 200, 30)));
+        // Velocity still unknown: a second coasted frame would drift past the tolerance.
+        assertTrue(tracker.needsDetection());
+        assertTrue(tracker.claimKeyframe());
+    }
+
+    @Test
+    public void smallBoxes_followTheIntervalOnceSettled() {
+        ObjectTracker tracker = new ObjectTracker(3);
+        StringBuilder cadence = new StringBuilder();
+        for (int f = 0; f < 36; f++) {
+            // Several distant objects of 10-16 px, drifting a pixel or two per frame.
+            List<ObjectDetector.Detection> dets = new ArrayList<>();
+            for (int k = 0; k < 4; k++) {
+                float size = 10 + 2 * k, x = 60 + 120 * k + (1 + k % 2) * f, y = 80 + 50 * k;
+                dets.add(new ObjectDetector.Detection(x, y, x + size, y + size, 0.6f, k));
+            }
+            cadence.append(step(tracker, dets) ? 'K' : '.');
+        }
+        // At most one early keyframe while the new tracks learn their velocity, then the interval.
+        String settled = cadence.substring(6);
+        assertEquals(cadence.toString(), 10, settled.replace(".", "").length());
+        assertFalse(cadence.toString(), settled.contains("KK"));
+        assertTrue(cadence.toString(), cadence.substring(0, 6).replace(".", "").length() <= 3);
+    }
+
+    @Test
+    public void coastingGrowsUncertaintyUntilAKeyframeIsDue() {
+        ObjectTracker tracker = new ObjectTracker(30);
+        for (int k = 0; k < 6; k++) {
+            tracker.claimKeyframe();
+            tracker.update(box(200 + 3 * k, 150, 80), W, H);
+        }
+        int coasted = 0;
+        while (!tracker.claimKeyframe()) {
+            tracker.predict(W, H);
+            coasted++;
+        }
+        assertTrue("early keyframe expected, coasted " + coasted, coasted > 0 && coasted < 29);
+    }
+
+    @Test
+    public void claimedKeyframe_isNotClaimedAgainWhileDetectorIsBusy() {
+        ObjectTracker tracker = new ObjectTracker(3);
+        assertTrue(step(tracker, box(300, 200, 30)));
+        assertFalse(step(tracker, box(302, 200, 30)));
+        assertTrue(tracker.claimKeyframe());
+        // The keyframe has not reached update() yet; only the interval may claim the next one.
+        assertFalse(tracker.claimKeyframe());
+        assertFalse(tracker.claimKeyframe());
+        assertTrue(tracker.claimKeyframe());
+    }
+
+    @Test
+    public void keepsTrackIdAcrossKeyframes() {
+        ObjectTracker tracker = new ObjectTracker(3);
+        int id = tracker.update(box(100, 100, 120), W, H).get(0).trackId;
+        tracker.predict(W, H);
+        List<ObjectDetector.Detection> out = tracker.update(box(104, 100, 120), W, H);
+        assertEquals(1, out.size());
+        assertEquals(id, out.get(0).trackId);
+    }
+}
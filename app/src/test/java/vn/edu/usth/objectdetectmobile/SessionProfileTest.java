@@ -0,0 +1,151 @@
+package vn.edu.usth.objectdetectmobile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtSession;
+import ai.onnxruntime.OrtSession.SessionOptions.ExecutionMode;
+import ai.onnxruntime.OrtSession.SessionOptions.OptLevel;
+
+import static org.junit.Assert.*;
+
+public class SessionProfileTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final SessionProfile CUSTOM = SessionProfile.DEFAULT
+            .withThreads(4, 2)
+            .withOptLevel(OptLevel.EXTENDED_OPT)
+            .withExecutionMode(ExecutionMode.PARALLEL)
+            .withMemory(false, true)
+            .withProviders(Arrays.asList(SessionProfile.Provider.QNN,
+                    SessionProfile.Provider.XNNPACK));
+
+    @Test
+    public void encodeDecode_roundTrips() {
+        for (SessionProfile p : Arrays.asList(SessionProfile.DEFAULT, CUSTOM)) {
+            // The other profile as fallback: every field must come from the string.
+            SessionProfile other = p == CUSTOM ? SessionProfile.DEFAULT : CUSTOM;
+            SessionProfile back = SessionProfile.decode(p.encode(), other);
+            assertEquals(p, back);
+            assertEquals(p.encode(), back.encode());
+        }
+        assertEquals(Arrays.asList(SessionProfile.Provider.QNN, SessionProfile.Provider.XNNPACK,
+                SessionProfile.Provider.CPU), CUSTOM.providers);
+    }
+
+    @Test
+    public void decode_keepsFallbackForBadFields() {
+        SessionProfile p = SessionProfile.decode("intra=x;opt=FAST;mode=PARALLEL;ep=NOPE;junk",
+                CUSTOM);
+        assertEquals(CUSTOM.intraOpThreads, p.intraOpThreads);
+        assertEquals(CUSTOM.optLevel, p.optLevel);
+        assertEquals(ExecutionMode.PARALLEL, p.executionMode);
+        assertEquals(CUSTOM.providers, p.providers);
+        assertSame(CUSTOM, SessionProfile.decode("", CUSTOM));
+        assertSame(CUSTOM, SessionProfile.decode(null, CUSTOM));
+    }
+
+    @Test
+    public void decode_alwaysEndsOnCpu() {
+        SessionProfile p = SessionProfile.decode("ep=CPU,NNAPI,NNAPI", SessionProfile.DEFAULT);
+        assertEquals(Arrays.asList(SessionProfile.Provider.NNAPI, SessionProfile.Provider.CPU),
+                p.providers);
+    }
+
+    @Test
+    public void named_blamesOnlyAProviderTheErrorMentions() {
+        List<SessionProfile.Provider> both = Arrays.asList(
+                SessionProfile.Provider.QNN, SessionProfile.Provider.XNNPACK);
+        assertEquals(SessionProfile.Provider.XNNPACK,
+                SessionProfile.named("XnnpackExecutionProvider: unsupported op", both));
+        assertEquals(SessionProfile.Provider.QNN,
+                SessionProfile.named("Failed to load libQnnHtp.so", both));
+        assertNull(SessionProfile.named("Invalid model: bad shape", both));
+        assertNull(SessionProfile.named("QNN and XNNPACK both refused", both));
+        assertNull(SessionProfile.named(null, both));
+    }
+
+    @Test
+    public void open_fallsBackToCpu() throws Exception {
+        File model = identityModel();
+        SessionProfile wanted = SessionProfile.DEFAULT.withProviders(Arrays.asList(
+                SessionProfile.Provider.NNAPI, SessionProfile.Provider.QNN));
+        OrtEnvironment env = OrtEnvironment.getEnvironment();
+        SessionProfile.Opened opened = wanted.open(env, model.getPath());
+        try (OrtSession session = opened.session) {
+            // The desktop runtime has neither mobile EP: both are skipped, CPU remains.
+            assertEquals(Collections.singletonList(SessionProfile.Provider.CPU),
+                    opened.profile.providers);
+            assertEquals(2, opened.skipped.size());
+            assertTrue(opened.skipped.get(0).startsWith("NNAPI: "));
+            assertTrue(opened.skipped.get(1).startsWith("QNN: "));
+
+            float[] x = {1f, -2f, 3.5f, 0f};
+            try (OnnxTensor in = OnnxTensor.createTensor(env, FloatBuffer.wrap(x), new long[]{4});
+                 OrtSession.Result out = session.run(Collections.singletonMap("x", in))) {
+                assertArrayEquals(x, (float[]) out.get(0).getValue(), 0f);
+            }
+        }
+    }
+
+    /** y = Identity(x) over float[4], hand-encoded as an ONNX ModelProto. */
+    private File identityModel() throws IOException {
+        byte[] shape = msg(1, msg(1, varint(1, 4)));                 // dim { dim_value: 4 }
+        byte[] type = msg(1, concat(varint(1, 1), msg(2, shape))); // tensor_type float[4]
+        byte[] node = concat(str(1, "x"), str(2, "y"), str(4, "Identity"));
+        byte[] graph = concat(msg(1, node), str(2, "g"),
+                msg(11, concat(str(1, "x"), msg(2, type))),
+                msg(12, concat(str(1, "y"), msg(2, type))));
+        byte[] model = concat(varint(1, 8), msg(7, graph), msg(8, varint(2, 13)));
+        File f = tmp.newFile("identity.onnx");
+        Files.write(f.toPath(), model);
+        return f;
+    }
+
+    private static byte[] varint(int field, long v) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, (long) field << 3);
+        writeVarint(out, v);
+        return out.toByteArray();
+    }
+
+    private static byte[] str(int field, String s) {
+        return msg(field, s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] msg(int field, byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, ((long) field << 3) | 2);
+        writeVarint(out, body.length);
+        out.write(body, 0, body.length);
+        return out.toByteArray();
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] p : parts) out.write(p, 0, p.length);
+        return out.toByteArray();
+    }
+}
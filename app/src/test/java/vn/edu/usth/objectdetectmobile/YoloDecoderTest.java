@@ -0,0 +1,133 @@
+package vn.edu.usth.objectdetectmobile;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class YoloDecoderTest {
+    private static final int CLASSES = 80, PROPS = 4 + CLASSES, N = 300;
+
+    /** Anchor-major props[anchor][prop]: cx, cy, w, h, then one score per class. */
+    private static float[][] randomAnchors(Random rnd) {
+        float[][] a = new float[N][PROPS];
+        for (int i = 0; i < N; i++) {
+            a[i][0] = 20 + rnd.nextInt(600);
+            a[i][1] = 20 + rnd.nextInt(600);
+            a[i][2] = 4 + rnd.nextInt(80);
+            a[i][3] = 4 + rnd.nextInt(80);
+            for (int c = 0; c < CLASSES; c++) a[i][4 + c] = rnd.nextFloat() * 0.3f;
+            // About a third of the anchors get one confident class.
+            if (rnd.nextInt(3) == 0) a[i][4 + rnd.nextInt(CLASSES)] = 0.3f + rnd.nextFloat() * 0.7f;
+        }
+        return a;
+    }
+
+    // Direct buffers, like the detector's pinned output tensor; the position is left at the end
+    // because the decoder reads with absolute indices.
+    private static FloatBuffer anchorMajor(float[][] a) {
+        FloatBuffer flat = direct(N * PROPS);
+        for (int i = 0; i < N; i++) flat.put(a[i]);
+        return flat;
+    }
+
+    private static FloatBuffer channelMajor(float[][] a) {
+        FloatBuffer flat = direct(N * PROPS);
+        for (int i = 0; i < N; i++) {
+            for (int p = 0; p < PROPS; p++) flat.put(p * N + i, a[i][p]);
+        }
+        flat.position(flat.limit());
+        return flat;
+    }
+
+    private static FloatBuffer direct(int floats) {
+        return ByteBuffer.allocateDirect(floats * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    /** Sorted "x1,y1,x2,y2,score,cls" rows, so the result can be compared regardless of order. */
+    private static String[] rows(YoloDecoder.Candidates c) {
+        String[] r = new String[c.count];
+        for (int j = 0; j < c.count; j++) {
+            r[j] = c.x1[j] + "," + c.y1[j] + "," + c.x2[j] + "," + c.y2[j] + ","
+                    + c.score[j] + "," + c.cls[j];
+        }
+        Arrays.sort(r);
+        return r;
+    }
+
+    /** Every anchor at or above the threshold, decoded the obvious way. */
+    private static String[] expected(float[][] a, float thresh, float scale, float padX, float padY,
+                                     int imgW, int imgH) {
+        YoloDecoder.Candidates c = new YoloDecoder.Candidates();
+        c.reset(N);
+        for (float[] p : a) {
+            int best = 0;
+            for (int k = 1; k < CLASSES; k++) if (p[4 + k] > p[4 + best]) best = k;
+            if (p[4 + best] < thresh) continue;
+            int j = c.count++;
+            c.x1[j] = clamp((p[0] - p[2] / 2f - padX) / scale, imgW);
+            c.y1[j] = clamp((p[1] - p[3] / 2f - padY) / scale, imgH);
+            c.x2[j] = clamp((p[0] + p[2] / 2f - padX) / scale, imgW);
+            c.y2[j] = clamp((p[1] + p[3] / 2f - padY) / scale, imgH);
+            c.score[j] = p[4 + best];
+            c.cls[j] = best;
+        }
+        return rows(c);
+    }
+
+    private static float clamp(float v, int hi) {
+        return Math.max(0, Math.min(hi, v));
+    }
+
+    @Test
+    public void channelMajorAndAnchorMajor_decodeTheSameBoxes() {
+        float[][] a = randomAnchors(new Random(7));
+        String[] want = expected(a, 0.25f, 0.5f, 0f, 80f, 1280, 960);
+        YoloDecoder decoder = new YoloDecoder();
+        YoloDecoder.Candidates out = new YoloDecoder.Candidates();
+
+        decoder.decode(channelMajor(a), new long[]{1, PROPS, N}, 0.25f, N,
+                0.5f, 0f, 80f, 1280, 960, out);
+        assertArrayEquals(want, rows(out));
+
+        decoder.decode(anchorMajor(a), new long[]{1, N, PROPS}, 0.25f, N,
+                0.5f, 0f, 80f, 1280, 960, out);
+        assertArrayEquals(want, rows(out));
+    }
+
+    @Test
+    public void topK_keepsTheHighestScores() {
+        float[][] a = randomAnchors(new Random(11));
+        int above = expected(a, 0.25f, 1f, 0f, 0f, 640, 640).length;
+        int topK = 10;
+        assertTrue(above > topK);
+
+        YoloDecoder.Candidates out = new YoloDecoder.Candidates();
+        new YoloDecoder().decode(channelMajor(a), new long[]{1, PROPS, N}, 0.25f, topK,
+                1f, 0f, 0f, 640, 640, out);
+        assertEquals(topK, out.count);
+
+        float[] best = new float[N];
+        for (int i = 0; i < N; i++) {
+            for (int c = 0; c < CLASSES; c++) best[i] = Math.max(best[i], a[i][4 + c]);
+        }
+        Arrays.sort(best);
+        float[] kept = Arrays.copyOf(out.score, out.count);
+        Arrays.sort(kept);
+        assertArrayEquals(Arrays.copyOfRange(best, N - topK, N), kept, 0f);
+    }
+
+    @Test
+    public void belowThreshold_decodesNothing() {
+        float[][] a = randomAnchors(new Random(3));
+        YoloDecoder.Candidates out = new YoloDecoder.Candidates();
+        new YoloDecoder().decode(anchorMajor(a), new long[]{1, N, PROPS}, 1.01f, N,
+                1f, 0f, 0f, 640, 640, out);
+        assertEquals(0, out.count);
+    }
+}
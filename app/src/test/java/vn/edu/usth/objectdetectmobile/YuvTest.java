@@ -0,0 +1,150 @@
+package vn.edu.usth.objectdetectmobile;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class YuvTest {
+    // Odd sizes exercise the last half-chroma column and row; 641x481 is large enough to be
+    // split into parallel row bands and spans several rotation tiles.
+    private static final int[][] SIZES = {{37, 23}, {64, 48}, {641, 481}};
+    private static final int[] ROTATIONS = {0, 90, 180, 270};
+
+    /** Random frame with padded row strides; pixel stride 1 is I420, 2 is NV21. */
+    private static PackedYuvImage frame(Random rnd, int w, int h, int uvPixelStride) {
+        int cw = (w + 1) / 2, ch = (h + 1) / 2;
+        int yRowStride = w + 1 + rnd.nextInt(16);
+        int uvRowStride = cw * uvPixelStride + rnd.nextInt(16);
+        byte[] y = new byte[yRowStride * h];
+        byte[] chroma = new byte[uvRowStride * ch * (uvPixelStride == 2 ? 1 : 2)];
+        rnd.nextBytes(y);
+        rnd.nextBytes(chroma);
+        return new PackedYuvImage(w, h, ByteBuffer.wrap(y), yRowStride,
+                ByteBuffer.wrap(chroma), uvRowStride, uvPixelStride);
+    }
+
+    /** Per-pixel BT.601 conversion straight from the plane formulas, then a naive rotation. */
+    private static int[] reference(PackedYuvImage image, int rotation) {
+        int w = image.getWidth(), h = image.getHeight();
+        Planes p = new Planes(image);
+        int[] upright = new int[w * h];
+        for (int j = 0; j < h; j++) {
+            for (int i = 0; i < w; i++) {
+                int uv = (j >> 1) * p.uvRowStride + (i >> 1) * p.uvPixelStride;
+                int c = (p.y.get(j * p.yRowStride + i) & 0xFF) - 16;
+                int d = (p.u.get(uv) & 0xFF) - 128;
+                int e = (p.v.get(uv) & 0xFF) - 128;
+                int r = clamp((298 * c + 409 * e + 128) >> 8);
+                int g = clamp((298 * c - 100 * d - 208 * e + 128) >> 8);
+                int b = clamp((298 * c + 516 * d + 128) >> 8);
+                upright[j * w + i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+        if (rotation == 0) return upright;
+        int[] out = new int[w * h];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int s = upright[y * w + x];
+                switch (rotation) {
+                    case 90:  out[x * h + (h - 1 - y)] = s; break;
+                    case 180: out[(h - 1 - y) * w + (w - 1 - x)] = s; break;
+                    default:  out[(w - 1 - x) * h + y] = s; break;
+                }
+            }
+        }
+        return out;
+    }
+
+    private static final class Planes {
+        final ByteBuffer y, u, v;
+        final int yRowStride, uvRowStride, uvPixelStride;
+
+        Planes(PackedYuvImage image) {
+            y = image.getPlanes()[0].getBuffer();
+            u = image.getPlanes()[1].getBuffer();
+            v = image.getPlanes()[2].getBuffer();
+            yRowStride = image.getPlanes()[0].getRowStride();
+            uvRowStride = image.getPlanes()[1].getRowStride();
+            uvPixelStride = image.getPlanes()[1].getPixelStride();
+        }
+    }
+
+    private static int clamp(int v) {
+        return v < 0 ? 0 : (v > 255 ? 255 : v);
+    }
+
+    @Test
+    public void toArgb_matchesReference() {
+        Random rnd = new Random(1);
+        for (int[] size : SIZES) {
+            for (int ps = 1; ps <= 2; ps++) {
+                PackedYuvImage image = frame(rnd, size[0], size[1], ps);
+                assertArrayEquals(size[0] + "x" + size[1] + " ps" + ps,
+                        reference(image, 0), Yuv.toArgb(image));
+            }
+        }
+    }
+
+    @Test
+    public void toArgbRotated_matchesReference() {
+        Random rnd = new Random(2);
+        for (int[] size : SIZES) {
+            for (int ps = 1; ps <= 2; ps++) {
+                PackedYuvImage image = frame(rnd, size[0], size[1], ps);
+                for (int rotation : ROTATIONS) {
+                    assertArrayEquals(size[0] + "x" + size[1] + " ps" + ps + " rot" + rotation,
+                            reference(image, rotation), Yuv.toArgb(image, rotation));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rotate_matchesReference() {
+        Random rnd = new Random(3);
+        for (int[] size : SIZES) {
+            PackedYuvImage image = frame(rnd, size[0], size[1], 2);
+            int[] upright = reference(image, 0);
+            for (int rotation : ROTATIONS) {
+                assertArrayEquals(size[0] + "x" + size[1] + " rot" + rotation,
+                        reference(image, rotation),
+                        Yuv.rotate(upright, size[0], size[1], rotation));
+            }
+        }
+    }
+
+    @Test
+    public void letterboxedChw_readsThroughTheRotationMap() {
+        Random rnd = new Random(4);
+        Yuv.RotationMap map = new Yuv.RotationMap();
+        for (int[] size : SIZES) {
+            for (int ps = 1; ps <= 2; ps++) {
+                PackedYuvImage image = frame(rnd, size[0], size[1], ps);
+                for (int rotation : ROTATIONS) {
+                    boolean swap = rotation == 90 || rotation == 270;
+                    int rw = swap ? size[1] : size[0], rh = swap ? size[0] : size[1];
+                    // One-to-one nearest taps: every tensor pixel is one rotated source pixel.
+                    Resampler.Taps tx = Resampler.taps(Resampler.Filter.NEAREST, rw, rw, 1f, 0);
+                    Resampler.Taps ty = Resampler.taps(Resampler.Filter.NEAREST, rh, rh, 1f, 0);
+                    FloatBuffer chw = FloatBuffer.allocate(3 * rw * rh);
+                    Yuv.toLetterboxedChw(image, rotation, chw, rw, rh, 0, 0, tx, ty, map);
+
+                    int[] want = reference(image, rotation);
+                    int plane = rw * rh;
+                    float[] expected = new float[3 * plane];
+                    for (int k = 0; k < plane; k++) {
+                        expected[k] = ((want[k] >> 16) & 0xFF) / 255f;
+                        expected[plane + k] = ((want[k] >> 8) & 0xFF) / 255f;
+                        expected[2 * plane + k] = (want[k] & 0xFF) / 255f;
+                    }
+                    assertArrayEquals(size[0] + "x" + size[1] + " ps" + ps + " rot" + rotation,
+                            expected, chw.array(), 0f);
+                }
+            }
+        }
+    }
+}